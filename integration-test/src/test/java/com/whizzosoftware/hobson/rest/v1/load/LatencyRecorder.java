@@ -0,0 +1,124 @@
+package com.whizzosoftware.hobson.rest.v1.load;
+
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records request latencies per endpoint. Each worker thread owns its own recorder and the recorders are merged
+ * once the run completes so that recording never contends across threads.
+ */
+public class LatencyRecorder {
+    private final Map<String,Samples> samples = new TreeMap<>();
+
+    public void record(String endpoint, long nanos, boolean error) {
+        Samples s = samples.get(endpoint);
+        if (s == null) {
+            s = new Samples();
+            samples.put(endpoint, s);
+        }
+        s.add(nanos, error);
+    }
+
+    public void merge(LatencyRecorder other) {
+        for (Map.Entry<String,Samples> e : other.samples.entrySet()) {
+            Samples s = samples.get(e.getKey());
+            if (s == null) {
+                s = new Samples();
+                samples.put(e.getKey(), s);
+            }
+            s.addAll(e.getValue());
+        }
+    }
+
+    /**
+     * Returns the per-endpoint and overall statistics.
+     *
+     * @param elapsedMillis the length of the measured period (used to compute throughput)
+     *
+     * @return a JSONObject
+     */
+    public JSONObject toJSON(long elapsedMillis) {
+        Samples total = new Samples();
+        JSONObject endpoints = new JSONObject();
+        for (Map.Entry<String,Samples> e : samples.entrySet()) {
+            endpoints.put(e.getKey(), e.getValue().toJSON(elapsedMillis));
+            total.addAll(e.getValue());
+        }
+        JSONObject json = new JSONObject();
+        json.put("total", total.toJSON(elapsedMillis));
+        json.put("endpoints", endpoints);
+        return json;
+    }
+
+    static class Samples {
+        private long[] nanos = new long[1024];
+        private int count;
+        private int errors;
+
+        void add(long n, boolean error) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = n;
+            if (error) {
+                errors++;
+            }
+        }
+
+        void addAll(Samples s) {
+            if (count + s.count > nanos.length) {
+                nanos = Arrays.copyOf(nanos, Math.max(count + s.count, nanos.length * 2));
+            }
+            System.arraycopy(s.nanos, 0, nanos, count, s.count);
+            count += s.count;
+            errors += s.errors;
+        }
+
+        JSONObject toJSON(long elapsedMillis) {
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+
+            long sum = 0;
+            for (long n : sorted) {
+                sum += n;
+            }
+
+            JSONObject latency = new JSONObject();
+            latency.put("mean", count > 0 ? toMillis(sum / count) : 0);
+            latency.put("p50", toMillis(percentile(sorted, 0.50)));
+            latency.put("p99", toMillis(percentile(sorted, 0.99)));
+            latency.put("p999", toMillis(percentile(sorted, 0.999)));
+            latency.put("max", count > 0 ? toMillis(sorted[count - 1]) : 0);
+
+            JSONObject json = new JSONObject();
+            json.put("requests", count);
+            json.put("errors", errors);
+            json.put("throughput", elapsedMillis > 0 ? count * 1000.0 / elapsedMillis : 0);
+            json.put("latencyMs", latency);
+            return json;
+        }
+    }
+
+    /**
+     * Returns the nearest-rank percentile of a sorted array.
+     *
+     * @param sorted the sorted values
+     * @param p the percentile (0 to 1)
+     *
+     * @return the value (or 0 if the array is empty)
+     */
+    static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int)Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    static private double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+}
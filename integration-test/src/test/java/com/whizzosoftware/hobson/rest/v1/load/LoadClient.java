@@ -0,0 +1,114 @@
+package com.whizzosoftware.hobson.rest.v1.load;
+
+import org.json.JSONObject;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * A minimal HTTP client for the load test. It uses HttpURLConnection directly (rather than REST-assured) so that
+ * client overhead stays small and predictable and connections are reused across requests.
+ */
+public class LoadClient {
+    private final String uriPrefix;
+    private final String authorization;
+
+    public LoadClient(String uriPrefix, String username, String password) {
+        this(uriPrefix, "Basic " + DatatypeConverter.printBase64Binary((username + ":" + password).getBytes()));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param uriPrefix the URI prefix (e.g. http://localhost:8182)
+     * @param authorization the value of the Authorization header sent with every request
+     */
+    public LoadClient(String uriPrefix, String authorization) {
+        this.uriPrefix = uriPrefix;
+        this.authorization = authorization;
+    }
+
+    /**
+     * Performs a request.
+     *
+     * @param method the HTTP method
+     * @param path the absolute path (e.g. /api/v1/users/local/hubs/local)
+     * @param body the request body (or null)
+     *
+     * @return the response
+     *
+     * @throws IOException on failure
+     */
+    public Result request(String method, String path, String body) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection)new URL(uriPrefix + path).openConnection();
+        if ("PATCH".equals(method)) {
+            // HttpURLConnection doesn't support PATCH directly
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("X-HTTP-Method-Override", "PATCH");
+        } else {
+            conn.setRequestMethod(method);
+        }
+        conn.setRequestProperty("Authorization", authorization);
+        conn.setRequestProperty("Accept", "application/json");
+        if (body != null) {
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/json");
+            OutputStream os = conn.getOutputStream();
+            try {
+                os.write(body.getBytes("UTF-8"));
+            } finally {
+                os.close();
+            }
+        }
+
+        int status = conn.getResponseCode();
+
+        // the body is always read fully so the connection can be returned to the keep-alive pool
+        InputStream is = (status < 400) ? conn.getInputStream() : conn.getErrorStream();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        if (is != null) {
+            try {
+                byte[] buf = new byte[8192];
+                int len;
+                while ((len = is.read(buf)) != -1) {
+                    baos.write(buf, 0, len);
+                }
+            } finally {
+                is.close();
+            }
+        }
+
+        return new Result(status, baos.toString("UTF-8"));
+    }
+
+    public JSONObject getJSON(String path) throws IOException {
+        Result r = request("GET", path, null);
+        if (r.getStatus() != 200) {
+            throw new IOException("GET " + path + " returned " + r.getStatus());
+        }
+        return new JSONObject(r.getBody());
+    }
+
+    static public class Result {
+        private final int status;
+        private final String body;
+
+        Result(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.whizzosoftware.hobson.rest.v1.load;
+
+import com.whizzosoftware.hobson.rest.v1.BaseTest;
+import com.whizzosoftware.hobson.rest.v1.resource.device.DeviceResource;
+import com.whizzosoftware.hobson.rest.v1.resource.device.DeviceVariableResource;
+import com.whizzosoftware.hobson.rest.v1.resource.device.DevicesResource;
+import com.whizzosoftware.hobson.rest.v1.resource.hub.HubResource;
+import com.whizzosoftware.hobson.rest.v1.resource.plugin.LocalPluginsResource;
+import com.whizzosoftware.hobson.rest.v1.resource.task.TaskResource;
+import com.whizzosoftware.hobson.rest.v1.resource.task.TasksResource;
+import com.whizzosoftware.hobson.rest.v1.resource.variable.GlobalVariablesResource;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives a mixed read/write workload against the REST API and writes a JSON report with the throughput and
+ * p50/p99/p999 latency of each endpoint so that runs can be compared across releases.
+ *
+ * By default the API is booted in-process against the hobson-hub-api-mock managers with a seeded data set (see
+ * MockHub), so runs are reproducible without a running hub. Setting "hobson.loadtest.uri" runs the workload against
+ * a running hub instead.
+ *
+ * The test only runs when the "hobson.loadtest" system property is true (e.g. with the "loadtest" profile) and is
+ * configured with the following system properties:
+ *
+ * hobson.loadtest.uri - the URI prefix of a running hub to test instead of the in-process mock hub
+ * hobson.loadtest.port - the port the in-process mock hub listens on
+ * hobson.loadtest.devices - the number of devices the mock hub is seeded with
+ * hobson.loadtest.variablesPerDevice - the number of read-only variables on each seeded device
+ * hobson.loadtest.concurrency - the number of concurrent clients
+ * hobson.loadtest.warmup - the number of seconds to run before recording latencies
+ * hobson.loadtest.duration - the number of seconds to record latencies for
+ * hobson.loadtest.writeRatio - the fraction of requests that are writes
+ * hobson.loadtest.seed - the random seed used to choose requests
+ * hobson.loadtest.tasks - the number of tasks to seed
+ * hobson.loadtest.taskTemplate - a file containing the JSON used to create seeded tasks
+ * hobson.loadtest.writeVariables - a comma-separated list of boolean or numeric device variable names to write
+ * hobson.loadtest.report - the file to write the report to
+ *
+ * The mock hub's managers answer immediately unless latency is injected with the "hobson.rest.latency.*" properties
+ * (see LatencyInjector), e.g. mvn test -Ploadtest -Dhobson.rest.latency.device.base=20.
+ *
+ * Writes only ever touch the tasks the test seeds and the device variables named by "hobson.loadtest.writeVariables".
+ * Against the mock hub that defaults to the variable each seeded device has for this purpose; against a running hub
+ * it defaults to none, since writing to a real device variable changes the state of a real device. Devices and their
+ * variables are published by plugins rather than created through the API, so a running hub is expected to have the
+ * device plugins that make up the data set; the devices and variables found are recorded in the report.
+ */
+public class LoadTest extends BaseTest {
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+    static final String TASK_PREFIX = "loadtest-";
+
+    private String pathPrefix;
+
+    @Test
+    public void testLoad() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("hobson.loadtest"));
+
+        final int concurrency = Integer.getInteger("hobson.loadtest.concurrency", 16);
+        final long warmup = TimeUnit.SECONDS.toMillis(Integer.getInteger("hobson.loadtest.warmup", 10));
+        final long duration = TimeUnit.SECONDS.toMillis(Integer.getInteger("hobson.loadtest.duration", 60));
+        final double writeRatio = Double.parseDouble(System.getProperty("hobson.loadtest.writeRatio", "0.1"));
+        final long seed = Long.getLong("hobson.loadtest.seed", 1L);
+        String uri = System.getProperty("hobson.loadtest.uri");
+        String writeNames = System.getProperty("hobson.loadtest.writeVariables");
+
+        MockHub mockHub = null;
+        final LoadClient client;
+        if (uri == null) {
+            mockHub = new MockHub(Integer.getInteger("hobson.loadtest.port", 8183), Integer.getInteger("hobson.loadtest.devices", 100), Integer.getInteger("hobson.loadtest.variablesPerDevice", 5));
+            mockHub.start();
+            uri = mockHub.getUri();
+            pathPrefix = mockHub.getApiRoot();
+            client = new LoadClient(uri, mockHub.getAuthorization());
+            if (writeNames == null) {
+                writeNames = MockHub.WRITE_VARIABLE;
+            }
+        } else {
+            pathPrefix = apiPrefix;
+            client = new LoadClient(uri, getUsername(), getPassword());
+        }
+
+        try {
+            runLoad(client, uri, mockHub != null, writeNames, concurrency, warmup, duration, writeRatio, seed);
+        } finally {
+            if (mockHub != null) {
+                mockHub.stop();
+            }
+        }
+    }
+
+    private void runLoad(final LoadClient client, String uri, boolean mock, String writeNames, int concurrency, final long warmup, final long duration, final double writeRatio, long seed) throws Exception {
+        // seed and discover the data set
+        JSONObject hub = client.getJSON(createPath(HubResource.PATH));
+        List<String> taskIds = seedTasks(client, Integer.getInteger("hobson.loadtest.tasks", 50));
+        List<String> deviceIds = new ArrayList<>();
+        List<JSONObject> writeVariables = new ArrayList<>();
+        int variableCount = discoverDevices(client, deviceIds, writeVariables, writeNames);
+        assertFalse("No devices or tasks to exercise", deviceIds.isEmpty() && taskIds.isEmpty());
+
+        final List<Operation> reads = createReadOperations(deviceIds);
+        final List<Operation> writes = createWriteOperations(taskIds, writeVariables);
+
+        // run the workload
+        final long start = System.currentTimeMillis();
+        final long recordStart = start + warmup;
+        final long end = recordStart + duration;
+        final List<LatencyRecorder> recorders = new ArrayList<>();
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(concurrency);
+
+        for (int i = 0; i < concurrency; i++) {
+            final LatencyRecorder recorder = new LatencyRecorder();
+            final Random random = new Random(seed + i);
+            recorders.add(recorder);
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        long now;
+                        while ((now = System.currentTimeMillis()) < end) {
+                            List<Operation> ops = (!writes.isEmpty() && random.nextDouble() < writeRatio) ? writes : reads;
+                            Operation op = ops.get(random.nextInt(ops.size()));
+                            boolean error;
+                            long s = System.nanoTime();
+                            try {
+                                error = client.request(op.method, op.path, op.createBody(random)).getStatus() >= 400;
+                            } catch (IOException e) {
+                                error = true;
+                                failures.incrementAndGet();
+                            }
+                            long elapsed = System.nanoTime() - s;
+                            if (now >= recordStart) {
+                                recorder.record(op.endpoint, elapsed, error);
+                            }
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "loadtest-" + i);
+            t.start();
+        }
+
+        assertTrue(done.await(warmup + duration + 60000, TimeUnit.MILLISECONDS));
+
+        // merge results and write the report
+        LatencyRecorder all = new LatencyRecorder();
+        for (LatencyRecorder r : recorders) {
+            all.merge(r);
+        }
+
+        JSONObject dataset = new JSONObject();
+        dataset.put("devices", deviceIds.size());
+        dataset.put("variables", variableCount);
+        dataset.put("tasks", taskIds.size());
+
+        JSONObject config = new JSONObject();
+        config.put("uri", uri);
+        config.put("mockHub", mock);
+        config.put("concurrency", concurrency);
+        config.put("warmupMs", warmup);
+        config.put("durationMs", duration);
+        config.put("writeRatio", writeRatio);
+        config.put("seed", seed);
+        config.put("writeVariables", (writeNames != null) ? writeNames : "");
+
+        JSONObject report = all.toJSON(duration);
+        report.put("startTime", start);
+        report.put("hubVersion", hub.optString("version", null));
+        report.put("config", config);
+        report.put("dataset", dataset);
+        report.put("connectionFailures", failures.get());
+
+        File file = new File(System.getProperty("hobson.loadtest.report", "target/loadtest/loadtest-" + start + ".json"));
+        writeReport(file, report);
+        logger.info("Load test report written to {}", file.getAbsolutePath());
+    }
+
+    private List<String> seedTasks(LoadClient client, int count) throws IOException {
+        String tasksPath = createPath(TasksResource.PATH);
+
+        // re-use tasks seeded by previous runs so repeated runs see the same data set
+        List<String> taskIds = findSeededTasks(client, tasksPath);
+        if (taskIds.size() < count) {
+            String template = readTaskTemplate();
+            for (int i = taskIds.size(); i < count; i++) {
+                JSONObject json = new JSONObject(template);
+                json.put("name", TASK_PREFIX + i);
+                LoadClient.Result r = client.request("POST", tasksPath, json.toString());
+                if (r.getStatus() >= 400) {
+                    logger.warn("Unable to seed tasks ({}); set hobson.loadtest.taskTemplate to a task valid for this hub", r.getStatus());
+                    break;
+                }
+            }
+            taskIds = findSeededTasks(client, tasksPath);
+        }
+        return taskIds.subList(0, Math.min(count, taskIds.size()));
+    }
+
+    private List<String> findSeededTasks(LoadClient client, String tasksPath) throws IOException {
+        List<String> ids = new ArrayList<>();
+        JSONArray items = client.getJSON(tasksPath + "?expand=item").optJSONArray("itemListElement");
+        if (items != null) {
+            for (int i = 0; i < items.length(); i++) {
+                JSONObject item = items.getJSONObject(i).optJSONObject("item");
+                if (item != null && item.optString("name").startsWith(TASK_PREFIX)) {
+                    ids.add(item.getString("@id"));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private String readTaskTemplate() throws IOException {
+        String file = System.getProperty("hobson.loadtest.taskTemplate");
+        InputStream is = (file != null) ? new FileInputStream(file) : getClass().getClassLoader().getResourceAsStream("loadtest/task.json");
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int len;
+            while ((len = is.read(buf)) != -1) {
+                baos.write(buf, 0, len);
+            }
+            return baos.toString("UTF-8");
+        } finally {
+            is.close();
+        }
+    }
+
+    private int discoverDevices(LoadClient client, List<String> deviceIds, List<JSONObject> writeVariables, String writeVariableNames) throws IOException {
+        Set<String> writeNames = new HashSet<>();
+        if (writeVariableNames != null && !writeVariableNames.isEmpty()) {
+            writeNames.addAll(Arrays.asList(writeVariableNames.split(",")));
+        }
+        int variableCount = 0;
+
+        JSONArray items = client.getJSON(createPath(DevicesResource.PATH)).optJSONArray("itemListElement");
+        if (items != null) {
+            for (int i = 0; i < items.length(); i++) {
+                String deviceId = items.getJSONObject(i).getJSONObject("item").getString("@id");
+                deviceIds.add(deviceId);
+
+                JSONObject device = client.getJSON(deviceId + "?expand=variables");
+                JSONObject variables = device.optJSONObject("variables");
+                JSONArray vitems = (variables != null) ? variables.optJSONArray("itemListElement") : null;
+                if (vitems != null) {
+                    for (int j = 0; j < vitems.length(); j++) {
+                        JSONObject v = vitems.getJSONObject(j).optJSONObject("item");
+                        variableCount++;
+                        if (v != null && writeNames.contains(v.optString("name")) && (v.opt("value") instanceof Boolean || v.opt("value") instanceof Number)) {
+                            writeVariables.add(v);
+                        }
+                    }
+                }
+            }
+        }
+
+        return variableCount;
+    }
+
+    private List<Operation> createReadOperations(List<String> deviceIds) {
+        List<Operation> ops = new ArrayList<>();
+        ops.add(new Operation("GET", HubResource.PATH, createPath(HubResource.PATH)));
+        ops.add(new Operation("GET", DevicesResource.PATH, createPath(DevicesResource.PATH) + "?expand=item"));
+        ops.add(new Operation("GET", TasksResource.PATH, createPath(TasksResource.PATH) + "?expand=item"));
+        ops.add(new Operation("GET", LocalPluginsResource.PATH, createPath(LocalPluginsResource.PATH)));
+        ops.add(new Operation("GET", GlobalVariablesResource.PATH, createPath(GlobalVariablesResource.PATH)));
+
+        // device reads are weighted by the number of devices so that larger data sets shift the mix toward them
+        for (String deviceId : deviceIds) {
+            ops.add(new Operation("GET", DeviceResource.PATH, deviceId + "?expand=variables"));
+        }
+        return ops;
+    }
+
+    private List<Operation> createWriteOperations(List<String> taskIds, List<JSONObject> writeVariables) {
+        List<Operation> ops = new ArrayList<>();
+        for (final String taskId : taskIds) {
+            ops.add(new Operation("PATCH", TaskResource.PATH, taskId) {
+                @Override
+                String createBody(Random random) {
+                    JSONObject json = new JSONObject();
+                    json.put("enabled", random.nextBoolean());
+                    return json.toString();
+                }
+            });
+        }
+        for (JSONObject v : writeVariables) {
+            final boolean bool = v.opt("value") instanceof Boolean;
+            ops.add(new Operation("PUT", DeviceVariableResource.PATH, v.getString("@id")) {
+                @Override
+                String createBody(Random random) {
+                    JSONObject json = new JSONObject();
+                    if (bool) {
+                        json.put("value", random.nextBoolean());
+                    } else {
+                        json.put("value", random.nextInt(101));
+                    }
+                    return json.toString();
+                }
+            });
+        }
+        return ops;
+    }
+
+    private String createPath(String template) {
+        return pathPrefix + template.replace("{hubId}", "local");
+    }
+
+    private void writeReport(File file, JSONObject report) throws IOException {
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(report.toString(2).getBytes("UTF-8"));
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * A request in the workload. The endpoint is the resource's path template so results are grouped by resource
+     * rather than by individual device or task.
+     */
+    static class Operation {
+        final String method;
+        final String endpoint;
+        final String path;
+
+        Operation(String method, String template, String path) {
+            this.method = method;
+            this.endpoint = method + " " + template;
+            this.path = path;
+        }
+
+        String createBody(Random random) {
+            return null;
+        }
+    }
+}
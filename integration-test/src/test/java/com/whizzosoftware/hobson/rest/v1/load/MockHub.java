@@ -0,0 +1,259 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.load;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.whizzosoftware.hobson.api.action.ActionManager;
+import com.whizzosoftware.hobson.api.action.MockActionManager;
+import com.whizzosoftware.hobson.api.activity.ActivityLogManager;
+import com.whizzosoftware.hobson.api.activity.MockActivityLogManager;
+import com.whizzosoftware.hobson.api.data.DataStreamManager;
+import com.whizzosoftware.hobson.api.data.MockDataStreamManager;
+import com.whizzosoftware.hobson.api.device.DeviceContext;
+import com.whizzosoftware.hobson.api.device.DeviceManager;
+import com.whizzosoftware.hobson.api.device.DeviceType;
+import com.whizzosoftware.hobson.api.device.HobsonDeviceDescriptor;
+import com.whizzosoftware.hobson.api.device.MockDeviceManager;
+import com.whizzosoftware.hobson.api.event.EventManager;
+import com.whizzosoftware.hobson.api.event.MockEventManager;
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import com.whizzosoftware.hobson.api.hub.HubManager;
+import com.whizzosoftware.hobson.api.hub.MockHubManager;
+import com.whizzosoftware.hobson.api.image.ImageManager;
+import com.whizzosoftware.hobson.api.image.MockImageManager;
+import com.whizzosoftware.hobson.api.persist.IdProvider;
+import com.whizzosoftware.hobson.api.plugin.MockPluginManager;
+import com.whizzosoftware.hobson.api.plugin.PluginManager;
+import com.whizzosoftware.hobson.api.presence.MockPresenceManager;
+import com.whizzosoftware.hobson.api.presence.PresenceManager;
+import com.whizzosoftware.hobson.api.security.AccessManager;
+import com.whizzosoftware.hobson.api.security.HobsonUser;
+import com.whizzosoftware.hobson.api.task.MockTaskManager;
+import com.whizzosoftware.hobson.api.task.TaskManager;
+import com.whizzosoftware.hobson.api.variable.DeviceVariableContext;
+import com.whizzosoftware.hobson.api.variable.DeviceVariableDescriptor;
+import com.whizzosoftware.hobson.api.variable.DeviceVariableState;
+import com.whizzosoftware.hobson.api.variable.VariableMask;
+import com.whizzosoftware.hobson.dto.ExpansionFields;
+import com.whizzosoftware.hobson.dto.context.DTOBuildContext;
+import com.whizzosoftware.hobson.dto.context.DTOBuildContextFactory;
+import com.whizzosoftware.hobson.dto.context.MediaProxyDTOBuildContext;
+import com.whizzosoftware.hobson.rest.v1.AbstractApiV1Application;
+import com.whizzosoftware.hobson.rest.v1.util.LatencyInjector;
+import com.whizzosoftware.hobson.rest.v1.util.RestResourceIdProvider;
+import org.restlet.Component;
+import org.restlet.data.Protocol;
+import org.restlet.ext.guice.SelfInjectingServerResourceModule;
+import org.restlet.routing.Router;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs the REST API in-process against the hobson-hub-api-mock managers with a seeded data set, so that the load test
+ * is reproducible without a running hub or any device plugins.
+ *
+ * Each seeded device has a boolean "on" variable, a number of read-only numeric variables and one writable numeric
+ * variable (WRITE_VARIABLE) that exists only so the load test has something safe to write to. Requests are
+ * authenticated with the bearer token returned by getAuthorization() and every request is authorized.
+ *
+ * The device, plugin and data stream managers are wrapped with LatencyInjector (from the hobson-hub-restv1 test-jar)
+ * after seeding, so setting the "hobson.rest.latency.*" system properties described there adds latency, jitter and
+ * failures to the calls the API makes, e.g. -Dhobson.rest.latency.device.base=20 -Dhobson.rest.latency.device.jitter=30.
+ */
+public class MockHub {
+    public static final String PLUGIN_ID = "com.whizzosoftware.hobson.loadtest";
+    public static final String WRITE_VARIABLE = "loadtestLevel";
+
+    static final String TOKEN = "loadtest";
+
+    private final int port;
+    private final int deviceCount;
+    private final int variablesPerDevice;
+    private Component component;
+
+    /**
+     * Constructor.
+     *
+     * @param port the HTTP port to listen on
+     * @param deviceCount the number of devices to seed
+     * @param variablesPerDevice the number of read-only numeric variables to seed on each device
+     */
+    public MockHub(int port, int deviceCount, int variablesPerDevice) {
+        this.port = port;
+        this.deviceCount = deviceCount;
+        this.variablesPerDevice = variablesPerDevice;
+    }
+
+    public String getUri() {
+        return "http://localhost:" + port;
+    }
+
+    public String getApiRoot() {
+        return AbstractApiV1Application.API_ROOT;
+    }
+
+    public String getAuthorization() {
+        return "Bearer " + TOKEN;
+    }
+
+    public void start() throws Exception {
+        MockDeviceManager deviceManager = new MockDeviceManager();
+        seedDevices(deviceManager);
+
+        Injector injector = Guice.createInjector(new SelfInjectingServerResourceModule(), new MockHubModule(LatencyInjector.decorate(deviceManager)));
+
+        component = new Component();
+        component.getServers().add(Protocol.HTTP, port);
+        component.getDefaultHost().attach(getApiRoot(), injector.getInstance(Application.class));
+        component.start();
+    }
+
+    public void stop() throws Exception {
+        if (component != null) {
+            component.stop();
+            component = null;
+        }
+    }
+
+    private void seedDevices(MockDeviceManager deviceManager) {
+        HubContext hctx = HubContext.createLocal();
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < deviceCount; i++) {
+            DeviceContext dctx = DeviceContext.create(hctx, PLUGIN_ID, "device" + i);
+            List<DeviceVariableDescriptor> variables = new ArrayList<>();
+            List<DeviceVariableState> states = new ArrayList<>();
+
+            addVariable(variables, states, DeviceVariableContext.create(dctx, "on"), VariableMask.READ_WRITE, (i % 2) == 0, now);
+            for (int j = 0; j < variablesPerDevice; j++) {
+                addVariable(variables, states, DeviceVariableContext.create(dctx, "value" + j), VariableMask.READ_ONLY, i * j, now);
+            }
+            addVariable(variables, states, DeviceVariableContext.create(dctx, WRITE_VARIABLE), VariableMask.READ_WRITE, 0, now);
+
+            deviceManager.publishDevice(new HobsonDeviceDescriptor.Builder(dctx).name("Load test device " + i).type(DeviceType.LIGHTBULB).variables(variables).build());
+            for (DeviceVariableState s : states) {
+                deviceManager.setDeviceVariableState(s);
+            }
+        }
+    }
+
+    private void addVariable(List<DeviceVariableDescriptor> variables, List<DeviceVariableState> states, DeviceVariableContext vctx, VariableMask mask, Object value, long now) {
+        variables.add(new DeviceVariableDescriptor.Builder(vctx).mask(mask).build());
+        states.add(new DeviceVariableState(vctx, value, now));
+    }
+
+    /**
+     * The API application as it would be mounted by a hub.
+     */
+    static public class Application extends AbstractApiV1Application {
+        @Override
+        protected String getRealmName() {
+            return "Hobson";
+        }
+
+        @Override
+        protected void createAdditionalResources(Router secureRouter, Router insecureRouter) {
+        }
+    }
+
+    /**
+     * Binds the manager interfaces to the mock managers.
+     */
+    private class MockHubModule extends AbstractModule {
+        private final DeviceManager deviceManager;
+
+        MockHubModule(DeviceManager deviceManager) {
+            this.deviceManager = deviceManager;
+        }
+
+        @Override
+        protected void configure() {
+            final HubManager hubManager = new MockHubManager();
+            final PluginManager pluginManager = LatencyInjector.decorate(new MockPluginManager());
+            final TaskManager taskManager = new MockTaskManager();
+            final ActionManager actionManager = new MockActionManager();
+            final PresenceManager presenceManager = new MockPresenceManager();
+            final DataStreamManager dataStreamManager = LatencyInjector.decorate(new MockDataStreamManager());
+            final IdProvider idProvider = new RestResourceIdProvider();
+
+            bind(AccessManager.class).toInstance(createAccessManager());
+            bind(ActionManager.class).toInstance(actionManager);
+            bind(ActivityLogManager.class).toInstance(new MockActivityLogManager());
+            bind(DataStreamManager.class).toInstance(dataStreamManager);
+            bind(DeviceManager.class).toInstance(deviceManager);
+            bind(EventManager.class).toInstance(new MockEventManager());
+            bind(HubManager.class).toInstance(hubManager);
+            bind(IdProvider.class).toInstance(idProvider);
+            bind(ImageManager.class).toInstance(new MockImageManager());
+            bind(PluginManager.class).toInstance(pluginManager);
+            bind(PresenceManager.class).toInstance(presenceManager);
+            bind(TaskManager.class).toInstance(taskManager);
+            bind(DTOBuildContextFactory.class).toInstance(new DTOBuildContextFactory() {
+                @Override
+                public DTOBuildContext createContext(String apiRoot, ExpansionFields expansions) {
+                    return new MediaProxyDTOBuildContext.Builder(apiRoot)
+                        .hubManager(hubManager)
+                        .deviceManager(deviceManager)
+                        .pluginManager(pluginManager)
+                        .taskManager(taskManager)
+                        .actionManager(actionManager)
+                        .presenceManager(presenceManager)
+                        .dataStreamManager(dataStreamManager)
+                        .idProvider(idProvider)
+                        .expansionFields(expansions)
+                        .build();
+                }
+
+                @Override
+                public DTOBuildContext createContext(String hostDomain, String apiRoot, ExpansionFields expansions) {
+                    return createContext(apiRoot, expansions);
+                }
+            });
+        }
+    }
+
+    /**
+     * Creates an access manager that accepts the load test's token and authorizes every request.
+     *
+     * @return an AccessManager
+     */
+    private AccessManager createAccessManager() {
+        final HobsonUser user = new HobsonUser.Builder("local").givenName("Load").familyName("Test").roles(Collections.<String>emptyList()).build();
+        return (AccessManager)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {AccessManager.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "authenticate":
+                        return TOKEN.equals(args[0]) ? user : null;
+                    case "getHubsForUser":
+                        return Collections.singletonList(HubContext.createLocal());
+                    case "getRoles":
+                    case "getUsers":
+                        return Collections.emptyList();
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return "LoadTestAccessManager";
+                    default:
+                        return (method.getReturnType() == boolean.class) ? false : null;
+                }
+            }
+        });
+    }
+}
@@ -9,10 +9,15 @@
 */
 package com.whizzosoftware.hobson.dto.context;
 
+import com.whizzosoftware.hobson.api.device.DeviceContext;
+import com.whizzosoftware.hobson.api.device.HobsonDeviceDescriptor;
 import com.whizzosoftware.hobson.api.hub.HubContext;
+import com.whizzosoftware.hobson.api.plugin.HobsonPluginDescriptor;
+import com.whizzosoftware.hobson.api.plugin.PluginContext;
 import com.whizzosoftware.hobson.api.variable.*;
 import com.whizzosoftware.hobson.rest.v1.resource.device.DeviceMediaProxyResource;
-import org.restlet.routing.Template;
+import com.whizzosoftware.hobson.rest.v1.util.CompiledTemplate;
+import com.whizzosoftware.hobson.rest.v1.util.RestMetrics;
 
 import java.util.*;
 
@@ -20,10 +25,27 @@ import java.util.*;
  * An implementation of DTOBuildContext that uses Hobson manager objects for data and replaces any variable
  * media URL values with a local proxy URL.
  *
+ * A context is created per request, so device descriptor, plugin descriptor and variable state lookups are memoized
+ * for its lifetime to avoid repeated manager calls when the same devices are expanded more than once. Each lookup
+ * made through the context counts once as a memo hit or miss in RestMetrics; a variable state miss doesn't also count
+ * the device lookup it makes internally.
+ *
+ * Proxy URLs are formatted from a precompiled template. The stub variable state built from one is shared across
+ * requests through a bounded LRU cache keyed by the variable and its last update time, so a stub is only rebuilt when
+ * its variable changes; stubs for variables that change or go away simply age out. The cache size can be set with
+ * the "hobson.rest.proxyStubCacheSize" system property.
+ *
  * @author Dan Noguerol
  */
 public class MediaProxyDTOBuildContext extends ManagerDTOBuildContext {
+    private static final CompiledTemplate PROXY_TEMPLATE = new CompiledTemplate(DeviceMediaProxyResource.PATH, "hubId", "pluginId", "deviceId", "mediaId");
+    static final int PROXY_STUB_CACHE_SIZE = Integer.getInteger("hobson.rest.proxyStubCacheSize", 4096);
+    static final ProxyStubCache proxyStubs = new ProxyStubCache(PROXY_STUB_CACHE_SIZE);
+
     private String apiRoot;
+    private final Map<String,HobsonDeviceDescriptor> deviceMemo = new HashMap<>();
+    private final Map<String,HobsonPluginDescriptor> pluginMemo = new HashMap<>();
+    private final Map<String,DeviceVariableState> stateMemo = new HashMap<>();
 
     private MediaProxyDTOBuildContext(String apiRoot) {
         this.apiRoot = apiRoot;
@@ -31,39 +53,122 @@ public class MediaProxyDTOBuildContext extends ManagerDTOBuildContext {
 
     @Override
     public DeviceVariableState getDeviceVariableState(DeviceVariableContext vctx) {
+        String key = createDeviceKey(vctx.getHubContext(), vctx.getPluginId(), vctx.getDeviceId()) + ":" + vctx.getName();
+        if (stateMemo.containsKey(key)) {
+            RestMetrics.increment(RestMetrics.DTO_MEMO_HITS);
+            return stateMemo.get(key);
+        }
+        RestMetrics.increment(RestMetrics.DTO_MEMO_MISSES);
+
         DeviceVariableState s = super.getDeviceVariableState(vctx);
-        return createStubVariableIfNecessary(vctx.getHubContext(), deviceManager.getDevice(vctx.getDeviceContext()).getVariable(vctx.getName()), s);
+        HobsonDeviceDescriptor device = lookupDevice(createDeviceKey(vctx.getHubContext(), vctx.getPluginId(), vctx.getDeviceId()), vctx.getDeviceContext());
+        s = createStubVariableIfNecessary(device != null ? device.getVariable(vctx.getName()) : null, s);
+        stateMemo.put(key, s);
+        return s;
     }
 
-    private DeviceVariableState createStubVariableIfNecessary(HubContext hctx, DeviceVariableDescriptor v, DeviceVariableState s) {
+    @Override
+    public HobsonDeviceDescriptor getDevice(DeviceContext dctx) {
+        String key = createDeviceKey(dctx.getHubContext(), dctx.getPluginId(), dctx.getDeviceId());
+        RestMetrics.increment(deviceMemo.containsKey(key) ? RestMetrics.DTO_MEMO_HITS : RestMetrics.DTO_MEMO_MISSES);
+        return lookupDevice(key, dctx);
+    }
+
+    @Override
+    public HobsonPluginDescriptor getPlugin(PluginContext pctx) {
+        String key = pctx.getHubContext().getHubId() + ":" + pctx.getPluginId();
+        if (pluginMemo.containsKey(key)) {
+            RestMetrics.increment(RestMetrics.DTO_MEMO_HITS);
+            return pluginMemo.get(key);
+        }
+        RestMetrics.increment(RestMetrics.DTO_MEMO_MISSES);
+
+        HobsonPluginDescriptor p = super.getPlugin(pctx);
+        pluginMemo.put(key, p);
+        return p;
+    }
+
+    private HobsonDeviceDescriptor lookupDevice(String key, DeviceContext dctx) {
+        if (deviceMemo.containsKey(key)) {
+            return deviceMemo.get(key);
+        }
+        HobsonDeviceDescriptor d = deviceManager.getDevice(dctx);
+        deviceMemo.put(key, d);
+        return d;
+    }
+
+    private String createDeviceKey(HubContext hctx, String pluginId, String deviceId) {
+        return hctx.getHubId() + ":" + pluginId + ":" + deviceId;
+    }
+
+    private DeviceVariableState createStubVariableIfNecessary(DeviceVariableDescriptor v, DeviceVariableState s) {
         if (v != null && v.hasMediaType() && s != null) {
-            return new DeviceVariableState(v.getContext(), getProxyValue(hctx, v, s), s.getLastUpdate());
+            DeviceVariableContext vctx = v.getContext();
+            ProxyStubKey key = new ProxyStubKey(apiRoot, vctx, s.getLastUpdate());
+            DeviceVariableState stub = proxyStubs.get(key);
+            if (stub == null) {
+                String url = PROXY_TEMPLATE.format(apiRoot, vctx.getHubContext().getHubId(), vctx.getPluginId(), vctx.getDeviceId(), vctx.getName());
+                stub = new DeviceVariableState(vctx, url, s.getLastUpdate());
+                proxyStubs.put(key, stub);
+            }
+            return stub;
         } else {
             return s;
         }
     }
 
-    private Object getProxyValue(HubContext hctx, DeviceVariableDescriptor v, DeviceVariableState s) {
-        Object value = null;
+    /**
+     * A thread-safe, access-ordered LRU cache of stub variable states.
+     */
+    static class ProxyStubCache {
+        private final LinkedHashMap<ProxyStubKey,DeviceVariableState> stubs;
 
-        if (v != null && s != null) {
-            value = s.getValue();
-            if (v.hasMediaType()) {
-                value = apiRoot + new Template(DeviceMediaProxyResource.PATH).format(
-                    createParamMap(hctx, v.getContext().getPluginId(), v.getContext().getDeviceId(), v.getContext().getName())
-                );
-            }
+        ProxyStubCache(final int maxSize) {
+            stubs = new LinkedHashMap<ProxyStubKey,DeviceVariableState>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ProxyStubKey,DeviceVariableState> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        synchronized DeviceVariableState get(ProxyStubKey key) {
+            return stubs.get(key);
+        }
+
+        synchronized void put(ProxyStubKey key, DeviceVariableState stub) {
+            stubs.put(key, stub);
+        }
+
+        synchronized int size() {
+            return stubs.size();
         }
-        return value;
     }
 
-    private Map<String,String> createParamMap(HubContext hctx, String pluginId, String deviceId, String mediaId) {
-        Map<String,String> map = new HashMap<>();
-        map.put("hubId", hctx.getHubId());
-        map.put("pluginId", pluginId);
-        map.put("deviceId", deviceId);
-        map.put("mediaId", mediaId);
-        return map;
+    static class ProxyStubKey {
+        private final String apiRoot;
+        private final DeviceVariableContext vctx;
+        private final Long lastUpdate;
+
+        ProxyStubKey(String apiRoot, DeviceVariableContext vctx, Long lastUpdate) {
+            this.apiRoot = apiRoot;
+            this.vctx = vctx;
+            this.lastUpdate = lastUpdate;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ProxyStubKey)) {
+                return false;
+            }
+            ProxyStubKey k = (ProxyStubKey)o;
+            return apiRoot.equals(k.apiRoot) && vctx.equals(k.vctx) && Objects.equals(lastUpdate, k.lastUpdate);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(apiRoot, vctx, lastUpdate);
+        }
     }
 
     public static final class Builder extends ManagerDTOBuildContext.Builder {
@@ -15,6 +15,7 @@ import org.restlet.Response;
 import org.restlet.data.Status;
 import org.restlet.ext.json.JsonRepresentation;
 import org.restlet.representation.Representation;
+import org.restlet.resource.ResourceException;
 import org.restlet.service.StatusService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +43,8 @@ public class HobsonStatusService extends StatusService {
             return new Status(Status.CLIENT_ERROR_BAD_REQUEST, t.getLocalizedMessage());
         } else if (t instanceof HobsonRuntimeException) {
             return new Status(Status.SERVER_ERROR_INTERNAL, t, t.getLocalizedMessage());
+        } else if (t instanceof ResourceException) {
+            return ((ResourceException)t).getStatus();
         } else if (t instanceof UnsupportedOperationException) {
             return new Status(Status.SERVER_ERROR_NOT_IMPLEMENTED, t, t.getLocalizedMessage());
         } else {
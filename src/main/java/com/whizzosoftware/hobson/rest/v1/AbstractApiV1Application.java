@@ -12,6 +12,7 @@ package com.whizzosoftware.hobson.rest.v1;
 import com.google.inject.Inject;
 import com.whizzosoftware.hobson.api.security.AccessManager;
 import com.whizzosoftware.hobson.rest.*;
+import com.whizzosoftware.hobson.rest.v1.resource.MetricsResource;
 import com.whizzosoftware.hobson.rest.v1.resource.SwaggerResource;
 import com.whizzosoftware.hobson.rest.v1.resource.action.ActionClassesResource;
 import com.whizzosoftware.hobson.rest.v1.resource.action.ActionSetsResource;
@@ -26,6 +27,7 @@ import com.whizzosoftware.hobson.rest.v1.resource.activity.ActivityLogResource;
 import com.whizzosoftware.hobson.rest.v1.resource.device.*;
 import com.whizzosoftware.hobson.rest.v1.resource.hub.*;
 import com.whizzosoftware.hobson.rest.v1.resource.image.HubImageResource;
+import com.whizzosoftware.hobson.rest.v1.resource.image.ImageLibraryCatalogResource;
 import com.whizzosoftware.hobson.rest.v1.resource.image.ImageLibraryGroupResource;
 import com.whizzosoftware.hobson.rest.v1.resource.image.ImageLibraryImageResource;
 import com.whizzosoftware.hobson.rest.v1.resource.image.ImageLibraryRootResource;
@@ -39,6 +41,7 @@ import com.whizzosoftware.hobson.rest.v1.resource.user.UserResource;
 import com.whizzosoftware.hobson.rest.v1.resource.user.UsersResource;
 import com.whizzosoftware.hobson.rest.v1.resource.variable.GlobalVariableResource;
 import com.whizzosoftware.hobson.rest.v1.resource.variable.GlobalVariablesResource;
+import com.whizzosoftware.hobson.rest.v1.util.RestServices;
 import com.whizzosoftware.hobson.rest.v1.util.RoleUtil;
 import org.restlet.Request;
 import org.restlet.Response;
@@ -65,6 +68,8 @@ abstract public class AbstractApiV1Application extends ResourceInjectingApplicat
 
     @Inject
     AccessManager accessManager;
+    @Inject
+    RestServices restServices;
 
     /**
      * Constructor that creates an challenge-based authenticator using the fully-qualified class name specified in
@@ -100,6 +105,7 @@ abstract public class AbstractApiV1Application extends ResourceInjectingApplicat
         secureRouter.attach(DataStreamsResource.PATH, DataStreamsResource.class);
         secureRouter.attach(DataStreamResource.PATH, DataStreamResource.class);
         secureRouter.attach(DataStreamDataResource.PATH, DataStreamDataResource.class);
+        secureRouter.attach(BulkDeviceVariablesResource.PATH, BulkDeviceVariablesResource.class);
         secureRouter.attach(DeviceActionClassResource.PATH, DeviceActionClassResource.class);
         secureRouter.attach(DeviceActionClassesResource.PATH, DeviceActionClassesResource.class);
         secureRouter.attach(DeviceResource.PATH, DeviceResource.class);
@@ -113,6 +119,7 @@ abstract public class AbstractApiV1Application extends ResourceInjectingApplicat
         secureRouter.attach(GlobalVariableResource.PATH, GlobalVariableResource.class);
         secureRouter.attach(GlobalVariablesResource.PATH, GlobalVariablesResource.class);
         secureRouter.attach(ActionClassesResource.PATH, ActionClassesResource.class);
+        secureRouter.attach(HubChangesResource.PATH, HubChangesResource.class);
         secureRouter.attach(HubConfigurationResource.PATH, HubConfigurationResource.class);
         secureRouter.attach(HubConfigurationClassResource.PATH, HubConfigurationClassResource.class);
         secureRouter.attach(HubImageResource.PATH, HubImageResource.class);
@@ -123,6 +130,7 @@ abstract public class AbstractApiV1Application extends ResourceInjectingApplicat
         secureRouter.attach(HubRemoteRepositoryResource.PATH, HubRemoteRepositoryResource.class);
         secureRouter.attach(HubsResource.PATH, HubsResource.class);
         secureRouter.attach(HubSerialPortsResource.PATH, HubSerialPortsResource.class);
+        secureRouter.attach(ImageLibraryCatalogResource.PATH, ImageLibraryCatalogResource.class);
         secureRouter.attach(ImageLibraryGroupResource.PATH, ImageLibraryGroupResource.class);
         secureRouter.attach(ImageLibraryImageResource.PATH, ImageLibraryImageResource.class);
         secureRouter.attach(ImageLibraryRootResource.PATH, ImageLibraryRootResource.class);
@@ -136,6 +144,7 @@ abstract public class AbstractApiV1Application extends ResourceInjectingApplicat
         secureRouter.attach(LocalPluginImageResource.PATH, LocalPluginImageResource.class);
         secureRouter.attach(LocalPluginReloadResource.PATH, LocalPluginReloadResource.class);
         secureRouter.attach(HubLogResource.PATH, HubLogResource.class);
+        secureRouter.attach(MetricsResource.PATH, MetricsResource.class);
         secureRouter.attach(DeviceMediaProxyResource.PATH, DeviceMediaProxyResource.class);
         secureRouter.attach(PluginDevicesResource.PATH, PluginDevicesResource.class);
         secureRouter.attach(PresenceEntitiesResource.PATH, PresenceEntitiesResource.class);
@@ -180,6 +189,14 @@ abstract public class AbstractApiV1Application extends ResourceInjectingApplicat
         };
     }
 
+    @Override
+    public synchronized void stop() throws Exception {
+        super.stop();
+        if (restServices != null) {
+            restServices.shutdown();
+        }
+    }
+
     public String getApiRoot() {
         return API_ROOT;
     }
@@ -0,0 +1,60 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.resource;
+
+import com.whizzosoftware.hobson.api.security.AccessManager;
+import com.whizzosoftware.hobson.api.security.AuthorizationAction;
+import com.whizzosoftware.hobson.rest.HobsonRestContext;
+import com.whizzosoftware.hobson.rest.HobsonRestUser;
+import com.whizzosoftware.hobson.rest.v1.util.RestMetrics;
+import org.json.JSONObject;
+import org.restlet.data.MediaType;
+import org.restlet.ext.guice.SelfInjectingServerResource;
+import org.restlet.ext.json.JsonRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.ResourceException;
+
+import javax.inject.Inject;
+import java.util.Map;
+
+/**
+ * A REST resource that returns the REST layer's internal counters. The counters are process-wide rather than
+ * per-hub, so the resource lives outside the hub hierarchy and is restricted to administrators.
+ */
+public class MetricsResource extends SelfInjectingServerResource {
+    public static final String PATH = "/metrics";
+
+    @Inject
+    AccessManager accessManager;
+
+    @Override
+    protected Representation get() throws ResourceException {
+        final HobsonRestContext ctx = HobsonRestContext.createContext(getApplication(), getRequest().getClientInfo(), getRequest().getResourceRef().getPath());
+
+        accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.HUB_CONFIGURE, null);
+
+        JSONObject counters = new JSONObject();
+        for (Map.Entry<String,Long> e : RestMetrics.snapshot().entrySet()) {
+            counters.put(e.getKey(), e.getValue());
+        }
+
+        JSONObject ratios = new JSONObject();
+        ratios.put("variableWrites.coalescingRatio", RestMetrics.ratio(RestMetrics.VARIABLE_WRITES_COALESCED, RestMetrics.VARIABLE_WRITES_RECEIVED));
+
+        JSONObject json = new JSONObject();
+        json.put("@id", ctx.getApiRoot() + PATH);
+        json.put("counters", counters);
+        json.put("ratios", ratios);
+
+        JsonRepresentation jr = new JsonRepresentation(json);
+        jr.setMediaType(MediaType.APPLICATION_JSON);
+        return jr;
+    }
+}
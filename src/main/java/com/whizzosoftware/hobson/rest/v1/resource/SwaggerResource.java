@@ -9,24 +9,46 @@
 */
 package com.whizzosoftware.hobson.rest.v1.resource;
 
+import com.whizzosoftware.hobson.api.HobsonNotFoundException;
+import com.whizzosoftware.hobson.rest.v1.util.CachedContent;
 import org.restlet.data.MediaType;
 import org.restlet.ext.guice.SelfInjectingServerResource;
-import org.restlet.representation.InputRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.resource.ResourceException;
 
+import java.io.InputStream;
+
 /**
- * Resource that serves up the Swagger API definition file.
+ * Resource that serves up the Swagger API definition file. The file is read from the bundle once and served from
+ * memory thereafter.
  *
  * @author Dan Noguerol
  */
 public class SwaggerResource extends SelfInjectingServerResource {
     public static final String PATH = "/swagger.json";
 
+    private static volatile CachedContent content;
+
     @Override
     protected Representation get() throws ResourceException {
-        InputRepresentation ir = new InputRepresentation(getClass().getClassLoader().getResourceAsStream("swagger.json"));
-        ir.setMediaType(MediaType.APPLICATION_JSON);
-        return ir;
+        return getContent().createRepresentation(getRequest(), getResponse());
+    }
+
+    private CachedContent getContent() {
+        CachedContent c = content;
+        if (c == null) {
+            synchronized (SwaggerResource.class) {
+                c = content;
+                if (c == null) {
+                    InputStream is = getClass().getClassLoader().getResourceAsStream("swagger.json");
+                    if (is == null) {
+                        throw new HobsonNotFoundException("Unable to find API definition");
+                    }
+                    c = CachedContent.create(is, MediaType.APPLICATION_JSON);
+                    content = c;
+                }
+            }
+        }
+        return c;
     }
 }
@@ -24,6 +24,7 @@ import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.v1.util.DTOMapper;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
+import com.whizzosoftware.hobson.rest.v1.util.PropertyContainerClassCache;
 import org.restlet.ext.guice.SelfInjectingServerResource;
 import org.restlet.ext.json.JsonRepresentation;
 import org.restlet.representation.Representation;
@@ -42,6 +43,8 @@ public class ActionSetsResource extends SelfInjectingServerResource {
     IdProvider idProvider;
     @Inject
     DTOBuildContextFactory dtoBuildContextFactory;
+    @Inject
+    PropertyContainerClassCache containerClassCache;
 
     @Override
     protected Representation get() throws ResourceException {
@@ -54,12 +57,7 @@ public class ActionSetsResource extends SelfInjectingServerResource {
         ItemListDTO dto = new ItemListDTO(bctx, idProvider.createTaskActionSetsId(ctx.getHubContext()));
         boolean expandItems = expansions.has("item");
 
-        PropertyContainerClassProvider pccp = new PropertyContainerClassProvider() {
-            @Override
-            public PropertyContainerClass getPropertyContainerClass(PropertyContainerClassContext ctx) {
-                return actionManager.getActionClass(ctx);
-            }
-        };
+        PropertyContainerClassProvider pccp = containerClassCache.getActionClassProvider();
 
         for (PropertyContainerSet actionSet : actionManager.getActionSets(ctx.getHubContext())) {
             PropertyContainerSetDTO.Builder builder = new PropertyContainerSetDTO.Builder(
@@ -0,0 +1,151 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.resource.device;
+
+import com.whizzosoftware.hobson.api.HobsonInvalidRequestException;
+import com.whizzosoftware.hobson.api.device.DeviceContext;
+import com.whizzosoftware.hobson.api.device.DeviceManager;
+import com.whizzosoftware.hobson.api.persist.IdProvider;
+import com.whizzosoftware.hobson.api.security.AccessManager;
+import com.whizzosoftware.hobson.api.security.AuthorizationAction;
+import com.whizzosoftware.hobson.api.security.HobsonUser;
+import com.whizzosoftware.hobson.api.variable.DeviceVariableContext;
+import com.whizzosoftware.hobson.rest.HobsonRestContext;
+import com.whizzosoftware.hobson.rest.HobsonRestUser;
+import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.DeviceVariableWriteCoalescer;
+import com.whizzosoftware.hobson.rest.v1.util.JSONHelper;
+import com.whizzosoftware.hobson.rest.v1.util.VariableUpdateWaiter;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.restlet.Response;
+import org.restlet.data.Status;
+import org.restlet.ext.guice.SelfInjectingServerResource;
+import org.restlet.representation.EmptyRepresentation;
+import org.restlet.representation.Representation;
+
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A REST resource that sets variables across multiple devices in a single request (e.g. turning off all the lights
+ * in a scene). Every variable is authorized and validated before any update is sent and the updates are
+ * grouped by plugin so that each plugin receives its device updates together.
+ */
+public class BulkDeviceVariablesResource extends SelfInjectingServerResource {
+    public static final String PATH = "/hubs/{hubId}/deviceVariables";
+
+    @Inject
+    AccessManager accessManager;
+    @Inject
+    DeviceManager deviceManager;
+    @Inject
+    DeviceVariableWriteCoalescer writeCoalescer;
+    @Inject
+    IdProvider idProvider;
+    @Inject
+    VariableUpdateWaiter updateWaiter;
+
+    @Override
+    protected Representation put(Representation entity) {
+        final HobsonRestContext ctx = HobsonRestContext.createContext(getApplication(), getRequest().getClientInfo(), getRequest().getResourceRef().getPath());
+        final long wait = VariableUpdateWaiter.parseWait(getQueryValue("wait"));
+
+        // group the updates by plugin and then by device
+        final HobsonUser user = ((HobsonRestUser)getClientInfo().getUser()).getUser();
+        final Set<String> authorized = new HashSet<>();
+        final Map<String,Map<String,Map<String,Object>>> plugins = new TreeMap<>();
+        JSONArray values = getValues(JSONHelper.createJSONFromRepresentation(entity));
+        for (int i = 0; i < values.length(); i++) {
+            JSONObject json = values.getJSONObject(i);
+            if (!json.has("@id") || !json.has("value")) {
+                throw new HobsonInvalidRequestException("Each variable update must include an @id and value");
+            }
+
+            DeviceVariableContext vctx = idProvider.createDeviceVariableContext(json.getString("@id"));
+            if (vctx == null || vctx.getPluginId() == null || vctx.getDeviceId() == null || vctx.getName() == null || !ctx.getHubContext().getHubId().equals(vctx.getHubContext().getHubId())) {
+                throw new HobsonInvalidRequestException("Invalid device variable: " + json.getString("@id"));
+            }
+
+            // authorize each variable against its own path just as the single variable resource does
+            String path = PathUtil.convertPath(ctx.getApiRoot(), idProvider.createDeviceVariableId(vctx).getId());
+            if (authorized.add(path)) {
+                accessManager.authorize(user, AuthorizationAction.DEVICE_UPDATE, path);
+            }
+
+            Map<String,Map<String,Object>> devices = plugins.get(vctx.getPluginId());
+            if (devices == null) {
+                devices = new LinkedHashMap<>();
+                plugins.put(vctx.getPluginId(), devices);
+            }
+            Map<String,Object> deviceValues = devices.get(vctx.getDeviceId());
+            if (deviceValues == null) {
+                // make sure the device exists before anything is sent
+                deviceManager.getDevice(DeviceContext.create(ctx.getHubContext(), vctx.getPluginId(), vctx.getDeviceId()));
+                deviceValues = new HashMap<>();
+                devices.put(vctx.getDeviceId(), deviceValues);
+            }
+            deviceValues.put(vctx.getName(), json.get("value"));
+        }
+
+        final Response response = getResponse();
+        response.setStatus(Status.SUCCESS_ACCEPTED);
+
+        if (wait > 0 && values.length() > 0) {
+            Map<DeviceVariableContext,Object> vars = new LinkedHashMap<>();
+            for (Map.Entry<String,Map<String,Map<String,Object>>> pe : plugins.entrySet()) {
+                for (Map.Entry<String,Map<String,Object>> de : pe.getValue().entrySet()) {
+                    for (Map.Entry<String,Object> ve : de.getValue().entrySet()) {
+                        vars.put(DeviceVariableContext.create(ctx.getHubContext(), pe.getKey(), de.getKey(), ve.getKey()), ve.getValue());
+                    }
+                }
+            }
+            response.setAutoCommitting(false);
+            updateWaiter.waitForUpdate(ctx.getHubContext(), vars, wait, new VariableUpdateWaiter.Callback() {
+                @Override
+                public void onComplete(boolean confirmed) {
+                    response.setStatus(confirmed ? Status.SUCCESS_OK : Status.SUCCESS_ACCEPTED);
+                    response.setEntity(new EmptyRepresentation());
+                    response.commit();
+                }
+
+                @Override
+                public void onCancel() {
+                    response.setStatus(Status.SERVER_ERROR_SERVICE_UNAVAILABLE);
+                    response.setEntity(new EmptyRepresentation());
+                    response.commit();
+                }
+            });
+        }
+
+        for (Map.Entry<String,Map<String,Map<String,Object>>> pe : plugins.entrySet()) {
+            for (Map.Entry<String,Map<String,Object>> e : pe.getValue().entrySet()) {
+                DeviceContext dctx = DeviceContext.create(ctx.getHubContext(), pe.getKey(), e.getKey());
+                writeCoalescer.submit(ctx.getHubContext(), dctx, e.getValue());
+            }
+        }
+
+        return (wait > 0 && values.length() > 0) ? null : new EmptyRepresentation();
+    }
+
+    private JSONArray getValues(JSONObject json) {
+        try {
+            return json.getJSONArray("values");
+        } catch (JSONException e) {
+            throw new HobsonInvalidRequestException(e.getMessage());
+        }
+    }
+}
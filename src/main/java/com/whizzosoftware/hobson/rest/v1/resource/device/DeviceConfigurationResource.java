@@ -11,6 +11,7 @@ package com.whizzosoftware.hobson.rest.v1.resource.device;
 
 import com.whizzosoftware.hobson.api.device.DeviceContext;
 import com.whizzosoftware.hobson.api.device.DeviceManager;
+import com.whizzosoftware.hobson.api.persist.IdProvider;
 import com.whizzosoftware.hobson.api.property.*;
 import com.whizzosoftware.hobson.api.security.AccessManager;
 import com.whizzosoftware.hobson.dto.ExpansionFields;
@@ -22,6 +23,7 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.ChangeJournal;
 import com.whizzosoftware.hobson.rest.v1.util.JSONHelper;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
 import org.restlet.data.Status;
@@ -47,6 +49,10 @@ public class DeviceConfigurationResource extends SelfInjectingServerResource {
     DeviceManager deviceManager;
     @Inject
     DTOBuildContextFactory dtoBuildContextFactory;
+    @Inject
+    IdProvider idProvider;
+    @Inject
+    ChangeJournal changeJournal;
 
     @Override
     protected Representation get() {
@@ -89,6 +95,7 @@ public class DeviceConfigurationResource extends SelfInjectingServerResource {
         PropertyContainerDTO dto = new PropertyContainerDTO.Builder(JSONHelper.createJSONFromRepresentation(entity)).build();
 
         deviceManager.setDeviceConfiguration(dctx, dto.getValues());
+        changeJournal.record(ctx.getHubContext(), ChangeJournal.CONFIGURATION, idProvider.createDeviceConfigurationId(dctx).getId(), ChangeJournal.UPDATED);
 
         getResponse().setStatus(Status.SUCCESS_ACCEPTED);
         return new EmptyRepresentation();
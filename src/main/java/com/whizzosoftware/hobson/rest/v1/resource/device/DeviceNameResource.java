@@ -9,6 +9,7 @@
 */
 package com.whizzosoftware.hobson.rest.v1.resource.device;
 
+import com.whizzosoftware.hobson.api.HobsonInvalidRequestException;
 import com.whizzosoftware.hobson.api.device.DeviceContext;
 import com.whizzosoftware.hobson.api.device.DeviceManager;
 import com.whizzosoftware.hobson.api.security.AccessManager;
@@ -16,14 +17,15 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.HubEventDispatcher;
 import com.whizzosoftware.hobson.rest.v1.util.JSONHelper;
-import org.json.JSONObject;
 import org.restlet.data.Status;
 import org.restlet.ext.guice.SelfInjectingServerResource;
 import org.restlet.representation.EmptyRepresentation;
 import org.restlet.representation.Representation;
 
 import javax.inject.Inject;
+import java.util.Map;
 
 public class DeviceNameResource extends SelfInjectingServerResource {
     public static final String PATH = "/hubs/{hubId}/plugins/local/{pluginId}/devices/{deviceId}/name";
@@ -32,16 +34,22 @@ public class DeviceNameResource extends SelfInjectingServerResource {
     AccessManager accessManager;
     @Inject
     DeviceManager deviceManager;
+    @Inject
+    HubEventDispatcher eventDispatcher;
 
     @Override
     protected Representation put(Representation entity) {
         final HobsonRestContext ctx = HobsonRestContext.createContext(getApplication(), getRequest().getClientInfo(), getRequest().getResourceRef().getPath());
-        JSONObject json = JSONHelper.createJSONFromRepresentation(entity);
+        Map<String,Object> fields = JSONHelper.readFieldsFromRepresentation(entity, "value");
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.DEVICE_CONFIGURE, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
         DeviceContext dctx = DeviceContext.create(ctx.getHubContext(), getAttribute("pluginId"), getAttribute("deviceId"));
-        deviceManager.setDeviceName(dctx, json.getString("value"));
+        if (!(fields.get("value") instanceof String)) {
+            throw new HobsonInvalidRequestException("No device name specified");
+        }
+        deviceManager.setDeviceName(dctx, (String)fields.get("value"));
+        eventDispatcher.fireDeviceUpdated(dctx);
 
         getResponse().setStatus(Status.SUCCESS_ACCEPTED);
         return new EmptyRepresentation();
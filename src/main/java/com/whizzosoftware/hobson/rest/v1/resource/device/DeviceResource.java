@@ -21,7 +21,9 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.HubEventDispatcher;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
+import com.whizzosoftware.hobson.rest.v1.util.SparseFields;
 import org.restlet.data.Status;
 import org.restlet.ext.guice.SelfInjectingServerResource;
 import org.restlet.ext.json.JsonRepresentation;
@@ -45,11 +47,14 @@ public class DeviceResource extends SelfInjectingServerResource {
     DeviceManager deviceManager;
     @Inject
     DTOBuildContextFactory dtoBuildContextFactory;
+    @Inject
+    HubEventDispatcher eventDispatcher;
 
     @Override
     protected Representation get() throws ResourceException {
         final HobsonRestContext ctx = HobsonRestContext.createContext(getApplication(), getRequest().getClientInfo(), getRequest().getResourceRef().getPath());
-        final ExpansionFields expansions = new ExpansionFields(getQueryValue("expand"));
+        final SparseFields fields = new SparseFields(getQueryValue("fields"));
+        final ExpansionFields expansions = new ExpansionFields(fields.restrictExpansions(getQueryValue("expand"), null));
         final DTOBuildContext dbctx = dtoBuildContextFactory.createContext(ctx.getApiRoot(), expansions);
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.DEVICE_READ, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
@@ -61,9 +66,11 @@ public class DeviceResource extends SelfInjectingServerResource {
             true
         ).build();
 
-        dto.addContext(JSONAttributes.AIDT, dbctx.getIdTemplateMap());
+        if (fields.includeIdTemplateMap()) {
+            dto.addContext(JSONAttributes.AIDT, dbctx.getIdTemplateMap());
+        }
 
-        JsonRepresentation jr = new JsonRepresentation(dto.toJSON());
+        JsonRepresentation jr = new JsonRepresentation(fields.filter(dto.toJSON()));
         jr.setMediaType(MediaTypeHelper.createMediaType(getRequest(), dto));
         return jr;
     }
@@ -74,7 +81,9 @@ public class DeviceResource extends SelfInjectingServerResource {
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.DEVICE_DELETE, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
-        deviceManager.deleteDevice(DeviceContext.create(ctx.getHubContext(), getAttribute("pluginId"), getAttribute("deviceId")));
+        DeviceContext dctx = DeviceContext.create(ctx.getHubContext(), getAttribute("pluginId"), getAttribute("deviceId"));
+        deviceManager.deleteDevice(dctx);
+        eventDispatcher.fireDeviceRemoved(dctx);
         getResponse().setStatus(Status.SUCCESS_ACCEPTED);
         return new EmptyRepresentation();
     }
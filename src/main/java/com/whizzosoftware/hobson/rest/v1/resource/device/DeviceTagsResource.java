@@ -17,6 +17,7 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.HubEventDispatcher;
 import com.whizzosoftware.hobson.rest.v1.util.JSONHelper;
 import org.json.JSONObject;
 import org.restlet.data.Status;
@@ -34,6 +35,8 @@ public class DeviceTagsResource extends SelfInjectingServerResource {
     AccessManager accessManager;
     @Inject
     DeviceManager deviceManager;
+    @Inject
+    HubEventDispatcher eventDispatcher;
 
     @Override
     protected Representation put(Representation entity) {
@@ -46,6 +49,7 @@ public class DeviceTagsResource extends SelfInjectingServerResource {
 
         DeviceContext dctx = DeviceContext.create(ctx.getHubContext(), getAttribute("pluginId"), getAttribute("deviceId"));
         deviceManager.setDeviceTags(dctx, dto.getTags());
+        eventDispatcher.fireDeviceUpdated(dctx);
 
         getResponse().setStatus(Status.SUCCESS_ACCEPTED);
         return new EmptyRepresentation();
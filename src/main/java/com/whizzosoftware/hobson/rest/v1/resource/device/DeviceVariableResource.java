@@ -12,9 +12,8 @@ package com.whizzosoftware.hobson.rest.v1.resource.device;
 import com.whizzosoftware.hobson.api.HobsonInvalidRequestException;
 import com.whizzosoftware.hobson.api.device.DeviceContext;
 import com.whizzosoftware.hobson.api.device.DeviceManager;
-import com.whizzosoftware.hobson.api.event.EventManager;
-import com.whizzosoftware.hobson.api.event.device.DeviceVariablesUpdateRequestEvent;
 import com.whizzosoftware.hobson.api.security.AccessManager;
+import com.whizzosoftware.hobson.api.variable.DeviceVariableContext;
 import com.whizzosoftware.hobson.api.variable.DeviceVariableDescriptor;
 import com.whizzosoftware.hobson.dto.ExpansionFields;
 import com.whizzosoftware.hobson.dto.context.DTOBuildContext;
@@ -25,11 +24,11 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.DeviceVariableWriteCoalescer;
 import com.whizzosoftware.hobson.rest.v1.util.JSONHelper;
 import com.whizzosoftware.hobson.rest.v1.util.MapUtil;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.whizzosoftware.hobson.rest.v1.util.VariableUpdateWaiter;
 import org.restlet.Response;
 import org.restlet.data.Reference;
 import org.restlet.data.Status;
@@ -40,6 +39,8 @@ import org.restlet.representation.Representation;
 import org.restlet.routing.Template;
 
 import javax.inject.Inject;
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * A REST resource that manages a device variable.
@@ -54,9 +55,11 @@ public class DeviceVariableResource extends SelfInjectingServerResource {
     @Inject
     DeviceManager deviceManager;
     @Inject
-    EventManager eventManager;
+    DeviceVariableWriteCoalescer writeCoalescer;
     @Inject
     DTOBuildContextFactory dtoBuildContextFactory;
+    @Inject
+    VariableUpdateWaiter updateWaiter;
 
     @Override
     protected Representation get() {
@@ -69,36 +72,24 @@ public class DeviceVariableResource extends SelfInjectingServerResource {
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.DEVICE_READ, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
-        HobsonVariableDTO dto = new HobsonVariableDTO.Builder(
-            bctx,
-            bctx.getIdProvider().createDeviceVariableId(var.getContext()),
-            var,
-            deviceManager.getDeviceVariable(var.getContext()),
-            true
-        ).build();
-
-        dto.addContext(JSONAttributes.AIDT, bctx.getIdTemplateMap());
-
-        JsonRepresentation jr = new JsonRepresentation(dto.toJSON());
-        jr.setMediaType(MediaTypeHelper.createMediaType(getRequest(), dto));
-        return jr;
+        return createVariableRepresentation(bctx, var);
     }
 
     @Override
     protected Representation put(Representation entity) {
         final HobsonRestContext ctx = HobsonRestContext.createContext(getApplication(), getRequest().getClientInfo(), getRequest().getResourceRef().getPath());
         final DeviceContext dctx = DeviceContext.create(ctx.getHubContext(), getAttribute(JSONAttributes.PLUGIN_ID), getAttribute(JSONAttributes.DEVICE_ID));
+        final long wait = VariableUpdateWaiter.parseWait(getQueryValue("wait"));
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.DEVICE_UPDATE, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
-        Object value = createDeviceVariableValue(JSONHelper.createJSONFromRepresentation(entity));
+        Object value = createDeviceVariableValue(entity);
         final String pluginId = getAttribute("pluginId");
         final String deviceId = getAttribute("deviceId");
         final String variableName = getAttribute("variableName");
 
-        Response response = getResponse();
+        final Response response = getResponse();
 
-        eventManager.postEvent(ctx.getHubContext(), new DeviceVariablesUpdateRequestEvent(System.currentTimeMillis(), dctx, variableName, value));
         response.setStatus(Status.SUCCESS_ACCEPTED);
         // TODO: is there a better way to do this? The Restlet request reference scheme is always HTTP for some reason...
         Reference requestRef = getRequest().getResourceRef();
@@ -108,14 +99,64 @@ public class DeviceVariableResource extends SelfInjectingServerResource {
             response.setLocationRef(requestRef);
         }
 
+        // if the caller wants to wait for the device to confirm the new value, park the response (without holding
+        // a thread) until the variable update event arrives or the wait times out
+        if (wait > 0) {
+            final DeviceVariableContext vctx = DeviceVariableContext.create(ctx.getHubContext(), pluginId, deviceId, variableName);
+            final DTOBuildContext bctx = dtoBuildContextFactory.createContext(ctx.getApiRoot(), new ExpansionFields(getQueryValue("expand")));
+            response.setAutoCommitting(false);
+            updateWaiter.waitForUpdate(ctx.getHubContext(), Collections.singletonMap(vctx, value), wait, new VariableUpdateWaiter.Callback() {
+                @Override
+                public void onComplete(boolean confirmed) {
+                    try {
+                        response.setEntity(createVariableRepresentation(bctx, deviceManager.getDevice(dctx).getVariable(variableName)));
+                        response.setStatus(confirmed ? Status.SUCCESS_OK : Status.SUCCESS_ACCEPTED);
+                    } catch (Exception e) {
+                        response.setEntity(new EmptyRepresentation());
+                    } finally {
+                        response.commit();
+                    }
+                }
+
+                @Override
+                public void onCancel() {
+                    response.setStatus(Status.SERVER_ERROR_SERVICE_UNAVAILABLE);
+                    response.setEntity(new EmptyRepresentation());
+                    response.commit();
+                }
+            });
+            writeCoalescer.submit(ctx.getHubContext(), dctx, variableName, value);
+            return null;
+        }
+
+        writeCoalescer.submit(ctx.getHubContext(), dctx, variableName, value);
+
         return new EmptyRepresentation();
     }
 
-    private Object createDeviceVariableValue(JSONObject json) {
-        try {
-            return json.get("value");
-        } catch (JSONException e) {
-            throw new HobsonInvalidRequestException(e.getMessage());
+    private Representation createVariableRepresentation(DTOBuildContext bctx, DeviceVariableDescriptor var) {
+        HobsonVariableDTO dto = new HobsonVariableDTO.Builder(
+            bctx,
+            bctx.getIdProvider().createDeviceVariableId(var.getContext()),
+            var,
+            deviceManager.getDeviceVariable(var.getContext()),
+            true
+        ).build();
+
+        dto.addContext(JSONAttributes.AIDT, bctx.getIdTemplateMap());
+
+        JsonRepresentation jr = new JsonRepresentation(dto.toJSON());
+        jr.setMediaType(MediaTypeHelper.createMediaType(getRequest(), dto));
+        return jr;
+    }
+
+    private Object createDeviceVariableValue(Representation entity) {
+        // only the value is needed so there's no need to build the entire request object
+        Map<String,Object> fields = JSONHelper.readFieldsFromRepresentation(entity, "value");
+        if (fields.containsKey("value")) {
+            return fields.get("value");
+        } else {
+            throw new HobsonInvalidRequestException("No value specified");
         }
     }
 }
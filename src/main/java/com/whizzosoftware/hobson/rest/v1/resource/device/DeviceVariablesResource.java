@@ -11,10 +11,9 @@ package com.whizzosoftware.hobson.rest.v1.resource.device;
 
 import com.whizzosoftware.hobson.api.HobsonInvalidRequestException;
 import com.whizzosoftware.hobson.api.device.DeviceManager;
-import com.whizzosoftware.hobson.api.event.EventManager;
-import com.whizzosoftware.hobson.api.event.device.DeviceVariablesUpdateRequestEvent;
 import com.whizzosoftware.hobson.api.persist.IdProvider;
 import com.whizzosoftware.hobson.api.security.AccessManager;
+import com.whizzosoftware.hobson.api.variable.DeviceVariableContext;
 import com.whizzosoftware.hobson.api.variable.DeviceVariableDescriptor;
 import com.whizzosoftware.hobson.dto.ExpansionFields;
 import com.whizzosoftware.hobson.dto.context.DTOBuildContext;
@@ -28,8 +27,10 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.DeviceVariableWriteCoalescer;
 import com.whizzosoftware.hobson.rest.v1.util.JSONHelper;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
+import com.whizzosoftware.hobson.rest.v1.util.VariableUpdateWaiter;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.restlet.Response;
@@ -42,6 +43,7 @@ import org.restlet.representation.Representation;
 import javax.inject.Inject;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -58,11 +60,13 @@ public class DeviceVariablesResource extends SelfInjectingServerResource {
     @Inject
     DeviceManager deviceManager;
     @Inject
-    EventManager eventManager;
+    DeviceVariableWriteCoalescer writeCoalescer;
     @Inject
     DTOBuildContextFactory contextFactory;
     @Inject
     IdProvider idProvider;
+    @Inject
+    VariableUpdateWaiter updateWaiter;
 
     @Override
     protected Representation get() {
@@ -103,16 +107,76 @@ public class DeviceVariablesResource extends SelfInjectingServerResource {
     @Override
     protected Representation put(Representation entity) {
         final HobsonRestContext ctx = HobsonRestContext.createContext(getApplication(), getRequest().getClientInfo(), getRequest().getResourceRef().getPath());
+        final long wait = VariableUpdateWaiter.parseWait(getQueryValue("wait"));
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.DEVICE_UPDATE, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
-        Response response = getResponse();
-        DeviceContext dctx = DeviceContext.create(ctx.getHubContext(), getAttribute("pluginId"), getAttribute("deviceId"));
-        eventManager.postEvent(ctx.getHubContext(), new DeviceVariablesUpdateRequestEvent(System.currentTimeMillis(), dctx, createDeviceVariableValues(JSONHelper.createJSONFromRepresentation(entity))));
+        final Response response = getResponse();
+        final DeviceContext dctx = DeviceContext.create(ctx.getHubContext(), getAttribute("pluginId"), getAttribute("deviceId"));
+        final Map<String,Object> values = createDeviceVariableValues(JSONHelper.createJSONFromRepresentation(entity));
         response.setStatus(Status.SUCCESS_ACCEPTED);
+
+        // if the caller wants to wait for the device to confirm the new values, park the response (without holding
+        // a thread) until all the variable update events arrive or the wait times out
+        if (wait > 0 && values.size() > 0) {
+            final ExpansionFields expansions = new ExpansionFields(getQueryValue("expand"));
+            final DTOBuildContext dbctx = contextFactory.createContext(ctx.getApiRoot(), expansions);
+            Map<DeviceVariableContext,Object> vars = new LinkedHashMap<>();
+            for (Map.Entry<String,Object> e : values.entrySet()) {
+                vars.put(DeviceVariableContext.create(ctx.getHubContext(), dctx.getPluginId(), dctx.getDeviceId(), e.getKey()), e.getValue());
+            }
+            response.setAutoCommitting(false);
+            updateWaiter.waitForUpdate(ctx.getHubContext(), vars, wait, new VariableUpdateWaiter.Callback() {
+                @Override
+                public void onComplete(boolean confirmed) {
+                    try {
+                        response.setEntity(createVariablesRepresentation(dbctx, expansions, dctx, values.keySet()));
+                        response.setStatus(confirmed ? Status.SUCCESS_OK : Status.SUCCESS_ACCEPTED);
+                    } catch (Exception e) {
+                        response.setEntity(new EmptyRepresentation());
+                    } finally {
+                        response.commit();
+                    }
+                }
+
+                @Override
+                public void onCancel() {
+                    response.setStatus(Status.SERVER_ERROR_SERVICE_UNAVAILABLE);
+                    response.setEntity(new EmptyRepresentation());
+                    response.commit();
+                }
+            });
+            writeCoalescer.submit(ctx.getHubContext(), dctx, values);
+            return null;
+        }
+
+        writeCoalescer.submit(ctx.getHubContext(), dctx, values);
         return new EmptyRepresentation();
     }
 
+    private Representation createVariablesRepresentation(DTOBuildContext dbctx, ExpansionFields expansions, DeviceContext dctx, Collection<String> names) {
+        ItemListDTO dto = new ItemListDTO(dbctx, idProvider.createDeviceVariablesId(dctx));
+
+        boolean showDetails = expansions.has(JSONAttributes.ITEM);
+        for (DeviceVariableDescriptor v : deviceManager.getDevice(dctx).getVariables()) {
+            if (names.contains(v.getContext().getName())) {
+                dto.add(new HobsonVariableDTO.Builder(
+                    dbctx,
+                    dbctx.getIdProvider().createDeviceVariableId(v.getContext()),
+                    v,
+                    deviceManager.getDeviceVariable(v.getContext()),
+                    showDetails
+                ).build());
+            }
+        }
+
+        dto.addContext(JSONAttributes.AIDT, dbctx.getIdTemplateMap());
+
+        JsonRepresentation jr = new JsonRepresentation(dto.toJSON());
+        jr.setMediaType(MediaTypeHelper.createMediaType(getRequest(), dto));
+        return jr;
+    }
+
     private Map<String,Object> createDeviceVariableValues(JSONObject json) {
         try {
             Map<String,Object> map = new HashMap<>();
@@ -12,7 +12,6 @@ package com.whizzosoftware.hobson.rest.v1.resource.device;
 import com.whizzosoftware.hobson.api.device.HobsonDeviceDescriptor;
 import com.whizzosoftware.hobson.api.security.AccessManager;
 import com.whizzosoftware.hobson.dto.ExpansionFields;
-import com.whizzosoftware.hobson.api.device.DeviceManager;
 import com.whizzosoftware.hobson.dto.*;
 import com.whizzosoftware.hobson.dto.context.DTOBuildContext;
 import com.whizzosoftware.hobson.dto.context.DTOBuildContextFactory;
@@ -21,7 +20,12 @@ import com.whizzosoftware.hobson.json.JSONAttributes;
 import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
+import com.whizzosoftware.hobson.rest.v1.util.CursorPage;
+import com.whizzosoftware.hobson.rest.v1.util.DeviceIndex;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
+import com.whizzosoftware.hobson.rest.v1.util.SparseFields;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.json.JSONObject;
 import org.restlet.data.Status;
 import org.restlet.data.Tag;
 import org.restlet.ext.guice.SelfInjectingServerResource;
@@ -32,9 +36,6 @@ import org.restlet.resource.ResourceException;
 
 import javax.inject.Inject;
 import java.util.Collection;
-import java.util.List;
-import java.util.TreeMap;
-import java.util.zip.CRC32;
 
 /**
  * A REST resource that returns device information.
@@ -45,17 +46,25 @@ public class DevicesResource extends SelfInjectingServerResource {
     public static final String PATH = "/hubs/{hubId}/devices";
     public static final String TEMPLATE = "/hubs/{hubId}/{entity}";
 
+    static final CursorPage.KeyProvider<HobsonDeviceDescriptor> DEVICE_KEY_PROVIDER = new CursorPage.KeyProvider<HobsonDeviceDescriptor>() {
+        @Override
+        public String getKey(HobsonDeviceDescriptor device) {
+            return device.getContext().getPluginId() + ":" + device.getContext().getDeviceId();
+        }
+    };
+
     @Inject
     AccessManager accessManager;
     @Inject
-    DeviceManager deviceManager;
+    DeviceIndex deviceIndex;
     @Inject
     DTOBuildContextFactory dtoBuildContextFactory;
 
     @Override
     protected Representation get() throws ResourceException {
         final HobsonRestContext ctx = HobsonRestContext.createContext(getApplication(), getRequest().getClientInfo(), getRequest().getResourceRef().getPath());
-        final ExpansionFields expansions = new ExpansionFields(getQueryValue("expand"));
+        final SparseFields fields = new SparseFields(getQueryValue("fields"));
+        final ExpansionFields expansions = new ExpansionFields(fields.restrictExpansions(getQueryValue("expand"), JSONAttributes.ITEM));
         final DTOBuildContext bctx = dtoBuildContextFactory.createContext(ctx.getApiRoot(), expansions);
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.DEVICE_READ, null);
@@ -66,57 +75,61 @@ public class DevicesResource extends SelfInjectingServerResource {
 
         ItemListDTO dto = new ItemListDTO(bctx, bctx.getIdProvider().createDevicesId(ctx.getHubContext()));
 
-        Collection<HobsonDeviceDescriptor> devices;
+        // filters are applied by the index before selecting the page so that only the page's DTOs are built
+        Collection<HobsonDeviceDescriptor> devices = deviceIndex.getDevices(ctx.getHubContext(), varFilter, typeFilter, tag);
 
-        if (tag != null) {
-            devices = deviceManager.getDevices(ctx.getHubContext(), tag);
-        } else {
-            devices = deviceManager.getDevices(ctx.getHubContext());
-        }
-
-        TreeMap<String, Long> etagMap = new TreeMap<>();
+        CursorPage<HobsonDeviceDescriptor> page = null;
 
         if (devices != null) {
-            // TODO: refactor so the JSON isn't built if the ETag matches
+            page = CursorPage.create(devices, DEVICE_KEY_PROVIDER, getQueryValue(CursorPage.CURSOR), CursorPage.parseLimit(getQueryValue(CursorPage.LIMIT)));
+
             boolean itemExpand = expansions.has(JSONAttributes.ITEM);
 
             expansions.pushContext(JSONAttributes.ITEM);
 
-            for (HobsonDeviceDescriptor device : devices) {
-                if ((varFilter == null || device.hasVariable(varFilter)) && (typeFilter == null || device.getType().toString().equals(typeFilter))) {
-                    dto.add(new HobsonDeviceDTO.Builder(
-                        bctx,
-                        device.getContext(),
-                        itemExpand
-                    ).build());
-                }
+            for (HobsonDeviceDescriptor device : page.getItems()) {
+                dto.add(new HobsonDeviceDTO.Builder(
+                    bctx,
+                    device.getContext(),
+                    itemExpand
+                ).build());
             }
 
-            dto.addContext(JSONAttributes.AIDT, bctx.getIdTemplateMap());
+            if (fields.includeIdTemplateMap()) {
+                dto.addContext(JSONAttributes.AIDT, bctx.getIdTemplateMap());
+            }
 
             expansions.popContext();
         }
 
-        // the ETag is a CRC calculated from all devices' contexts and last variable updates
-        CRC32 crc = new CRC32();
-        for (String dctx : etagMap.keySet()) {
-            String s = dctx + Long.toString(etagMap.get(dctx));
-            crc.update(s.getBytes());
+        JSONObject json = fields.filter(dto.toJSON());
+        if (page != null) {
+            page.addNextLink(json, getRequest().getResourceRef());
         }
-        Tag etag = new Tag(Long.toString(crc.getValue()));
 
-        // check if ETag matches request
-        List<Tag> requestTags = getRequest().getConditions().getNoneMatch();
+        // the ETag is a hash of the page as rendered, so it differs between pages, cursors and filters and changes
+        // whenever any of the page's devices do
+        Tag etag = new Tag(DigestUtils.md5Hex(json.toString()), false);
+
         Representation r;
-        if (requestTags.size() == 0 || !requestTags.get(0).equals(etag)) {
-            r = new JsonRepresentation(dto.toJSON());
-        } else {
+        if (isNotModified(etag)) {
             getResponse().setStatus(Status.REDIRECTION_NOT_MODIFIED);
             r = new EmptyRepresentation();
+        } else {
+            r = new JsonRepresentation(json);
         }
 
         r.setTag(etag);
         r.setMediaType(MediaTypeHelper.createMediaType(getRequest(), dto));
         return r;
     }
+
+    private boolean isNotModified(Tag etag) {
+        for (Tag t : getRequest().getConditions().getNoneMatch()) {
+            if (Tag.ALL.equals(t) || etag.getName().equals(t.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
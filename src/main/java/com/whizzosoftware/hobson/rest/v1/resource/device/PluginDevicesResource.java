@@ -23,7 +23,10 @@ import com.whizzosoftware.hobson.rest.HobsonAuthorizer;
 import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
+import com.whizzosoftware.hobson.rest.v1.util.CursorPage;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
+import com.whizzosoftware.hobson.rest.v1.util.SparseFields;
+import org.json.JSONObject;
 import org.restlet.ext.guice.SelfInjectingServerResource;
 import org.restlet.ext.json.JsonRepresentation;
 import org.restlet.representation.Representation;
@@ -50,7 +53,8 @@ public class PluginDevicesResource extends SelfInjectingServerResource {
     @Override
     protected Representation get() {
         final HobsonRestContext ctx = (HobsonRestContext)getRequest().getAttributes().get(HobsonAuthorizer.HUB_CONTEXT);
-        final ExpansionFields expansions = new ExpansionFields(getQueryValue("expand"));
+        final SparseFields fields = new SparseFields(getQueryValue("fields"));
+        final ExpansionFields expansions = new ExpansionFields(fields.restrictExpansions(getQueryValue("expand"), JSONAttributes.ITEM));
         final DTOBuildContext bctx = dtoBuildContextFactory.createContext(ctx.getApiRoot(), expansions);
         final boolean showDetails = expansions.has(JSONAttributes.ITEM);
 
@@ -61,7 +65,14 @@ public class PluginDevicesResource extends SelfInjectingServerResource {
 
         expansions.pushContext(JSONAttributes.ITEM);
 
-        for (HobsonDeviceDescriptor device : deviceManager.getDevices(PluginContext.create(ctx.getHubContext(), getAttribute("pluginId")))) {
+        CursorPage<HobsonDeviceDescriptor> page = CursorPage.create(
+            deviceManager.getDevices(pctx),
+            DevicesResource.DEVICE_KEY_PROVIDER,
+            getQueryValue(CursorPage.CURSOR),
+            CursorPage.parseLimit(getQueryValue(CursorPage.LIMIT))
+        );
+
+        for (HobsonDeviceDescriptor device : page.getItems()) {
             dto.add(
                 new HobsonDeviceDTO.Builder(
                     bctx,
@@ -73,9 +84,14 @@ public class PluginDevicesResource extends SelfInjectingServerResource {
 
         expansions.popContext();
 
-        dto.addContext(JSONAttributes.AIDT, bctx.getIdTemplateMap());
+        if (fields.includeIdTemplateMap()) {
+            dto.addContext(JSONAttributes.AIDT, bctx.getIdTemplateMap());
+        }
+
+        JSONObject json = fields.filter(dto.toJSON());
+        page.addNextLink(json, getRequest().getResourceRef());
 
-        JsonRepresentation jr = new JsonRepresentation(dto.toJSON());
+        JsonRepresentation jr = new JsonRepresentation(json);
         jr.setMediaType(MediaTypeHelper.createMediaType(getRequest(), dto));
         return jr;
     }
@@ -0,0 +1,72 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.resource.hub;
+
+import com.whizzosoftware.hobson.api.security.AccessManager;
+import com.whizzosoftware.hobson.api.security.AuthorizationAction;
+import com.whizzosoftware.hobson.rest.HobsonRestContext;
+import com.whizzosoftware.hobson.rest.HobsonRestUser;
+import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.ChangeJournal;
+import com.whizzosoftware.hobson.rest.v1.util.MapUtil;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.restlet.data.MediaType;
+import org.restlet.ext.guice.SelfInjectingServerResource;
+import org.restlet.ext.json.JsonRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.ResourceException;
+import org.restlet.routing.Template;
+
+import javax.inject.Inject;
+
+/**
+ * A REST resource that returns the entities that have changed since a token previously returned by this resource.
+ * If the token is no longer covered by the change journal, the response indicates that the client should perform
+ * a full refresh.
+ */
+public class HubChangesResource extends SelfInjectingServerResource {
+    public static final String PATH = "/hubs/{hubId}/changes";
+
+    @Inject
+    AccessManager accessManager;
+    @Inject
+    ChangeJournal changeJournal;
+
+    @Override
+    protected Representation get() throws ResourceException {
+        final HobsonRestContext ctx = HobsonRestContext.createContext(getApplication(), getRequest().getClientInfo(), getRequest().getResourceRef().getPath());
+
+        accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.HUB_READ, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
+
+        // unknown or malformed tokens (including ones from before a restart) result in a full snapshot
+        ChangeJournal.ChangeSet cs = changeJournal.getChanges(ctx.getHubContext(), getQueryValue("since"));
+
+        JSONObject json = new JSONObject();
+        json.put("@id", ctx.getApiRoot() + new Template(PATH).format(MapUtil.createEmptyMap(ctx)));
+        json.put("sequence", cs.getToken());
+        json.put("fullSnapshot", cs.isFullSnapshot());
+
+        JSONArray changes = new JSONArray();
+        for (ChangeJournal.Change c : cs.getChanges()) {
+            JSONObject jc = new JSONObject();
+            jc.put("@id", c.getId());
+            jc.put("type", c.getType());
+            jc.put("action", c.getAction());
+            jc.put("sequence", c.getSequence());
+            changes.put(jc);
+        }
+        json.put("changes", changes);
+
+        JsonRepresentation jr = new JsonRepresentation(json);
+        jr.setMediaType(MediaType.APPLICATION_JSON);
+        return jr;
+    }
+}
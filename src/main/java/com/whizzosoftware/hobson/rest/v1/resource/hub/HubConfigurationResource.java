@@ -22,9 +22,13 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.ChangeJournal;
 import com.whizzosoftware.hobson.rest.v1.util.DTOMapper;
+import com.whizzosoftware.hobson.rest.v1.util.EntityTags;
 import com.whizzosoftware.hobson.rest.v1.util.JSONHelper;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
+import org.json.JSONObject;
+import org.restlet.data.Method;
 import org.restlet.data.Status;
 import org.restlet.ext.guice.SelfInjectingServerResource;
 import org.restlet.ext.json.JsonRepresentation;
@@ -47,15 +51,36 @@ public class HubConfigurationResource extends SelfInjectingServerResource {
     DTOBuildContextFactory dtoBuildContextFactory;
     @Inject
     IdProvider idProvider;
+    @Inject
+    ChangeJournal changeJournal;
+    @Inject
+    EntityTags entityTags;
+
+    @Override
+    protected void doInit() throws ResourceException {
+        super.doInit();
+        // writes evaluate If-Match themselves so the check and the write happen under the same lock
+        setConditional(Method.GET.equals(getMethod()) || Method.HEAD.equals(getMethod()));
+    }
 
     @Override
     protected Representation get() throws ResourceException {
         final HobsonRestContext ctx = HobsonRestContext.createContext(getApplication(), getRequest().getClientInfo(), getRequest().getResourceRef().getPath());
-        final ExpansionFields expansions = new ExpansionFields(getQueryValue("expand"));
-        final DTOBuildContext bctx = dtoBuildContextFactory.createContext(ctx.getApiRoot(), expansions);
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.HUB_READ, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
+        PropertyContainerDTO dto = createDTO(ctx);
+        JSONObject json = dto.toJSON();
+
+        JsonRepresentation jr = new JsonRepresentation(json);
+        jr.setMediaType(MediaTypeHelper.createMediaType(getRequest(), dto));
+        jr.setTag(EntityTags.createTag(json));
+        return jr;
+    }
+
+    private PropertyContainerDTO createDTO(HobsonRestContext ctx) {
+        final DTOBuildContext bctx = dtoBuildContextFactory.createContext(ctx.getApiRoot(), new ExpansionFields(getQueryValue("expand")));
+
         PropertyContainer pc = hubManager.getConfiguration(ctx.getHubContext());
         PropertyContainerDTO dto = new PropertyContainerDTO.Builder(
             bctx,
@@ -72,9 +97,20 @@ public class HubConfigurationResource extends SelfInjectingServerResource {
 
         dto.addContext(JSONAttributes.AIDT, bctx.getIdTemplateMap());
 
-        JsonRepresentation jr = new JsonRepresentation(dto.toJSON());
-        jr.setMediaType(MediaTypeHelper.createMediaType(getRequest(), dto));
-        return jr;
+        return dto;
+    }
+
+    /**
+     * Creates a renderer for the representation a GET of the request URI would return, so that a write's If-Match
+     * header is compared against the tag the client received.
+     */
+    private EntityTags.Renderer createRenderer(final HobsonRestContext ctx) {
+        return new EntityTags.Renderer() {
+            @Override
+            public JSONObject render() {
+                return createDTO(ctx).toJSON();
+            }
+        };
     }
 
     @Override
@@ -84,8 +120,15 @@ public class HubConfigurationResource extends SelfInjectingServerResource {
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.HUB_CONFIGURE, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
         PropertyContainerDTO dto = new PropertyContainerDTO.Builder(JSONHelper.createJSONFromRepresentation(entity)).build();
-        PropertyContainer pc = DTOMapper.mapPropertyContainerDTO(dto, null, idProvider);
-        hubManager.setConfiguration(ctx.getHubContext(), pc);
+        final PropertyContainer pc = DTOMapper.mapPropertyContainerDTO(dto, null, idProvider);
+        String configId = idProvider.createHubConfigurationId(ctx.getHubContext()).getId();
+        entityTags.write(configId, getRequest(), createRenderer(ctx), new Runnable() {
+            @Override
+            public void run() {
+                hubManager.setConfiguration(ctx.getHubContext(), pc);
+            }
+        });
+        changeJournal.record(ctx.getHubContext(), ChangeJournal.CONFIGURATION, configId, ChangeJournal.UPDATED);
 
         setStatus(Status.SUCCESS_ACCEPTED);
         return new EmptyRepresentation();
@@ -97,17 +140,25 @@ public class HubConfigurationResource extends SelfInjectingServerResource {
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.HUB_CONFIGURE, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
-        PropertyContainerDTO dto = new PropertyContainerDTO.Builder(JSONHelper.createJSONFromRepresentation(entity)).build();
+        final PropertyContainerDTO dto = new PropertyContainerDTO.Builder(JSONHelper.createJSONFromRepresentation(entity)).build();
         if (dto.hasPropertyValues()) {
-            PropertyContainer pc = hubManager.getConfiguration(ctx.getHubContext());
+            // the read-modify-write happens under the If-Match check so it is based on the version the client matched
+            String configId = idProvider.createHubConfigurationId(ctx.getHubContext()).getId();
+            entityTags.write(configId, getRequest(), createRenderer(ctx), new Runnable() {
+                @Override
+                public void run() {
+                    PropertyContainer pc = hubManager.getConfiguration(ctx.getHubContext());
 
-            Map<String,Object> values = dto.getValues();
-            for (String key : values.keySet()) {
-                Object value = values.get(key);
-                pc.setPropertyValue(key, value);
-            }
+                    Map<String,Object> values = dto.getValues();
+                    for (String key : values.keySet()) {
+                        Object value = values.get(key);
+                        pc.setPropertyValue(key, value);
+                    }
 
-            hubManager.setConfiguration(ctx.getHubContext(), pc);
+                    hubManager.setConfiguration(ctx.getHubContext(), pc);
+                }
+            });
+            changeJournal.record(ctx.getHubContext(), ChangeJournal.CONFIGURATION, configId, ChangeJournal.UPDATED);
         }
 
         return new EmptyRepresentation();
@@ -119,7 +170,14 @@ public class HubConfigurationResource extends SelfInjectingServerResource {
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.HUB_CONFIGURE, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
-        hubManager.deleteConfiguration(ctx.getHubContext());
+        String configId = idProvider.createHubConfigurationId(ctx.getHubContext()).getId();
+        entityTags.write(configId, getRequest(), createRenderer(ctx), new Runnable() {
+            @Override
+            public void run() {
+                hubManager.deleteConfiguration(ctx.getHubContext());
+            }
+        });
+        changeJournal.record(ctx.getHubContext(), ChangeJournal.CONFIGURATION, configId, ChangeJournal.REMOVED);
 
         setStatus(Status.SUCCESS_ACCEPTED);
         return new EmptyRepresentation();
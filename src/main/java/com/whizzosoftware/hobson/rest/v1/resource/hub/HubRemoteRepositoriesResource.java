@@ -24,6 +24,7 @@ import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
 import com.whizzosoftware.hobson.rest.v1.util.JSONHelper;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
+import com.whizzosoftware.hobson.rest.v1.util.RemotePluginCatalog;
 import org.restlet.data.Status;
 import org.restlet.ext.guice.SelfInjectingServerResource;
 import org.restlet.ext.json.JsonRepresentation;
@@ -44,6 +45,8 @@ public class HubRemoteRepositoriesResource extends SelfInjectingServerResource {
     PluginManager pluginManager;
     @Inject
     DTOBuildContextFactory dtoBuildContextFactory;
+    @Inject
+    RemotePluginCatalog remotePluginCatalog;
 
     @Override
     protected Representation get() throws ResourceException {
@@ -84,6 +87,7 @@ public class HubRemoteRepositoriesResource extends SelfInjectingServerResource {
         if (pluginManager != null) {
             RepositoryDTO dto = new RepositoryDTO(JSONHelper.createJSONFromRepresentation(entity));
             pluginManager.addRemoteRepository(dto.getUri());
+            remotePluginCatalog.refreshAll();
             getResponse().setStatus(Status.SUCCESS_ACCEPTED);
             return new EmptyRepresentation();
         } else {
@@ -23,6 +23,7 @@ import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
+import com.whizzosoftware.hobson.rest.v1.util.RemotePluginCatalog;
 import org.restlet.data.Status;
 import org.restlet.ext.guice.SelfInjectingServerResource;
 import org.restlet.ext.json.JsonRepresentation;
@@ -44,6 +45,8 @@ public class HubRemoteRepositoryResource extends SelfInjectingServerResource {
     PluginManager pluginManager;
     @Inject
     DTOBuildContextFactory dtoBuildContextFactory;
+    @Inject
+    RemotePluginCatalog remotePluginCatalog;
 
     @Override
     protected Representation get() throws ResourceException {
@@ -86,6 +89,7 @@ public class HubRemoteRepositoryResource extends SelfInjectingServerResource {
         if (pluginManager != null) {
             try {
                 pluginManager.removeRemoteRepository(URLDecoder.decode(getAttribute("repositoryId"), "UTF-8"));
+                remotePluginCatalog.refreshAll();
                 getResponse().setStatus(Status.SUCCESS_ACCEPTED);
                 return new EmptyRepresentation();
             } catch (UnsupportedEncodingException e) {
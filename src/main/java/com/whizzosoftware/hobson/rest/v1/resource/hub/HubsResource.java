@@ -9,7 +9,9 @@
 */
 package com.whizzosoftware.hobson.rest.v1.resource.hub;
 
+import com.whizzosoftware.hobson.api.hub.HobsonHub;
 import com.whizzosoftware.hobson.api.hub.HubContext;
+import com.whizzosoftware.hobson.api.hub.HubManager;
 import com.whizzosoftware.hobson.api.security.AccessManager;
 import com.whizzosoftware.hobson.dto.ItemListDTO;
 import com.whizzosoftware.hobson.dto.ExpansionFields;
@@ -22,6 +24,10 @@ import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
+import com.whizzosoftware.hobson.rest.v1.util.ParallelLookup;
+import com.whizzosoftware.hobson.rest.v1.util.SparseFields;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.restlet.ext.guice.SelfInjectingServerResource;
 import org.restlet.ext.json.JsonRepresentation;
 import org.restlet.representation.Representation;
@@ -29,15 +35,28 @@ import org.restlet.resource.ResourceException;
 
 import javax.inject.Inject;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 public class HubsResource extends SelfInjectingServerResource {
     public static final String PATH = "/users/{userId}/hubs";
     public static final String TEMPLATE = "/users/{userId}/{entity}";
 
+    /**
+     * The maximum time in milliseconds to wait for a hub before listing it as degraded (set with the
+     * "hobson.rest.hubLookupTimeout" system property).
+     */
+    static final long HUB_TIMEOUT = Long.getLong("hobson.rest.hubLookupTimeout", 2000);
+
     @Inject
     AccessManager accessManager;
     @Inject
     DTOBuildContextFactory dtoBuildContextFactory;
+    @Inject
+    HubManager hubManager;
+    @Inject
+    ParallelLookup parallelLookup;
 
     @Override
     protected Representation get() throws ResourceException {
@@ -52,17 +71,31 @@ public class HubsResource extends SelfInjectingServerResource {
         ItemListDTO dto = new ItemListDTO(bctx, bctx.getIdProvider().createUserHubsId(userId));
         HobsonRestUser user = (HobsonRestUser)getClientInfo().getUser();
         Collection<String> hubs = user.getUser().getHubs();
+        Set<String> degraded = new HashSet<>();
 
         if (hubs != null) {
             boolean showDetails = expansions.has(JSONAttributes.ITEM);
             expansions.pushContext(JSONAttributes.ITEM);
 
+            // look up all hubs concurrently; DTOs are still built here since the build context isn't thread-safe
+            Map<String,HobsonHub> results = parallelLookup.lookupAll(hubs, new ParallelLookup.Lookup<String,HobsonHub>() {
+                @Override
+                public HobsonHub lookup(String hubId) {
+                    return hubManager.getHub(HubContext.create(hubId));
+                }
+            }, HUB_TIMEOUT);
+
             for (String hubId : hubs) {
-                dto.add(new HobsonHubDTO.Builder(
-                    bctx,
-                    bctx.getHub(HubContext.create(hubId)),
-                    showDetails
-                ).build());
+                HobsonHub hub = results.get(hubId);
+                if (hub != null) {
+                    dto.add(new HobsonHubDTO.Builder(
+                        bctx,
+                        hub,
+                        showDetails
+                    ).build());
+                } else {
+                    degraded.add(hubId);
+                }
             }
 
             expansions.popContext();
@@ -70,8 +103,40 @@ public class HubsResource extends SelfInjectingServerResource {
 
         dto.addContext(JSONAttributes.AIDT, bctx.getIdTemplateMap());
 
-        JsonRepresentation jr = new JsonRepresentation(dto.toJSON());
+        JSONObject json = dto.toJSON();
+        if (!degraded.isEmpty()) {
+            addDegradedHubs(json, hubs, degraded, bctx);
+        }
+
+        JsonRepresentation jr = new JsonRepresentation(json);
         jr.setMediaType(MediaTypeHelper.createMediaType(getRequest(), dto));
         return jr;
     }
+
+    /**
+     * Inserts entries for hubs that couldn't be retrieved in time so that the listing keeps the user's hub order
+     * and clients can tell which hubs are missing details.
+     *
+     * @param json the list JSON
+     * @param hubs all of the user's hub IDs
+     * @param degraded the IDs of the hubs that couldn't be retrieved
+     * @param bctx the build context
+     */
+    private void addDegradedHubs(JSONObject json, Collection<String> hubs, Set<String> degraded, DTOBuildContext bctx) {
+        JSONArray items = json.optJSONArray(SparseFields.ITEM_LIST_ELEMENT);
+        JSONArray a = new JSONArray();
+        int ix = 0;
+        for (String hubId : hubs) {
+            if (degraded.contains(hubId)) {
+                JSONObject item = new JSONObject();
+                item.put("@id", bctx.getIdProvider().createHubId(HubContext.create(hubId)).getId());
+                item.put("degraded", true);
+                a.put(new JSONObject().put(JSONAttributes.ITEM, item));
+            } else if (items != null && ix < items.length()) {
+                a.put(items.get(ix++));
+            }
+        }
+        json.put(SparseFields.ITEM_LIST_ELEMENT, a);
+        json.put(SparseFields.NUMBER_OF_ITEMS, a.length());
+    }
 }
@@ -9,6 +9,8 @@
 */
 package com.whizzosoftware.hobson.rest.v1.resource.image;
 
+import com.whizzosoftware.hobson.api.HobsonInvalidRequestException;
+import com.whizzosoftware.hobson.api.HobsonRuntimeException;
 import com.whizzosoftware.hobson.api.image.ImageInputStream;
 import com.whizzosoftware.hobson.api.image.ImageManager;
 import com.whizzosoftware.hobson.api.security.AccessManager;
@@ -16,13 +18,14 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.ImageVariants;
 import com.whizzosoftware.hobson.rest.v1.util.JSONHelper;
-import org.apache.commons.codec.binary.Base64;
+import com.whizzosoftware.hobson.rest.v1.util.JSONStreamReader;
+import org.apache.commons.codec.binary.Base64InputStream;
 import org.apache.commons.fileupload.FileItemIterator;
 import org.apache.commons.fileupload.FileItemStream;
 import org.apache.commons.fileupload.FileUploadException;
-import org.apache.commons.fileupload.disk.DiskFileItemFactory;
-import org.json.JSONObject;
+import org.apache.commons.io.IOUtils;
 import org.restlet.data.MediaType;
 import org.restlet.data.Status;
 import org.restlet.ext.fileupload.RestletFileUpload;
@@ -33,8 +36,13 @@ import org.restlet.representation.Representation;
 import org.restlet.resource.ResourceException;
 
 import javax.inject.Inject;
-import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
 
 /**
  * A REST resource for setting/retrieving a hub image.
@@ -48,6 +56,8 @@ public class HubImageResource extends SelfInjectingServerResource {
     AccessManager accessManager;
     @Inject
     ImageManager imageManager;
+    @Inject
+    ImageVariants imageVariants;
 
     @Override
     protected Representation get() throws ResourceException {
@@ -55,6 +65,16 @@ public class HubImageResource extends SelfInjectingServerResource {
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.HUB_READ, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
+        ImageVariants.Spec spec = ImageVariants.Spec.parse(getQueryValue("w"), getQueryValue("h"), getQueryValue("format"));
+        if (spec != null) {
+            return imageVariants.createRepresentation(getRequest(), getResponse(), createSourceId(ctx), new ImageVariants.Source() {
+                @Override
+                public ImageInputStream open() {
+                    return imageManager.getHubImage(ctx.getHubContext());
+                }
+            }, spec);
+        }
+
         ImageInputStream iis = imageManager.getHubImage(ctx.getHubContext());
         return new InputRepresentation(iis.getInputStream(), MediaType.valueOf(iis.getMediaType()));
     }
@@ -66,32 +86,59 @@ public class HubImageResource extends SelfInjectingServerResource {
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.HUB_CONFIGURE, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
         if (MediaType.APPLICATION_JSON.equals(entity.getMediaType(), true)) {
-            JSONObject json = JSONHelper.createJSONFromRepresentation(entity);
-            if (json.has("imageLibRef")) {
-                String path = json.getString("imageLibRef");
-                String imageId = path.substring(path.lastIndexOf('/') + 1, path.length());
-                ImageInputStream iis = imageManager.getImageLibraryImage(ctx.getHubContext(), imageId);
-                try {
-                    imageManager.setHubImage(ctx.getHubContext(), new ImageInputStream(MediaType.IMAGE_PNG.toString(), iis.getInputStream()));
-                    getResponse().setStatus(Status.SUCCESS_ACCEPTED);
-                } finally {
-                    iis.close();
-                }
-            } else if (json.has("image")) {
-                JSONObject image = json.getJSONObject("image");
-                ImageInputStream iis = new ImageInputStream(image.getString("mediaType"), new ByteArrayInputStream(Base64.decodeBase64(image.getString("data"))));
-                try {
-                    imageManager.setHubImage(ctx.getHubContext(), iis);
-                    getResponse().setStatus(Status.SUCCESS_ACCEPTED);
-                } finally {
-                    iis.close();
+            try {
+                Reader reader = JSONHelper.createReader(entity, JSONHelper.MAX_IMAGE_BODY_SIZE);
+                if (reader != null) {
+                    SpooledImage image = null;
+                    try {
+                        JSONStreamReader jsr = new JSONStreamReader(reader);
+                        jsr.beginObject();
+                        String key;
+                        while ((key = jsr.nextKey()) != null) {
+                            if ("imageLibRef".equals(key)) {
+                                String path = jsr.nextValue().toString();
+                                String imageId = path.substring(path.lastIndexOf('/') + 1, path.length());
+                                ImageInputStream iis = imageManager.getImageLibraryImage(ctx.getHubContext(), imageId);
+                                try {
+                                    imageManager.setHubImage(ctx.getHubContext(), new ImageInputStream(MediaType.IMAGE_PNG.toString(), iis.getInputStream()));
+                                    imageVariants.invalidate(createSourceId(ctx));
+                                    getResponse().setStatus(Status.SUCCESS_ACCEPTED);
+                                } finally {
+                                    iis.close();
+                                }
+                                break;
+                            } else if ("image".equals(key) && image == null) {
+                                image = spoolImage(jsr);
+                            } else {
+                                jsr.skipValue();
+                            }
+                        }
+
+                        // the current image is only replaced once the whole body has been read without error
+                        if (image != null) {
+                            ImageInputStream iis = new ImageInputStream(image.mediaType, new FileInputStream(image.file));
+                            try {
+                                imageManager.setHubImage(ctx.getHubContext(), iis);
+                            } finally {
+                                iis.close();
+                            }
+                            imageVariants.invalidate(createSourceId(ctx));
+                            getResponse().setStatus(Status.SUCCESS_ACCEPTED);
+                        }
+                    } finally {
+                        if (image != null) {
+                            image.delete();
+                        }
+                        reader.close();
+                    }
                 }
+            } catch (IOException e) {
+                throw new HobsonRuntimeException("Error reading image", e);
             }
         } else if (MediaType.MULTIPART_FORM_DATA.equals(entity.getMediaType(), true)) {
             try {
-                DiskFileItemFactory factory = new DiskFileItemFactory();
-                factory.setSizeThreshold(1000240);
-                RestletFileUpload upload = new RestletFileUpload(factory);
+                // the streaming API passes each item straight to the image manager so no item factory is needed
+                RestletFileUpload upload = new RestletFileUpload();
                 FileItemIterator fileIt = upload.getItemIterator(entity);
                 boolean found = false;
                 while (fileIt.hasNext() && !found) {
@@ -101,6 +148,7 @@ public class HubImageResource extends SelfInjectingServerResource {
                         ImageInputStream iis = new ImageInputStream(fi.getContentType(), fi.openStream());
                         try {
                             imageManager.setHubImage(ctx.getHubContext(), iis);
+                            imageVariants.invalidate(createSourceId(ctx));
                             getResponse().setStatus(Status.SUCCESS_ACCEPTED);
                         } finally {
                             iis.close();
@@ -115,4 +163,76 @@ public class HubImageResource extends SelfInjectingServerResource {
         }
         return new EmptyRepresentation();
     }
+
+    private String createSourceId(HobsonRestContext ctx) {
+        return "hub:" + ctx.getHubContext().getHubId();
+    }
+
+    /**
+     * Reads an "image" object, decoding its base64 "data" field into a temporary file as it is read so the image is
+     * never held in memory.
+     *
+     * @param jsr the reader, positioned at the image object
+     *
+     * @return the spooled image
+     *
+     * @throws IOException on failure
+     */
+    private SpooledImage spoolImage(JSONStreamReader jsr) throws IOException {
+        String mediaType = null;
+        File spool = null;
+
+        try {
+            jsr.beginObject();
+            String key;
+            while ((key = jsr.nextKey()) != null) {
+                if ("mediaType".equals(key)) {
+                    mediaType = jsr.nextValue().toString();
+                } else if ("data".equals(key) && spool == null) {
+                    spool = File.createTempFile("hobson-image", null);
+                    InputStream data = new Base64InputStream(jsr.openString());
+                    try {
+                        OutputStream os = new FileOutputStream(spool);
+                        try {
+                            IOUtils.copy(data, os);
+                        } finally {
+                            os.close();
+                        }
+                    } finally {
+                        data.close();
+                    }
+                } else {
+                    jsr.skipValue();
+                }
+            }
+
+            if (mediaType == null || spool == null) {
+                throw new HobsonInvalidRequestException("Image must contain mediaType and data");
+            }
+
+            SpooledImage image = new SpooledImage(mediaType, spool);
+            spool = null;
+            return image;
+        } finally {
+            if (spool != null && !spool.delete()) {
+                spool.deleteOnExit();
+            }
+        }
+    }
+
+    private static class SpooledImage {
+        final String mediaType;
+        final File file;
+
+        SpooledImage(String mediaType, File file) {
+            this.mediaType = mediaType;
+            this.file = file;
+        }
+
+        void delete() {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
 }
@@ -0,0 +1,62 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.resource.image;
+
+import com.whizzosoftware.hobson.api.security.AccessManager;
+import com.whizzosoftware.hobson.api.security.AuthorizationAction;
+import com.whizzosoftware.hobson.rest.HobsonRestContext;
+import com.whizzosoftware.hobson.rest.HobsonRestUser;
+import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.CachedContent;
+import com.whizzosoftware.hobson.rest.v1.util.ImageLibraryCatalog;
+import com.whizzosoftware.hobson.rest.v1.util.ImageVariants;
+import org.restlet.ext.guice.SelfInjectingServerResource;
+import org.restlet.representation.Representation;
+import org.restlet.resource.ResourceException;
+
+import javax.inject.Inject;
+
+/**
+ * A REST resource that returns the entire image library (all groups and their images) in a single response with
+ * a strong ETag. The optional "thumbnail" parameter inlines a base64 thumbnail of each image scaled to fit within a
+ * square of the given size.
+ *
+ * @author Dan Noguerol
+ */
+public class ImageLibraryCatalogResource extends SelfInjectingServerResource {
+    public static final String PATH = "/hubs/{hubId}/imageLibrary/catalog";
+
+    @Inject
+    AccessManager accessManager;
+    @Inject
+    ImageLibraryCatalog catalog;
+
+    @Override
+    public Representation get() throws ResourceException {
+        final HobsonRestContext ctx = HobsonRestContext.createContext(getApplication(), getRequest().getClientInfo(), getRequest().getResourceRef().getPath());
+
+        accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.HUB_READ, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
+
+        String thumbnail = getQueryValue("thumbnail");
+        if (thumbnail == null) {
+            return catalog.getCombined(ctx).createRepresentation(getRequest(), getResponse());
+        }
+
+        ImageVariants.Spec spec = ImageVariants.Spec.parse(thumbnail, thumbnail, getQueryValue("format"));
+        CachedContent c = catalog.getCachedCombined(ctx, spec);
+        if (c != null) {
+            return c.createRepresentation(getRequest(), getResponse());
+        }
+
+        // thumbnails are generated off the request thread and the response is committed when they're ready
+        catalog.getCombined(ctx, spec, ImageVariants.createResponseCallback(getRequest(), getResponse()));
+        return null;
+    }
+}
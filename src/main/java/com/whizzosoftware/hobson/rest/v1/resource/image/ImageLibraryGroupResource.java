@@ -10,21 +10,19 @@
 package com.whizzosoftware.hobson.rest.v1.resource.image;
 
 import com.whizzosoftware.hobson.api.image.ImageManager;
-import com.whizzosoftware.hobson.api.persist.IdProvider;
 import com.whizzosoftware.hobson.api.security.AccessManager;
 import com.whizzosoftware.hobson.json.JSONAttributes;
 import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
-import com.whizzosoftware.hobson.rest.v1.util.MapUtil;
+import com.whizzosoftware.hobson.rest.v1.util.ImageLibraryCatalog;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.restlet.ext.guice.SelfInjectingServerResource;
 import org.restlet.ext.json.JsonRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.resource.ResourceException;
-import org.restlet.routing.Template;
 
 import javax.inject.Inject;
 import java.util.List;
@@ -37,7 +35,7 @@ public class ImageLibraryGroupResource extends SelfInjectingServerResource {
     @Inject
     ImageManager imageManager;
     @Inject
-    IdProvider idProvider;
+    ImageLibraryCatalog catalog;
 
     @Override
     public Representation get() throws ResourceException {
@@ -45,10 +43,14 @@ public class ImageLibraryGroupResource extends SelfInjectingServerResource {
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.HUB_READ, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
+        String groupId = getAttribute("groupId");
+        ImageLibraryCatalog.Group group = catalog.getCatalog(ctx.getHubContext()).getGroup(groupId);
+        List<String> ids = (group != null) ? group.getImageIds() : imageManager.getImageLibraryImageIds(ctx.getHubContext(), groupId);
+
         JSONArray results = new JSONArray();
-        List<String> ids = imageManager.getImageLibraryImageIds(ctx.getHubContext(), getAttribute("groupId"));
+        String imagePrefix = ImageLibraryCatalog.createImageLinkPrefix(ctx);
         for (String id : ids) {
-            results.put(addImageLibraryImageLinks(ctx, createImageLibraryImageJSON(id), id));
+            results.put(addImageLibraryImageLinks(createImageLibraryImageJSON(id), imagePrefix + id));
         }
         return new JsonRepresentation(results);
     }
@@ -57,9 +59,9 @@ public class ImageLibraryGroupResource extends SelfInjectingServerResource {
         return new JSONObject();
     }
 
-    private JSONObject addImageLibraryImageLinks(HobsonRestContext ctx, JSONObject json, String imageId) {
+    private JSONObject addImageLibraryImageLinks(JSONObject json, String self) {
         JSONObject links = new JSONObject();
-        links.put("self", ctx.getApiRoot() + new Template(ImageLibraryImageResource.PATH).format(MapUtil.createSingleEntryMap(ctx, "imageId", imageId)));
+        links.put("self", self);
         json.put(JSONAttributes.LINKS, links);
         return json;
     }
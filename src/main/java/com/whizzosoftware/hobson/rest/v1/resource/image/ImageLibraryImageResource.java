@@ -7,6 +7,8 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.ImageLibraryCatalog;
+import com.whizzosoftware.hobson.rest.v1.util.ImageVariants;
 import org.restlet.data.MediaType;
 import org.restlet.ext.guice.SelfInjectingServerResource;
 import org.restlet.representation.InputRepresentation;
@@ -22,6 +24,8 @@ public class ImageLibraryImageResource extends SelfInjectingServerResource {
     AccessManager accessManager;
     @Inject
     ImageManager imageManager;
+    @Inject
+    ImageVariants imageVariants;
 
     @Override
     public Representation get() throws ResourceException {
@@ -29,8 +33,20 @@ public class ImageLibraryImageResource extends SelfInjectingServerResource {
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.HUB_READ, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
+        final String imageId = getAttribute("imageId");
+
+        ImageVariants.Spec spec = ImageVariants.Spec.parse(getQueryValue("w"), getQueryValue("h"), getQueryValue("format"));
+        if (spec != null) {
+            return imageVariants.createRepresentation(getRequest(), getResponse(), ImageLibraryCatalog.createSourceId(ctx.getHubContext(), imageId), new ImageVariants.Source() {
+                @Override
+                public ImageInputStream open() {
+                    return imageManager.getImageLibraryImage(ctx.getHubContext(), imageId);
+                }
+            }, spec);
+        }
+
         ImageInputStream iis = imageManager.getImageLibraryImage(
-            ctx.getHubContext(), getAttribute("imageId"));
+            ctx.getHubContext(), imageId);
 
         return new InputRepresentation(iis.getInputStream(), MediaType.valueOf(iis.getMediaType()));
     }
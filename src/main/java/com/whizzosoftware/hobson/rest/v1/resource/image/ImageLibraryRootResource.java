@@ -10,16 +10,13 @@
 package com.whizzosoftware.hobson.rest.v1.resource.image;
 
 import com.whizzosoftware.hobson.api.HobsonInvalidRequestException;
-import com.whizzosoftware.hobson.api.image.ImageGroup;
-import com.whizzosoftware.hobson.api.image.ImageManager;
-import com.whizzosoftware.hobson.api.persist.IdProvider;
 import com.whizzosoftware.hobson.api.security.AccessManager;
 import com.whizzosoftware.hobson.json.JSONAttributes;
 import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
-import com.whizzosoftware.hobson.rest.v1.util.MapUtil;
+import com.whizzosoftware.hobson.rest.v1.util.ImageLibraryCatalog;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -27,10 +24,8 @@ import org.restlet.ext.guice.SelfInjectingServerResource;
 import org.restlet.ext.json.JsonRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.resource.ResourceException;
-import org.restlet.routing.Template;
 
 import javax.inject.Inject;
-import java.util.List;
 
 public class ImageLibraryRootResource extends SelfInjectingServerResource {
     public static final String PATH = "/hubs/{hubId}/imageLibrary";
@@ -38,9 +33,7 @@ public class ImageLibraryRootResource extends SelfInjectingServerResource {
     @Inject
     AccessManager accessManager;
     @Inject
-    ImageManager imageManager;
-    @Inject
-    IdProvider idProvider;
+    ImageLibraryCatalog catalog;
 
     @Override
     public Representation get() throws ResourceException {
@@ -49,32 +42,24 @@ public class ImageLibraryRootResource extends SelfInjectingServerResource {
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.HUB_READ, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
         JSONArray results = new JSONArray();
-        List<ImageGroup> groups = imageManager.getImageLibraryGroups(ctx.getHubContext());
-        for (ImageGroup group : groups) {
-            results.put(addImageLibraryGroupLinks(
-                    ctx,
-                    createImageLibraryGroupJSON(group),
-                    group.getId()
-            ));
+        String groupPrefix = ImageLibraryCatalog.createGroupLinkPrefix(ctx);
+        for (ImageLibraryCatalog.Group group : catalog.getCatalog(ctx.getHubContext()).getGroups()) {
+            results.put(createImageLibraryGroupJSON(group, groupPrefix));
         }
         return new JsonRepresentation(results);
     }
 
-    private static JSONObject createImageLibraryGroupJSON(ImageGroup group) {
+    private static JSONObject createImageLibraryGroupJSON(ImageLibraryCatalog.Group group, String groupPrefix) {
         try {
             JSONObject json = new JSONObject();
             json.put("name", group.getName());
+            JSONObject groupLinks = new JSONObject();
+            groupLinks.put("self", groupPrefix + group.getId());
+            json.put(JSONAttributes.LINKS, groupLinks);
             return json;
         } catch (JSONException e) {
             throw new HobsonInvalidRequestException(e.getMessage());
         }
     }
 
-    private JSONObject addImageLibraryGroupLinks(HobsonRestContext ctx, JSONObject json, String groupId) {
-        JSONObject groupLinks = new JSONObject();
-        groupLinks.put("self", ctx.getApiRoot() + new Template(ImageLibraryGroupResource.PATH).format(MapUtil.createSingleEntryMap(ctx, "groupId", groupId)));
-        json.put(JSONAttributes.LINKS, groupLinks);
-        return json;
-    }
-
 }
@@ -9,7 +9,7 @@
 */
 package com.whizzosoftware.hobson.rest.v1.resource.job;
 
-import com.whizzosoftware.hobson.api.HobsonRuntimeException;
+import com.whizzosoftware.hobson.api.HobsonInvalidRequestException;
 import com.whizzosoftware.hobson.api.action.ActionManager;
 import com.whizzosoftware.hobson.api.action.job.JobInfo;
 import com.whizzosoftware.hobson.api.security.AccessManager;
@@ -21,54 +21,155 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.BackgroundJobs;
+import com.whizzosoftware.hobson.rest.v1.util.JobWatcher;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.MediaType;
 import org.restlet.data.Status;
+import org.restlet.data.Tag;
 import org.restlet.ext.guice.SelfInjectingServerResource;
 import org.restlet.ext.json.JsonRepresentation;
 import org.restlet.representation.EmptyRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.resource.ResourceException;
+import org.restlet.service.StatusService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 
 public class JobResource extends SelfInjectingServerResource {
+    private static final Logger logger = LoggerFactory.getLogger(JobResource.class);
+
     public static final String PATH = "/hubs/{hubId}/jobs/{jobId}";
 
+    static final String JOB_MEDIA_TYPE = "application/vnd.hobson.job+json";
+
     @Inject
     AccessManager accessManager;
     @Inject
     ActionManager actionManager;
     @Inject
     DTOBuildContextFactory dtoBuildContextFactory;
+    @Inject
+    JobWatcher jobWatcher;
+    @Inject
+    BackgroundJobs backgroundJobs;
 
     @Override
     protected Representation get() throws ResourceException {
         final HobsonRestContext ctx = HobsonRestContext.createContext(getApplication(), getRequest().getClientInfo(), getRequest().getResourceRef().getPath());
         final ExpansionFields expansions = new ExpansionFields(getQueryValue("expand"));
         final DTOBuildContext bctx = dtoBuildContextFactory.createContext(ctx.getApiRoot(), expansions);
+        final String jobId = getAttribute("jobId");
+        final long wait = JobWatcher.parseWait(getQueryValue("wait"));
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.JOB_READ, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
-        JobInfo jobInfo = actionManager.getJobInfo(ctx.getHubContext(), getAttribute("jobId"));
-        JobDTO dto = new JobDTO.Builder(bctx, ctx.getHubContext(), getAttribute("jobId"), jobInfo, true).build();
+        // jobs started by the REST layer itself (e.g. bulk deletes) are checked before the action manager's jobs
+        final BackgroundJobs.Job bgJob = backgroundJobs.getJob(ctx.getHubContext(), jobId);
+        final String jobUri = bctx.getIdProvider().createJobId(ctx.getHubContext(), jobId).getId();
+        final MediaType mediaType;
+        final String state;
+        if (bgJob != null) {
+            mediaType = MediaTypeHelper.createMediaType(getRequest(), JOB_MEDIA_TYPE);
+            state = bgJob.toJSON(jobUri).toString();
+        } else {
+            JobInfo jobInfo = actionManager.getJobInfo(ctx.getHubContext(), jobId);
+            JobDTO dto = new JobDTO.Builder(bctx, ctx.getHubContext(), jobId, jobInfo, true).build();
+            mediaType = MediaTypeHelper.createMediaType(getRequest(), dto);
+            state = dto.toJSON().toString();
+        }
+        final String tag = JobWatcher.createTag(state);
 
-        JsonRepresentation jr = new JsonRepresentation(dto.toJSON());
-        jr.setMediaType(MediaTypeHelper.createMediaType(getRequest(), dto));
-        return jr;
+        // in long-poll mode, a client that already has the current state is parked until the state changes (or the
+        // wait times out) without holding a worker thread
+        if (wait > 0 && hasTag(tag)) {
+            final Request request = getRequest();
+            final Response response = getResponse();
+            response.setAutoCommitting(false);
+            // the state is rendered with this request's build context; concurrent waits on the same job share the
+            // change detection but each receives its own rendering
+            JobWatcher.StateProvider provider = new JobWatcher.StateProvider() {
+                @Override
+                public String getState() {
+                    if (bgJob != null) {
+                        return bgJob.toJSON(jobUri).toString();
+                    }
+                    return new JobDTO.Builder(bctx, ctx.getHubContext(), jobId, actionManager.getJobInfo(ctx.getHubContext(), jobId), true).build().toJSON().toString();
+                }
+            };
+            jobWatcher.watch(ctx.getHubContext().getHubId() + ":" + jobId, provider, provider, tag, wait, new JobWatcher.Callback() {
+                @Override
+                public void onComplete(String newState, String newTag) {
+                    if (newState != null) {
+                        response.setStatus(Status.SUCCESS_OK);
+                        response.setEntity(createRepresentation(newState, newTag, mediaType));
+                    } else {
+                        response.setStatus(Status.REDIRECTION_NOT_MODIFIED);
+                        response.setEntity(new EmptyRepresentation());
+                    }
+                    response.commit();
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    // report the failure the same way a synchronous request would rather than as "not modified"
+                    StatusService ss = getApplication().getStatusService();
+                    Status status = ss.getStatus(e, request, response);
+                    response.setStatus(status);
+                    response.setEntity(ss.getRepresentation(status, request, response));
+                    response.commit();
+                }
+            });
+            return null;
+        }
+
+        return createRepresentation(state, tag, mediaType);
     }
 
     @Override
     protected Representation delete() throws ResourceException {
         final HobsonRestContext ctx = HobsonRestContext.createContext(getApplication(), getRequest().getClientInfo(), getRequest().getResourceRef().getPath());
+        final String jobId = getAttribute("jobId");
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.JOB_DELETE, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
-        try {
-            actionManager.stopJob(ctx.getHubContext(), getAttribute("jobId")).sync();
-            getResponse().setStatus(Status.SUCCESS_ACCEPTED);
-            return new EmptyRepresentation();
-        } catch (InterruptedException e) {
-            throw new HobsonRuntimeException("An error occurred deleting a job", e);
+        if (backgroundJobs.getJob(ctx.getHubContext(), jobId) != null) {
+            throw new HobsonInvalidRequestException("Background jobs can't be stopped");
         }
+
+        // the stop request is accepted immediately; clients can follow the job's progress with a GET
+        actionManager.stopJob(ctx.getHubContext(), jobId).addListener(new GenericFutureListener<Future<Object>>() {
+            @Override
+            public void operationComplete(Future<Object> future) throws Exception {
+                if (!future.isSuccess()) {
+                    logger.error("An error occurred deleting job " + jobId, future.cause());
+                }
+            }
+        });
+
+        getResponse().setStatus(Status.SUCCESS_ACCEPTED);
+        return new EmptyRepresentation();
+    }
+
+    private boolean hasTag(String tag) {
+        for (Tag t : getRequest().getConditions().getNoneMatch()) {
+            if (tag.equals(t.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Representation createRepresentation(String state, String tag, MediaType mediaType) {
+        JsonRepresentation jr = new JsonRepresentation(state);
+        jr.setMediaType(mediaType);
+        jr.setTag(new Tag(tag, false));
+        return jr;
     }
 }
@@ -10,7 +10,6 @@
 package com.whizzosoftware.hobson.rest.v1.resource.plugin;
 
 import com.google.inject.Inject;
-import com.whizzosoftware.hobson.api.HobsonRuntimeException;
 import com.whizzosoftware.hobson.api.action.ActionClass;
 import com.whizzosoftware.hobson.api.action.ActionManager;
 import com.whizzosoftware.hobson.api.action.job.AsyncJobHandle;
@@ -31,13 +30,13 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.ActionAdmission;
 import com.whizzosoftware.hobson.rest.v1.util.DTOMapper;
 import com.whizzosoftware.hobson.rest.v1.util.JSONHelper;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
-import org.restlet.data.Status;
+import com.whizzosoftware.hobson.rest.v1.util.PropertyContainerClassCache;
 import org.restlet.ext.guice.SelfInjectingServerResource;
 import org.restlet.ext.json.JsonRepresentation;
-import org.restlet.representation.EmptyRepresentation;
 import org.restlet.representation.Representation;
 
 public class LocalPluginActionClassResource extends SelfInjectingServerResource {
@@ -51,6 +50,10 @@ public class LocalPluginActionClassResource extends SelfInjectingServerResource
     DTOBuildContextFactory dtoBuildContextFactory;
     @Inject
     IdProvider idProvider;
+    @Inject
+    ActionAdmission actionAdmission;
+    @Inject
+    PropertyContainerClassCache containerClassCache;
 
     @Override
     protected Representation get() {
@@ -84,17 +87,26 @@ public class LocalPluginActionClassResource extends SelfInjectingServerResource
         PropertyContainerClassProvider pccp = new PropertyContainerClassProvider() {
             @Override
             public PropertyContainerClass getPropertyContainerClass(PropertyContainerClassContext ctx) {
-                return actionManager.getActionClass(PropertyContainerClassContext.create(pctx, actionClassId));
+                return containerClassCache.getActionClass(PropertyContainerClassContext.create(pctx, actionClassId));
             }
         };
-        AsyncJobHandle result = actionManager.executeAction(DTOMapper.mapPropertyContainerDTO(dto, pccp, idProvider));
+        if (!actionAdmission.tryAcquire(getResponse())) {
+            return null;
+        }
+
+        // until start() is called the permit must be released on any failure or it is lost for good
+        AsyncJobHandle result;
+        String jobLocation;
         try {
-            result.getStartFuture().sync();
-            getResponse().setStatus(Status.SUCCESS_CREATED);
-            getResponse().setLocationRef(idProvider.createJobId(ctx.getHubContext(), result.getJobId()).getId());
-            return new EmptyRepresentation();
-        } catch (InterruptedException e) {
-            throw new HobsonRuntimeException("Unable to execute action");
+            result = actionManager.executeAction(DTOMapper.mapPropertyContainerDTO(dto, pccp, idProvider));
+            jobLocation = idProvider.createJobId(ctx.getHubContext(), result.getJobId()).getId();
+        } catch (RuntimeException e) {
+            actionAdmission.release();
+            throw e;
         }
+
+        // the response is completed when the job starts so no worker thread is blocked waiting for it
+        actionAdmission.start(getResponse(), result, jobLocation);
+        return null;
     }
 }
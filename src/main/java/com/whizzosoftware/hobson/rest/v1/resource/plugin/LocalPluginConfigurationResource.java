@@ -23,6 +23,7 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.ChangeJournal;
 import com.whizzosoftware.hobson.rest.v1.util.DTOMapper;
 import com.whizzosoftware.hobson.rest.v1.util.JSONHelper;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
@@ -51,6 +52,8 @@ public class LocalPluginConfigurationResource extends SelfInjectingServerResourc
     IdProvider idProvider;
     @Inject
     DTOBuildContextFactory dtoBuildContextFactory;
+    @Inject
+    ChangeJournal changeJournal;
 
     @Override
     protected Representation get() throws ResourceException {
@@ -105,6 +108,7 @@ public class LocalPluginConfigurationResource extends SelfInjectingServerResourc
             pc,
             DTOMapper.mapPropertyContainerDTO(dto, pccp, idProvider).getPropertyValues()
         );
+        changeJournal.record(ctx.getHubContext(), ChangeJournal.CONFIGURATION, idProvider.createLocalPluginConfigurationId(pc).getId(), ChangeJournal.UPDATED);
 
         getResponse().setStatus(Status.SUCCESS_ACCEPTED);
         return new EmptyRepresentation();
@@ -9,23 +9,18 @@
 */
 package com.whizzosoftware.hobson.rest.v1.resource.plugin;
 
-import com.whizzosoftware.hobson.api.image.ImageInputStream;
 import com.whizzosoftware.hobson.api.plugin.PluginContext;
-import com.whizzosoftware.hobson.api.plugin.PluginManager;
 import com.whizzosoftware.hobson.api.security.AccessManager;
 import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
-import org.apache.commons.codec.binary.Base64InputStream;
-import org.restlet.data.MediaType;
+import com.whizzosoftware.hobson.rest.v1.util.PluginIconCache;
 import org.restlet.ext.guice.SelfInjectingServerResource;
-import org.restlet.representation.InputRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.resource.ResourceException;
 
 import javax.inject.Inject;
-import java.io.InputStream;
 
 /**
  * A REST resource for retrieving a plugin's icon.
@@ -38,7 +33,7 @@ public class LocalPluginImageResource extends SelfInjectingServerResource {
     @Inject
     AccessManager accessManager;
     @Inject
-    PluginManager pluginManager;
+    PluginIconCache iconCache;
 
     @Override
     protected Representation get() throws ResourceException {
@@ -50,12 +45,6 @@ public class LocalPluginImageResource extends SelfInjectingServerResource {
         String s = getQueryValue("base64");
         final boolean base64 = (s != null) && Boolean.parseBoolean(s);
 
-        ImageInputStream iis = pluginManager.getLocalPluginIcon(PluginContext.create(ctx.getHubContext(), pluginId));
-        InputStream is = iis.getInputStream();
-        if (base64) {
-            is = new Base64InputStream(is, true);
-        }
-
-        return new InputRepresentation(is, MediaType.valueOf(iis.getMediaType()));
+        return iconCache.getIcon(PluginContext.create(ctx.getHubContext(), pluginId), base64).createRepresentation(getRequest(), getResponse());
     }
 }
@@ -9,6 +9,7 @@
 */
 package com.whizzosoftware.hobson.rest.v1.resource.plugin;
 
+import com.whizzosoftware.hobson.api.persist.IdProvider;
 import com.whizzosoftware.hobson.api.plugin.PluginContext;
 import com.whizzosoftware.hobson.api.plugin.PluginManager;
 import com.whizzosoftware.hobson.api.security.AccessManager;
@@ -16,6 +17,8 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.BackgroundJobs;
+import com.whizzosoftware.hobson.rest.v1.util.HubEventDispatcher;
 import org.restlet.data.Status;
 import org.restlet.ext.guice.SelfInjectingServerResource;
 import org.restlet.representation.EmptyRepresentation;
@@ -35,6 +38,12 @@ public class LocalPluginReloadResource extends SelfInjectingServerResource {
     AccessManager accessManager;
     @Inject
     PluginManager pluginManager;
+    @Inject
+    HubEventDispatcher eventDispatcher;
+    @Inject
+    BackgroundJobs backgroundJobs;
+    @Inject
+    IdProvider idProvider;
 
     @Override
     protected Representation post(Representation entity) {
@@ -42,9 +51,21 @@ public class LocalPluginReloadResource extends SelfInjectingServerResource {
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.PLUGIN_EXECUTE, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
-        pluginManager.reloadLocalPlugin(PluginContext.create(ctx.getHubContext(), getAttribute("pluginId")));
+        final String pluginId = getAttribute("pluginId");
+
+        // reloads share the plugin queue with installs so the two never overlap
+        String jobId = backgroundJobs.submit(ctx.getHubContext(), BackgroundJobs.PLUGIN_QUEUE, "reload:" + pluginId, new BackgroundJobs.Work() {
+            @Override
+            public void run(BackgroundJobs.Job job) {
+                job.setTotal(1);
+                pluginManager.reloadLocalPlugin(PluginContext.create(ctx.getHubContext(), pluginId));
+                eventDispatcher.firePluginChange(ctx.getHubContext());
+                job.increment();
+            }
+        });
 
         getResponse().setStatus(Status.SUCCESS_ACCEPTED);
+        getResponse().setLocationRef(idProvider.createJobId(ctx.getHubContext(), jobId).getId());
         return new EmptyRepresentation();
     }
 }
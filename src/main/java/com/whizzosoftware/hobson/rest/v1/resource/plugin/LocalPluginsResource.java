@@ -24,6 +24,7 @@ import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
+import com.whizzosoftware.hobson.rest.v1.util.RemotePluginCatalog;
 import org.restlet.ext.guice.SelfInjectingServerResource;
 import org.restlet.ext.json.JsonRepresentation;
 import org.restlet.representation.Representation;
@@ -44,6 +45,8 @@ public class LocalPluginsResource extends SelfInjectingServerResource {
     DTOBuildContextFactory dtoBuildContextFactory;
     @Inject
     IdProvider idProvider;
+    @Inject
+    RemotePluginCatalog remotePluginCatalog;
 
     @Override
     protected Representation get() throws ResourceException {
@@ -55,7 +58,7 @@ public class LocalPluginsResource extends SelfInjectingServerResource {
 
         ItemListDTO dto = new ItemListDTO(idProvider.createLocalPluginsId(ctx.getHubContext()).getId());
 
-        Map<String,String> remoteVersions = pluginManager.getRemotePluginVersions(ctx.getHubContext());
+        Map<String,String> remoteVersions = remotePluginCatalog.getRemotePluginVersions(ctx.getHubContext());
 
         boolean itemExpand = expansions.has("item");
         for (HobsonLocalPluginDescriptor plugin : pluginManager.getLocalPlugins(ctx.getHubContext())) {
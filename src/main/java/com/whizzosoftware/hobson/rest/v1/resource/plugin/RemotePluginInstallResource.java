@@ -17,6 +17,8 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.BackgroundJobs;
+import com.whizzosoftware.hobson.rest.v1.util.HubEventDispatcher;
 import com.whizzosoftware.hobson.rest.v1.util.MapUtil;
 import org.restlet.data.Status;
 import org.restlet.ext.guice.SelfInjectingServerResource;
@@ -39,7 +41,11 @@ public class RemotePluginInstallResource extends SelfInjectingServerResource {
     @Inject
     PluginManager pluginManager;
     @Inject
+    HubEventDispatcher eventDispatcher;
+    @Inject
     IdProvider idProvider;
+    @Inject
+    BackgroundJobs backgroundJobs;
 
     @Override
     protected Representation post(Representation entity) {
@@ -47,13 +53,24 @@ public class RemotePluginInstallResource extends SelfInjectingServerResource {
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.PLUGIN_INSTALL, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
-        String pluginId = getAttribute("pluginId");
-        String pluginVersion = getAttribute("pluginVersion");
+        final String pluginId = getAttribute("pluginId");
+        final String pluginVersion = getAttribute("pluginVersion");
+        final String pluginUri = ctx.getApiRoot() + new Template(LocalPluginResource.PATH).format(MapUtil.createSingleEntryMap(ctx, "pluginId", pluginId));
 
-        pluginManager.installRemotePlugin(PluginContext.create(ctx.getHubContext(), pluginId), pluginVersion);
+        // installs are serialized on the plugin queue and repeated requests for the same version share one job
+        String jobId = backgroundJobs.submit(ctx.getHubContext(), BackgroundJobs.PLUGIN_QUEUE, "install:" + pluginId + ":" + pluginVersion, new BackgroundJobs.Work() {
+            @Override
+            public void run(BackgroundJobs.Job job) {
+                job.setTotal(1);
+                pluginManager.installRemotePlugin(PluginContext.create(ctx.getHubContext(), pluginId), pluginVersion);
+                eventDispatcher.firePluginChange(ctx.getHubContext());
+                job.setResult(pluginUri);
+                job.increment();
+            }
+        });
 
         getResponse().setStatus(Status.SUCCESS_ACCEPTED);
-        getResponse().setLocationRef(ctx.getApiRoot() + new Template(LocalPluginResource.PATH).format(MapUtil.createSingleEntryMap(ctx, "pluginId", pluginId)));
+        getResponse().setLocationRef(idProvider.createJobId(ctx.getHubContext(), jobId).getId());
 
         return new EmptyRepresentation();
     }
@@ -10,7 +10,6 @@
 package com.whizzosoftware.hobson.rest.v1.resource.plugin;
 
 import com.whizzosoftware.hobson.api.plugin.HobsonPluginDescriptor;
-import com.whizzosoftware.hobson.api.plugin.PluginManager;
 import com.whizzosoftware.hobson.api.security.AccessManager;
 import com.whizzosoftware.hobson.dto.ExpansionFields;
 import com.whizzosoftware.hobson.dto.context.DTOBuildContext;
@@ -23,6 +22,7 @@ import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
+import com.whizzosoftware.hobson.rest.v1.util.RemotePluginCatalog;
 import org.restlet.ext.guice.SelfInjectingServerResource;
 import org.restlet.ext.json.JsonRepresentation;
 import org.restlet.representation.Representation;
@@ -37,7 +37,7 @@ public class RemotePluginsResource extends SelfInjectingServerResource {
     @Inject
     AccessManager accessManager;
     @Inject
-    PluginManager pluginManager;
+    RemotePluginCatalog remotePluginCatalog;
     @Inject
     DTOBuildContextFactory dtoBuildContextFactory;
 
@@ -52,9 +52,9 @@ public class RemotePluginsResource extends SelfInjectingServerResource {
         ItemListDTO dto = new ItemListDTO(bctx, bctx.getIdProvider().createRemotePluginsId(ctx.getHubContext()), true);
 
         boolean itemExpand = expansions.has("item");
-        for (HobsonPluginDescriptor pd : pluginManager.getRemotePlugins(ctx.getHubContext())) {
+        for (HobsonPluginDescriptor pd : remotePluginCatalog.getRemotePlugins(ctx.getHubContext())) {
             HobsonPluginDTO pdto = new HobsonPluginDTO.Builder(
-                dtoBuildContextFactory.createContext(ctx.getApiRoot(), expansions),
+                bctx,
                 ctx.getHubContext(),
                 pd,
                 pd.getDescription(),
@@ -24,6 +24,8 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.BackgroundJobs;
+import com.whizzosoftware.hobson.rest.v1.util.ChangeJournal;
 import com.whizzosoftware.hobson.rest.v1.util.JSONHelper;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
 import org.json.JSONObject;
@@ -34,6 +36,7 @@ import org.restlet.representation.EmptyRepresentation;
 import org.restlet.representation.Representation;
 
 import javax.inject.Inject;
+import java.util.Collection;
 
 /**
  * A REST resource for adding and retrieving presence entities.
@@ -52,6 +55,10 @@ public class PresenceEntitiesResource extends SelfInjectingServerResource {
     DTOBuildContextFactory dtoBuildContextFactory;
     @Inject
     IdProvider idProvider;
+    @Inject
+    ChangeJournal changeJournal;
+    @Inject
+    BackgroundJobs backgroundJobs;
 
     @Override
     protected Representation get() {
@@ -89,6 +96,7 @@ public class PresenceEntitiesResource extends SelfInjectingServerResource {
         JSONObject json = JSONHelper.createJSONFromRepresentation(entity);
         if (json.has("name") && json.getString("name").trim().length() > 0) {
             presenceManager.addPresenceEntity(ctx.getHubContext(), json.getString("name"));
+            changeJournal.invalidate(ctx.getHubContext());
             getResponse().setStatus(Status.SUCCESS_ACCEPTED);
             return new EmptyRepresentation();
         } else {
@@ -102,11 +110,22 @@ public class PresenceEntitiesResource extends SelfInjectingServerResource {
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.PRESENCE_DELETE, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
-        for (PresenceEntity entity : presenceManager.getAllPresenceEntities(ctx.getHubContext())) {
-            presenceManager.deletePresenceEntity(entity.getContext());
-        }
+        // delete the entities in the background; the job can be followed via the Location header
+        String jobId = backgroundJobs.submit(ctx.getHubContext(), new BackgroundJobs.Work() {
+            @Override
+            public void run(BackgroundJobs.Job job) {
+                Collection<PresenceEntity> entities = presenceManager.getAllPresenceEntities(ctx.getHubContext());
+                job.setTotal(entities.size());
+                for (PresenceEntity entity : entities) {
+                    presenceManager.deletePresenceEntity(entity.getContext());
+                    changeJournal.record(ctx.getHubContext(), ChangeJournal.PRESENCE_ENTITY, idProvider.createPresenceEntityId(entity.getContext()).getId(), ChangeJournal.REMOVED);
+                    job.increment();
+                }
+            }
+        });
 
         getResponse().setStatus(Status.SUCCESS_ACCEPTED);
+        getResponse().setLocationRef(idProvider.createJobId(ctx.getHubContext(), jobId).getId());
         return new EmptyRepresentation();
     }
 }
@@ -11,6 +11,7 @@ package com.whizzosoftware.hobson.rest.v1.resource.presence;
 
 import com.whizzosoftware.hobson.api.event.EventManager;
 import com.whizzosoftware.hobson.api.event.presence.PresenceUpdateRequestEvent;
+import com.whizzosoftware.hobson.api.persist.IdProvider;
 import com.whizzosoftware.hobson.api.presence.PresenceEntity;
 import com.whizzosoftware.hobson.api.presence.PresenceEntityContext;
 import com.whizzosoftware.hobson.api.presence.PresenceLocation;
@@ -26,6 +27,7 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.ChangeJournal;
 import com.whizzosoftware.hobson.rest.v1.util.DTOMapper;
 import com.whizzosoftware.hobson.rest.v1.util.JSONHelper;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
@@ -54,6 +56,10 @@ public class PresenceEntityResource extends SelfInjectingServerResource {
     EventManager eventManager;
     @Inject
     DTOBuildContextFactory dtoBuildContextFactory;
+    @Inject
+    IdProvider idProvider;
+    @Inject
+    ChangeJournal changeJournal;
 
     @Override
     protected Representation get() {
@@ -105,6 +111,7 @@ public class PresenceEntityResource extends SelfInjectingServerResource {
 
         PresenceEntityContext pec = PresenceEntityContext.create(ctx.getHubContext(), getAttribute("entityId"));
         presenceManager.deletePresenceEntity(pec);
+        changeJournal.record(ctx.getHubContext(), ChangeJournal.PRESENCE_ENTITY, idProvider.createPresenceEntityId(pec).getId(), ChangeJournal.REMOVED);
 
         getResponse().setStatus(Status.SUCCESS_ACCEPTED);
         return new EmptyRepresentation();
@@ -21,6 +21,7 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.ChangeJournal;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
 import org.restlet.data.Status;
 import org.restlet.ext.guice.SelfInjectingServerResource;
@@ -41,6 +42,8 @@ public class PresenceLocationResource extends SelfInjectingServerResource {
     DTOBuildContextFactory dtoBuildContextFactory;
     @Inject
     IdProvider idProvider;
+    @Inject
+    ChangeJournal changeJournal;
 
     @Override
     protected Representation get() {
@@ -68,6 +71,7 @@ public class PresenceLocationResource extends SelfInjectingServerResource {
 
         PresenceLocationContext pec = PresenceLocationContext.create(ctx.getHubContext(), getAttribute("locationId"));
         presenceManager.deletePresenceLocation(pec);
+        changeJournal.record(ctx.getHubContext(), ChangeJournal.PRESENCE_LOCATION, idProvider.createPresenceLocationId(pec).getId(), ChangeJournal.REMOVED);
 
         getResponse().setStatus(Status.SUCCESS_ACCEPTED);
         return new EmptyRepresentation();
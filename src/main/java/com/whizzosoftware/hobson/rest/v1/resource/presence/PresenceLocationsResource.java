@@ -23,6 +23,8 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.BackgroundJobs;
+import com.whizzosoftware.hobson.rest.v1.util.ChangeJournal;
 import com.whizzosoftware.hobson.rest.v1.util.JSONHelper;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
 import org.json.JSONObject;
@@ -33,6 +35,7 @@ import org.restlet.representation.EmptyRepresentation;
 import org.restlet.representation.Representation;
 
 import javax.inject.Inject;
+import java.util.Collection;
 
 public class PresenceLocationsResource extends SelfInjectingServerResource {
     public static final String PATH = "/hubs/{hubId}/presence/locations";
@@ -46,6 +49,10 @@ public class PresenceLocationsResource extends SelfInjectingServerResource {
     DTOBuildContextFactory dtoBuildContextFactory;
     @Inject
     IdProvider idProvider;
+    @Inject
+    ChangeJournal changeJournal;
+    @Inject
+    BackgroundJobs backgroundJobs;
 
     @Override
     protected Representation get() {
@@ -98,6 +105,7 @@ public class PresenceLocationsResource extends SelfInjectingServerResource {
         }
 
         presenceManager.addPresenceLocation(ctx.getHubContext(), json.getString(JSONAttributes.NAME), latitude, longitude, radius, beaconMajor, beaconMinor);
+        changeJournal.invalidate(ctx.getHubContext());
 
         getResponse().setStatus(Status.SUCCESS_ACCEPTED);
         return new EmptyRepresentation();
@@ -109,11 +117,22 @@ public class PresenceLocationsResource extends SelfInjectingServerResource {
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.PRESENCE_DELETE, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
-        for (PresenceLocation pl : presenceManager.getAllPresenceLocations(ctx.getHubContext())) {
-            presenceManager.deletePresenceLocation(pl.getContext());
-        }
+        // delete the locations in the background; the job can be followed via the Location header
+        String jobId = backgroundJobs.submit(ctx.getHubContext(), new BackgroundJobs.Work() {
+            @Override
+            public void run(BackgroundJobs.Job job) {
+                Collection<PresenceLocation> locations = presenceManager.getAllPresenceLocations(ctx.getHubContext());
+                job.setTotal(locations.size());
+                for (PresenceLocation pl : locations) {
+                    presenceManager.deletePresenceLocation(pl.getContext());
+                    changeJournal.record(ctx.getHubContext(), ChangeJournal.PRESENCE_LOCATION, idProvider.createPresenceLocationId(pl.getContext()).getId(), ChangeJournal.REMOVED);
+                    job.increment();
+                }
+            }
+        });
 
         getResponse().setStatus(Status.SUCCESS_ACCEPTED);
+        getResponse().setLocationRef(idProvider.createJobId(ctx.getHubContext(), jobId).getId());
         return new EmptyRepresentation();
     }
 }
@@ -9,7 +9,6 @@
 */
 package com.whizzosoftware.hobson.rest.v1.resource.task;
 
-import com.whizzosoftware.hobson.api.hub.HubManager;
 import com.whizzosoftware.hobson.api.persist.IdProvider;
 import com.whizzosoftware.hobson.api.property.*;
 import com.whizzosoftware.hobson.api.security.AccessManager;
@@ -25,17 +24,24 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.ChangeJournal;
 import com.whizzosoftware.hobson.rest.v1.util.DTOMapper;
+import com.whizzosoftware.hobson.rest.v1.util.EntityTags;
 import com.whizzosoftware.hobson.rest.v1.util.JSONHelper;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
+import com.whizzosoftware.hobson.rest.v1.util.PropertyContainerClassCache;
+import com.whizzosoftware.hobson.rest.v1.util.SparseFields;
 import org.json.JSONObject;
+import org.restlet.data.Method;
 import org.restlet.data.Status;
 import org.restlet.ext.guice.SelfInjectingServerResource;
 import org.restlet.ext.json.JsonRepresentation;
 import org.restlet.representation.EmptyRepresentation;
 import org.restlet.representation.Representation;
+import org.restlet.resource.ResourceException;
 
 import javax.inject.Inject;
+import java.util.List;
 
 /**
  * A REST resource for managing a particular task.
@@ -48,34 +54,37 @@ public class TaskResource extends SelfInjectingServerResource {
     @Inject
     AccessManager accessManager;
     @Inject
-    HubManager hubManager;
-    @Inject
     TaskManager taskManager;
     @Inject
     DTOBuildContextFactory dtoBuildContextFactory;
     @Inject
     IdProvider idProvider;
+    @Inject
+    ChangeJournal changeJournal;
+    @Inject
+    PropertyContainerClassCache containerClassCache;
+    @Inject
+    EntityTags entityTags;
+
+    @Override
+    protected void doInit() throws ResourceException {
+        super.doInit();
+        // writes evaluate If-Match themselves so the check and the write happen under the same lock
+        setConditional(Method.GET.equals(getMethod()) || Method.HEAD.equals(getMethod()));
+    }
 
     @Override
     protected Representation get() {
         final HobsonRestContext ctx = HobsonRestContext.createContext(getApplication(), getRequest().getClientInfo(), getRequest().getResourceRef().getPath());
-        final ExpansionFields expansions = new ExpansionFields(getQueryValue("expand"));
-        final DTOBuildContext bctx = dtoBuildContextFactory.createContext(ctx.getApiRoot(), expansions);
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.TASK_READ, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
-        HobsonTask task = taskManager.getTask(TaskContext.create(ctx.getHubContext(), getAttribute("taskId")));
+        HobsonTaskDTO dto = createDTO(ctx, TaskContext.create(ctx.getHubContext(), getAttribute("taskId")));
+        JSONObject json = filter(dto);
 
-        HobsonTaskDTO dto = new HobsonTaskDTO.Builder(
-            bctx,
-            task,
-            true
-        ).build();
-
-        dto.addContext(JSONAttributes.AIDT, bctx.getIdTemplateMap());
-
-        JsonRepresentation jr = new JsonRepresentation(dto.toJSON());
+        JsonRepresentation jr = new JsonRepresentation(json);
         jr.setMediaType(MediaTypeHelper.createMediaType(getRequest(), dto));
+        jr.setTag(EntityTags.createTag(json));
         return jr;
     }
 
@@ -87,22 +96,20 @@ public class TaskResource extends SelfInjectingServerResource {
 
         DTOMapper mapper = new DTOMapper(); // TODO: inject
 
-        PropertyContainerClassProvider pccp = new PropertyContainerClassProvider() {
+        PropertyContainerClassProvider pccp = containerClassCache;
+
+        final TaskContext tctx = TaskContext.create(ctx.getHubContext(), getAttribute("taskId"));
+        final HobsonTaskDTO dto = new HobsonTaskDTO.Builder(JSONHelper.createJSONFromRepresentation(entity)).build();
+        final List<PropertyContainer> conditions = mapper.mapPropertyContainerDTOList(dto.getConditions(), pccp, idProvider);
+        final PropertyContainerSet actionSet = mapper.mapPropertyContainerSetDTO(dto.getActionSet(), pccp, idProvider);
+        String taskId = idProvider.createTaskId(tctx).getId();
+        entityTags.write(taskId, getRequest(), createRenderer(ctx, tctx), new Runnable() {
             @Override
-            public PropertyContainerClass getPropertyContainerClass(PropertyContainerClassContext ctx) {
-                return hubManager.getContainerClass(ctx);
+            public void run() {
+                taskManager.updateTask(null, tctx, dto.getName(), dto.getDescription(), dto.isEnabled(), conditions, actionSet);
             }
-        };
-
-        HobsonTaskDTO dto = new HobsonTaskDTO.Builder(JSONHelper.createJSONFromRepresentation(entity)).build();
-        taskManager.updateTask(
-            null,
-            TaskContext.create(ctx.getHubContext(), getAttribute("taskId")),
-            dto.getName(),
-            dto.getDescription(),
-            dto.isEnabled(),
-            mapper.mapPropertyContainerDTOList(dto.getConditions(), pccp, idProvider),
-            mapper.mapPropertyContainerSetDTO(dto.getActionSet(), pccp, idProvider));
+        });
+        changeJournal.record(ctx.getHubContext(), ChangeJournal.TASK, taskId, ChangeJournal.UPDATED);
 
         getResponse().setStatus(Status.SUCCESS_ACCEPTED);
         return new EmptyRepresentation();
@@ -123,26 +130,36 @@ public class TaskResource extends SelfInjectingServerResource {
     protected Representation patch(Representation entity) {
         final HobsonRestContext ctx = HobsonRestContext.createContext(getApplication(), getRequest().getClientInfo(), getRequest().getResourceRef().getPath());
 
-        HobsonTask task = taskManager.getTask(TaskContext.create(ctx.getHubContext(), getAttribute("taskId")));
+        final TaskContext tctx = TaskContext.create(ctx.getHubContext(), getAttribute("taskId"));
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.TASK_UPDATE, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
-        String name = task.getName();
-        String description = task.getDescription();
-        boolean enabled = task.isEnabled();
-
-        JSONObject json = JSONHelper.createJSONFromRepresentation(entity);
-        if (json.has(JSONAttributes.NAME)) {
-            name = json.getString(JSONAttributes.NAME);
-        }
-        if (json.has(JSONAttributes.DESCRIPTION)) {
-            name = json.getString(JSONAttributes.DESCRIPTION);
-        }
-        if (json.has(JSONAttributes.ENABLED)) {
-            enabled = json.getBoolean(JSONAttributes.ENABLED);
-        }
-
-        taskManager.updateTask(null, task.getContext(), name, description, enabled, task.getConditions(), task.getActionSet());
+        // the read-modify-write happens under the If-Match check so it is based on the version the client matched
+        final JSONObject json = JSONHelper.createJSONFromRepresentation(entity);
+        String taskId = idProvider.createTaskId(tctx).getId();
+        entityTags.write(taskId, getRequest(), createRenderer(ctx, tctx), new Runnable() {
+            @Override
+            public void run() {
+                HobsonTask task = taskManager.getTask(tctx);
+
+                String name = task.getName();
+                String description = task.getDescription();
+                boolean enabled = task.isEnabled();
+
+                if (json.has(JSONAttributes.NAME)) {
+                    name = json.getString(JSONAttributes.NAME);
+                }
+                if (json.has(JSONAttributes.DESCRIPTION)) {
+                    name = json.getString(JSONAttributes.DESCRIPTION);
+                }
+                if (json.has(JSONAttributes.ENABLED)) {
+                    enabled = json.getBoolean(JSONAttributes.ENABLED);
+                }
+
+                taskManager.updateTask(null, task.getContext(), name, description, enabled, task.getConditions(), task.getActionSet());
+            }
+        });
+        changeJournal.record(ctx.getHubContext(), ChangeJournal.TASK, taskId, ChangeJournal.UPDATED);
 
         getResponse().setStatus(Status.SUCCESS_ACCEPTED);
         return new EmptyRepresentation();
@@ -154,8 +171,51 @@ public class TaskResource extends SelfInjectingServerResource {
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.TASK_DELETE, PathUtil.convertPath(ctx.getApiRoot(), getRequest().getResourceRef().getPath()));
 
-        taskManager.deleteTask(TaskContext.create(ctx.getHubContext(), getAttribute("taskId")));
+        final TaskContext tctx = TaskContext.create(ctx.getHubContext(), getAttribute("taskId"));
+        String taskId = idProvider.createTaskId(tctx).getId();
+        entityTags.write(taskId, getRequest(), createRenderer(ctx, tctx), new Runnable() {
+            @Override
+            public void run() {
+                taskManager.deleteTask(tctx);
+            }
+        });
+        changeJournal.record(ctx.getHubContext(), ChangeJournal.TASK, taskId, ChangeJournal.REMOVED);
         getResponse().setStatus(Status.SUCCESS_ACCEPTED);
         return new EmptyRepresentation();
     }
+
+    private HobsonTaskDTO createDTO(HobsonRestContext ctx, TaskContext tctx) {
+        SparseFields fields = new SparseFields(getQueryValue("fields"));
+        ExpansionFields expansions = new ExpansionFields(fields.restrictExpansions(getQueryValue("expand"), null));
+        DTOBuildContext bctx = dtoBuildContextFactory.createContext(ctx.getApiRoot(), expansions);
+
+        HobsonTaskDTO dto = new HobsonTaskDTO.Builder(
+            bctx,
+            taskManager.getTask(tctx),
+            true
+        ).build();
+
+        if (fields.includeIdTemplateMap()) {
+            dto.addContext(JSONAttributes.AIDT, bctx.getIdTemplateMap());
+        }
+
+        return dto;
+    }
+
+    private JSONObject filter(HobsonTaskDTO dto) {
+        return new SparseFields(getQueryValue("fields")).filter(dto.toJSON());
+    }
+
+    /**
+     * Creates a renderer for the representation a GET of the request URI would return, so that a write's If-Match
+     * header is compared against the tag the client received.
+     */
+    private EntityTags.Renderer createRenderer(final HobsonRestContext ctx, final TaskContext tctx) {
+        return new EntityTags.Renderer() {
+            @Override
+            public JSONObject render() {
+                return filter(createDTO(ctx, tctx));
+            }
+        };
+    }
 }
@@ -10,10 +10,7 @@
 package com.whizzosoftware.hobson.rest.v1.resource.task;
 
 import com.whizzosoftware.hobson.api.persist.IdProvider;
-import com.whizzosoftware.hobson.api.property.PropertyContainerClass;
-import com.whizzosoftware.hobson.api.property.PropertyContainerClassContext;
 import com.whizzosoftware.hobson.api.property.PropertyContainerClassProvider;
-import com.whizzosoftware.hobson.api.hub.HubManager;
 import com.whizzosoftware.hobson.api.security.AccessManager;
 import com.whizzosoftware.hobson.api.task.HobsonTask;
 import com.whizzosoftware.hobson.api.task.TaskManager;
@@ -27,9 +24,15 @@ import com.whizzosoftware.hobson.rest.HobsonRestContext;
 import com.whizzosoftware.hobson.rest.HobsonRestUser;
 import com.whizzosoftware.hobson.api.security.AuthorizationAction;
 import com.whizzosoftware.hobson.rest.util.PathUtil;
+import com.whizzosoftware.hobson.rest.v1.util.BackgroundJobs;
+import com.whizzosoftware.hobson.rest.v1.util.ChangeJournal;
+import com.whizzosoftware.hobson.rest.v1.util.CursorPage;
 import com.whizzosoftware.hobson.rest.v1.util.DTOMapper;
 import com.whizzosoftware.hobson.rest.v1.util.JSONHelper;
 import com.whizzosoftware.hobson.rest.v1.util.MediaTypeHelper;
+import com.whizzosoftware.hobson.rest.v1.util.PropertyContainerClassCache;
+import com.whizzosoftware.hobson.rest.v1.util.SparseFields;
+import org.json.JSONObject;
 import org.restlet.data.Status;
 import org.restlet.ext.guice.SelfInjectingServerResource;
 import org.restlet.ext.json.JsonRepresentation;
@@ -48,21 +51,33 @@ public class TasksResource extends SelfInjectingServerResource {
     public static final String PATH = "/hubs/{hubId}/tasks";
     public static final String TEMPLATE = "/hubs/{hubId}/{entity}";
 
+    private static final CursorPage.KeyProvider<HobsonTask> TASK_KEY_PROVIDER = new CursorPage.KeyProvider<HobsonTask>() {
+        @Override
+        public String getKey(HobsonTask task) {
+            return task.getContext().getTaskId();
+        }
+    };
+
     @Inject
     AccessManager accessManager;
     @Inject
-    HubManager hubManager;
-    @Inject
     TaskManager taskManager;
     @Inject
     DTOBuildContextFactory dtoBuildContextFactory;
     @Inject
     IdProvider idProvider;
+    @Inject
+    ChangeJournal changeJournal;
+    @Inject
+    BackgroundJobs backgroundJobs;
+    @Inject
+    PropertyContainerClassCache containerClassCache;
 
     @Override
     protected Representation get() {
         final HobsonRestContext ctx = HobsonRestContext.createContext(getApplication(), getRequest().getClientInfo(), getRequest().getResourceRef().getPath());
-        final ExpansionFields expansions = new ExpansionFields(getQueryValue("expand"));
+        final SparseFields fields = new SparseFields(getQueryValue("fields"));
+        final ExpansionFields expansions = new ExpansionFields(fields.restrictExpansions(getQueryValue("expand"), JSONAttributes.ITEM));
         final DTOBuildContext bctx = dtoBuildContextFactory.createContext(ctx.getApiRoot(), expansions);
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.TASK_READ, PathUtil.convertPath(ctx.getApiRoot(), null));
@@ -70,25 +85,33 @@ public class TasksResource extends SelfInjectingServerResource {
         ItemListDTO dto = new ItemListDTO(bctx, idProvider.createTasksId(ctx.getHubContext()));
         boolean showDetails = expansions.has("item");
 
-        Collection<HobsonTask> tasks = taskManager.getTasks(ctx.getHubContext());
-
-        if (tasks != null) {
-            expansions.pushContext(JSONAttributes.ITEM);
-            for (HobsonTask task : tasks) {
-                if (task != null) {
-                    dto.add(new HobsonTaskDTO.Builder(
-                        bctx,
-                        task,
-                        showDetails
-                    ).build());
-                }
+        CursorPage<HobsonTask> page = CursorPage.create(
+            taskManager.getTasks(ctx.getHubContext()),
+            TASK_KEY_PROVIDER,
+            getQueryValue(CursorPage.CURSOR),
+            CursorPage.parseLimit(getQueryValue(CursorPage.LIMIT))
+        );
+
+        expansions.pushContext(JSONAttributes.ITEM);
+        for (HobsonTask task : page.getItems()) {
+            if (task != null) {
+                dto.add(new HobsonTaskDTO.Builder(
+                    bctx,
+                    task,
+                    showDetails
+                ).build());
             }
-            expansions.popContext();
         }
+        expansions.popContext();
 
-        dto.addContext(JSONAttributes.AIDT, bctx.getIdTemplateMap());
+        if (fields.includeIdTemplateMap()) {
+            dto.addContext(JSONAttributes.AIDT, bctx.getIdTemplateMap());
+        }
+
+        JSONObject json = fields.filter(dto.toJSON());
+        page.addNextLink(json, getRequest().getResourceRef());
 
-        JsonRepresentation jr = new JsonRepresentation(dto.toJSON());
+        JsonRepresentation jr = new JsonRepresentation(json);
         jr.setMediaType(MediaTypeHelper.createMediaType(getRequest(), dto));
         return jr;
     }
@@ -102,12 +125,7 @@ public class TasksResource extends SelfInjectingServerResource {
         HobsonTaskDTO dto = new HobsonTaskDTO.Builder(JSONHelper.createJSONFromRepresentation(entity)).build();
         dto.validate();
 
-        PropertyContainerClassProvider pccp = new PropertyContainerClassProvider() {
-            @Override
-            public PropertyContainerClass getPropertyContainerClass(PropertyContainerClassContext ctx) {
-                return hubManager.getContainerClass(ctx);
-            }
-        };
+        PropertyContainerClassProvider pccp = containerClassCache;
 
         taskManager.createTask(
             ctx.getHubContext(),
@@ -116,6 +134,7 @@ public class TasksResource extends SelfInjectingServerResource {
             DTOMapper.mapPropertyContainerDTOList(dto.getConditions(), pccp, idProvider),
             DTOMapper.mapPropertyContainerSetDTO(dto.getActionSet(), pccp, idProvider)
         );
+        changeJournal.invalidate(ctx.getHubContext());
 
         getResponse().setStatus(Status.SUCCESS_ACCEPTED);
         return new EmptyRepresentation();
@@ -127,11 +146,22 @@ public class TasksResource extends SelfInjectingServerResource {
 
         accessManager.authorize(((HobsonRestUser)getClientInfo().getUser()).getUser(), AuthorizationAction.TASK_DELETE, null);
 
-        for (HobsonTask task : taskManager.getTasks(ctx.getHubContext())) {
-            taskManager.deleteTask(task.getContext());
-        }
+        // delete the tasks in the background; the job can be followed via the Location header
+        String jobId = backgroundJobs.submit(ctx.getHubContext(), new BackgroundJobs.Work() {
+            @Override
+            public void run(BackgroundJobs.Job job) {
+                Collection<HobsonTask> tasks = taskManager.getTasks(ctx.getHubContext());
+                job.setTotal(tasks.size());
+                for (HobsonTask task : tasks) {
+                    taskManager.deleteTask(task.getContext());
+                    changeJournal.record(ctx.getHubContext(), ChangeJournal.TASK, idProvider.createTaskId(task.getContext()).getId(), ChangeJournal.REMOVED);
+                    job.increment();
+                }
+            }
+        });
 
         getResponse().setStatus(Status.SUCCESS_ACCEPTED);
+        getResponse().setLocationRef(idProvider.createJobId(ctx.getHubContext(), jobId).getId());
         return new EmptyRepresentation();
     }
 }
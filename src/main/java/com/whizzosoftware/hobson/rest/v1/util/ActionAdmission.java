@@ -0,0 +1,110 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.action.job.AsyncJobHandle;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+import org.restlet.Response;
+import org.restlet.data.Status;
+import org.restlet.representation.EmptyRepresentation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import java.util.Date;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds the number of action executions that can be waiting to start and completes their responses asynchronously
+ * so that no Restlet worker thread is blocked while a job starts.
+ *
+ * The number of pending executions is set with the "hobson.rest.maxPendingActions" system property. Requests that
+ * arrive when the limit has been reached receive a 503 with a Retry-After header.
+ */
+@Singleton
+public class ActionAdmission {
+    private static final Logger logger = LoggerFactory.getLogger(ActionAdmission.class);
+
+    static final int CAPACITY = Integer.getInteger("hobson.rest.maxPendingActions", 64);
+    static final int RETRY_AFTER = Integer.getInteger("hobson.rest.actionRetryAfter", 1);
+
+    private final Semaphore permits;
+
+    public ActionAdmission() {
+        this(CAPACITY);
+    }
+
+    ActionAdmission(int capacity) {
+        permits = new Semaphore(capacity);
+    }
+
+    /**
+     * Attempts to admit an action execution. If the admission queue is full, the response is set to a 503 with a
+     * Retry-After header.
+     *
+     * @param response the response
+     *
+     * @return true if admitted (the caller must then call either start() or release())
+     */
+    public boolean tryAcquire(Response response) {
+        if (permits.tryAcquire()) {
+            RestMetrics.increment(RestMetrics.ACTIONS_ADMITTED);
+            return true;
+        } else {
+            RestMetrics.increment(RestMetrics.ACTIONS_REJECTED);
+            response.setStatus(Status.SERVER_ERROR_SERVICE_UNAVAILABLE);
+            response.setRetryAfter(new Date(System.currentTimeMillis() + RETRY_AFTER * 1000L));
+            response.setEntity(new EmptyRepresentation());
+            return false;
+        }
+    }
+
+    /**
+     * Releases an admission without starting an action (e.g. because the execution request failed).
+     */
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * Completes a response when an action job has started. The response is not committed until then and the
+     * admission is released when the job's start future completes.
+     *
+     * @param response the response
+     * @param handle the job handle
+     * @param jobLocation the URI of the job resource
+     */
+    public void start(final Response response, AsyncJobHandle handle, final String jobLocation) {
+        response.setAutoCommitting(false);
+        handle.getStartFuture().addListener(new GenericFutureListener<Future<Object>>() {
+            @Override
+            public void operationComplete(Future<Object> future) throws Exception {
+                try {
+                    if (future.isSuccess()) {
+                        response.setStatus(Status.SUCCESS_CREATED);
+                        response.setLocationRef(jobLocation);
+                    } else {
+                        logger.error("Unable to execute action", future.cause());
+                        response.setStatus(Status.SERVER_ERROR_INTERNAL, "Unable to execute action");
+                    }
+                    response.setEntity(new EmptyRepresentation());
+                } finally {
+                    permits.release();
+                    response.commit();
+                }
+            }
+        });
+    }
+
+    int getAvailable() {
+        return permits.availablePermits();
+    }
+}
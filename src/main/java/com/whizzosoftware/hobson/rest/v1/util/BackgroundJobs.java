@@ -0,0 +1,282 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs long-running REST operations (e.g. bulk deletes) in the background so the request can return immediately.
+ * Each operation is tracked as a job that can be retrieved through the job resource.
+ *
+ * Each hub has its own set of named queues and each queue runs its operations one at a time on its own thread, so
+ * operations that must not overlap (e.g. plugin installs) can be serialized without being held up by unrelated work
+ * or by another hub's operations. Idle queue threads are released. An operation submitted with a key is
+ * deduplicated against queued or running operations with the same key. Finished jobs are kept for the number of
+ * milliseconds set with the "hobson.rest.backgroundJobRetention" system property.
+ */
+@Singleton
+public class BackgroundJobs {
+    private static final Logger logger = LoggerFactory.getLogger(BackgroundJobs.class);
+
+    static final long RETENTION = Long.getLong("hobson.rest.backgroundJobRetention", 600000);
+    private static final long IDLE_TIMEOUT = 60000;
+
+    public static final String DEFAULT_QUEUE = "background";
+    public static final String PLUGIN_QUEUE = "plugins";
+
+    // these match the status values of action manager jobs since both are served by the job resource
+    public static final String QUEUED = "NOT_STARTED";
+    public static final String RUNNING = "IN_PROGRESS";
+    public static final String SUCCESS = "SUCCESS";
+    public static final String FAILED = "FAILED";
+
+    private final Map<String,Job> jobs = new LinkedHashMap<>();
+    private final Map<String,Job> activeJobs = new HashMap<>();
+    private final Map<String,ExecutorService> executors = new HashMap<>();
+
+    /**
+     * The work performed by a background job.
+     */
+    public interface Work {
+        void run(Job job) throws Exception;
+    }
+
+    /**
+     * Submits work to run in the background on the default queue.
+     *
+     * @param hctx the hub context
+     * @param work the work to perform
+     *
+     * @return the new job's ID
+     */
+    public String submit(HubContext hctx, Work work) {
+        return submit(hctx, DEFAULT_QUEUE, null, work);
+    }
+
+    /**
+     * Submits work to run in the background on a specific queue.
+     *
+     * @param hctx the hub context
+     * @param queue the name of the queue to run the work on
+     * @param key a key identifying the operation (or null); if a job with the same key is already queued or running,
+     *            its ID is returned and the work is not submitted again
+     * @param work the work to perform
+     *
+     * @return the job's ID
+     */
+    public String submit(HubContext hctx, String queue, String key, final Work work) {
+        final Job job = new Job(UUID.randomUUID().toString());
+        final String activeKey = (key != null) ? hctx.getHubId() + ":" + queue + ":" + key : null;
+
+        synchronized (jobs) {
+            if (activeKey != null) {
+                Job active = activeJobs.get(activeKey);
+                if (active != null) {
+                    return active.getId();
+                }
+                activeJobs.put(activeKey, job);
+            }
+            purge(System.currentTimeMillis());
+            jobs.put(createKey(hctx, job.getId()), job);
+        }
+
+        getExecutor(hctx, queue).submit(new Runnable() {
+            @Override
+            public void run() {
+                String status = SUCCESS;
+                String message = null;
+                try {
+                    job.start();
+                    work.run(job);
+                } catch (Throwable t) {
+                    logger.error("Error running background job " + job.getId(), t);
+                    status = FAILED;
+                    message = t.getLocalizedMessage();
+                }
+
+                // release the key before the job is marked finished so a client that sees it finish can resubmit
+                if (activeKey != null) {
+                    synchronized (jobs) {
+                        activeJobs.remove(activeKey);
+                    }
+                }
+                job.finish(status, message);
+            }
+        });
+
+        return job.getId();
+    }
+
+    /**
+     * Returns a background job.
+     *
+     * @param hctx the hub context
+     * @param jobId the job ID
+     *
+     * @return a Job instance (or null if not found)
+     */
+    public Job getJob(HubContext hctx, String jobId) {
+        synchronized (jobs) {
+            return jobs.get(createKey(hctx, jobId));
+        }
+    }
+
+    private void purge(long now) {
+        Iterator<Job> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            Job job = it.next();
+            if (job.getFinishTime() > 0 && now - job.getFinishTime() > RETENTION) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Stops all queues. Queued jobs are discarded. Called when the application stops.
+     */
+    synchronized public void shutdown() {
+        for (ExecutorService executor : executors.values()) {
+            executor.shutdownNow();
+        }
+        executors.clear();
+    }
+
+    synchronized private ExecutorService getExecutor(HubContext hctx, String queue) {
+        String key = hctx.getHubId() + ":" + queue;
+        ExecutorService executor = executors.get(key);
+        if (executor == null) {
+            // a single thread that times out when idle so that hubs without background work don't hold one
+            ThreadPoolExecutor tpe = new ThreadPoolExecutor(1, 1, IDLE_TIMEOUT, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("hobson-rest-" + queue + "-" + hctx.getHubId()));
+            tpe.allowCoreThreadTimeOut(true);
+            executor = tpe;
+            executors.put(key, executor);
+        }
+        return executor;
+    }
+
+    private String createKey(HubContext hctx, String jobId) {
+        return hctx.getHubId() + ":" + jobId;
+    }
+
+    /**
+     * A background job's progress.
+     */
+    static public class Job {
+        private final String id;
+        private final AtomicInteger completed = new AtomicInteger();
+        private final List<String> messages = new ArrayList<>();
+        private volatile int total;
+        private volatile String status = QUEUED;
+        private volatile String result;
+        private volatile long finishTime;
+
+        Job(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public void setTotal(int total) {
+            this.total = total;
+        }
+
+        public int getCompleted() {
+            return completed.get();
+        }
+
+        public void increment() {
+            completed.incrementAndGet();
+        }
+
+        /**
+         * Sets the URI of the resource the job created or changed.
+         *
+         * @param result the URI
+         */
+        public void setResult(String result) {
+            this.result = result;
+        }
+
+        public void addMessage(String message) {
+            synchronized (messages) {
+                messages.add(message);
+            }
+        }
+
+        long getFinishTime() {
+            return finishTime;
+        }
+
+        void start() {
+            this.status = RUNNING;
+        }
+
+        void finish(String status, String message) {
+            if (message != null) {
+                addMessage(message);
+            }
+            this.status = status;
+            this.finishTime = System.currentTimeMillis();
+        }
+
+        /**
+         * Returns the job as JSON in the same shape as an action manager job (@id, status and messages) so that
+         * clients can read either kind from the job resource. The progress and result are additional properties.
+         *
+         * @param uri the job's URI
+         *
+         * @return a JSONObject
+         */
+        public JSONObject toJSON(String uri) {
+            JSONObject json = new JSONObject();
+            json.put("@id", uri);
+            json.put("status", status);
+            JSONObject progress = new JSONObject();
+            progress.put("completed", getCompleted());
+            progress.put("total", total);
+            json.put("progress", progress);
+            if (result != null) {
+                json.put("result", result);
+            }
+            synchronized (messages) {
+                json.put("messages", new JSONArray(messages));
+            }
+            return json;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.HobsonRuntimeException;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.Dimension;
+import org.restlet.data.Encoding;
+import org.restlet.data.MediaType;
+import org.restlet.data.Preference;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.representation.ByteArrayRepresentation;
+import org.restlet.representation.EmptyRepresentation;
+import org.restlet.representation.Representation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An immutable, in-memory copy of a response body along with a strong ETag and a pre-compressed gzip variant.
+ * Instances are intended to be built once and shared between requests.
+ *
+ * The gzip variant is a different representation so it carries its own strong ETag (the identity tag with a "-gz"
+ * suffix). Either tag is accepted as a validator for conditional requests. Images other than SVG and BMP are already
+ * compressed so no gzip variant is kept for them; they are always served as-is.
+ */
+public class CachedContent {
+    static final String GZIP_TAG_SUFFIX = "-gz";
+
+    private final byte[] data;
+    private final byte[] gzipData;
+    private final MediaType mediaType;
+    private final Tag tag;
+    private final Tag gzipTag;
+
+    /**
+     * Reads an InputStream fully and creates a CachedContent instance from it. The stream is closed on return.
+     *
+     * @param is the stream to read
+     * @param mediaType the media type of the content
+     *
+     * @return a CachedContent instance
+     */
+    static public CachedContent create(InputStream is, MediaType mediaType) {
+        try {
+            try {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                byte[] buf = new byte[8192];
+                int len;
+                while ((len = is.read(buf)) > -1) {
+                    baos.write(buf, 0, len);
+                }
+                return new CachedContent(baos.toByteArray(), mediaType);
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            throw new HobsonRuntimeException("Error reading content", e);
+        }
+    }
+
+    public CachedContent(byte[] data, MediaType mediaType) {
+        this.data = data;
+        this.gzipData = isCompressed(mediaType) ? null : gzip(data);
+        this.mediaType = mediaType;
+        this.tag = new Tag(DigestUtils.md5Hex(data), false);
+        this.gzipTag = (gzipData != null) ? new Tag(tag.getName() + GZIP_TAG_SUFFIX, false) : null;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Returns the gzip variant of the content.
+     *
+     * @return a byte array (or null if the media type is already compressed)
+     */
+    public byte[] getGzipData() {
+        return gzipData;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public Tag getTag() {
+        return tag;
+    }
+
+    /**
+     * Returns the ETag of the gzip variant.
+     *
+     * @return a Tag (or null if there is no gzip variant)
+     */
+    public Tag getGzipTag() {
+        return gzipTag;
+    }
+
+    public int getSize() {
+        return data.length;
+    }
+
+    /**
+     * Indicates whether any of the request's If-None-Match tags match this content.
+     *
+     * @param request the request
+     *
+     * @return a boolean
+     */
+    public boolean isNotModified(Request request) {
+        List<Tag> requestTags = request.getConditions().getNoneMatch();
+        if (requestTags != null) {
+            for (Tag t : requestTags) {
+                if (Tag.ALL.equals(t) || tag.getName().equals(t.getName()) || (gzipTag != null && gzipTag.getName().equals(t.getName()))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates a representation of this content for a request. A 304 is returned if the request's If-None-Match
+     * header matches the content's ETag; otherwise the cached bytes (gzipped if the client accepts it) are written
+     * directly without copying.
+     *
+     * @param request the request
+     * @param response the response
+     *
+     * @return a Representation
+     */
+    public Representation createRepresentation(Request request, Response response) {
+        return createRepresentation(request, response, mediaType);
+    }
+
+    /**
+     * Creates a representation of this content for a request with an explicit media type.
+     *
+     * @param request the request
+     * @param response the response
+     * @param mt the media type to advertise
+     *
+     * @return a Representation
+     */
+    public Representation createRepresentation(Request request, Response response, MediaType mt) {
+        Representation r;
+        boolean gzip = gzipData != null && acceptsGzip(request);
+
+        if (gzipData != null) {
+            response.getDimensions().add(Dimension.ENCODING);
+        }
+
+        if (isNotModified(request)) {
+            response.setStatus(Status.REDIRECTION_NOT_MODIFIED);
+            r = new EmptyRepresentation();
+        } else if (gzip) {
+            r = new ByteArrayRepresentation(gzipData, mt);
+            r.getEncodings().add(Encoding.GZIP);
+        } else {
+            r = new ByteArrayRepresentation(data, mt);
+        }
+
+        // the tag always identifies the representation the client would receive
+        r.setTag(gzip ? gzipTag : tag);
+        r.setMediaType(mt);
+        return r;
+    }
+
+    private boolean acceptsGzip(Request request) {
+        for (Preference<Encoding> p : request.getClientInfo().getAcceptedEncodings()) {
+            if (Encoding.GZIP.equals(p.getMetadata()) && p.getQuality() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isCompressed(MediaType mediaType) {
+        return mediaType != null && MediaType.IMAGE_ALL.includes(mediaType) && !MediaType.IMAGE_SVG.equals(mediaType, true) && !MediaType.IMAGE_BMP.equals(mediaType, true);
+    }
+
+    static private byte[] gzip(byte[] data) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+            GZIPOutputStream gos = new GZIPOutputStream(baos);
+            try {
+                gos.write(data);
+            } finally {
+                gos.close();
+            }
+            return baos.toByteArray();
+        } catch (IOException e) {
+            throw new HobsonRuntimeException("Error compressing content", e);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.device.DeviceContext;
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import com.whizzosoftware.hobson.api.persist.IdProvider;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A bounded, in-memory journal of entity changes for each hub. Every change is assigned a hub-wide, monotonically
+ * increasing sequence number so that clients can ask for only the changes since the last sequence they saw.
+ *
+ * Clients receive an opaque token made up of a random ID for the journal and a sequence. Each journal gets a new ID
+ * when it is created (e.g. after a restart), so a token from a previous journal never matches. When a token is
+ * from another journal, older than the oldest retained change or otherwise unknown, the client is told to fall
+ * back to a full snapshot.
+ *
+ * Only changes the REST layer can attribute to a specific entity are journaled. Anything else (an entity created
+ * without its ID being known, or a hub event for a change made outside the REST API such as by a plugin or the
+ * hub's own task engine) invalidates every token issued before it so that clients re-fetch rather than miss it.
+ * Device variable values are deliberately not journaled; they change far too often for a bounded journal and
+ * clients follow them through the variable resources instead.
+ */
+@Singleton
+public class ChangeJournal extends HubEventListener {
+    public static final String ADDED = "added";
+    public static final String UPDATED = "updated";
+    public static final String REMOVED = "removed";
+
+    public static final String COLLECTION = "collection";
+    public static final String CONFIGURATION = "configuration";
+    public static final String DEVICE = "device";
+    public static final String PRESENCE_ENTITY = "presenceEntity";
+    public static final String PRESENCE_LOCATION = "presenceLocation";
+    public static final String TASK = "task";
+
+    static final int CAPACITY = Integer.getInteger("hobson.rest.changeJournalSize", 1000);
+
+    @Inject
+    IdProvider idProvider;
+    @Inject
+    HubEventDispatcher eventDispatcher;
+
+    private final Map<String,Journal> journals = new HashMap<>();
+
+    /**
+     * Records a change.
+     *
+     * @param hctx the hub context
+     * @param type the entity type
+     * @param id the entity's ID
+     * @param action the type of change (ADDED, UPDATED or REMOVED)
+     */
+    public void record(HubContext hctx, String type, String id, String action) {
+        Journal j = getJournal(hctx);
+        synchronized (j) {
+            j.add(type, id, action);
+        }
+    }
+
+    /**
+     * Records a change that can't be attributed to a specific entity (e.g. an entity created by a manager call that
+     * doesn't return its ID). Every token issued before it will require a full snapshot.
+     *
+     * @param hctx the hub context
+     */
+    public void invalidate(HubContext hctx) {
+        Journal j = getJournal(hctx);
+        synchronized (j) {
+            j.invalidate();
+        }
+    }
+
+    /**
+     * Returns the current token for a hub.
+     *
+     * @param hctx the hub context
+     *
+     * @return a token
+     */
+    public String getToken(HubContext hctx) {
+        Journal j = getJournal(hctx);
+        synchronized (j) {
+            return j.createToken();
+        }
+    }
+
+    /**
+     * Returns the changes that have occurred since a token. Multiple changes to the same entity are collapsed
+     * into the most recent one.
+     *
+     * @param hctx the hub context
+     * @param since the last token the client has seen (or null if it has none)
+     *
+     * @return a ChangeSet
+     */
+    public ChangeSet getChanges(HubContext hctx, String since) {
+        Journal j = getJournal(hctx);
+        synchronized (j) {
+            Long seq = j.parseToken(since);
+            if (seq == null || seq < j.floor || seq > j.sequence) {
+                return new ChangeSet(j.createToken(), true, new ArrayList<Change>());
+            }
+            long sinceSeq = seq;
+
+            Map<String,Change> latest = new LinkedHashMap<>();
+            for (Change c : j.changes) {
+                if (c.getSequence() > sinceSeq) {
+                    // re-insert so that the iteration order reflects each entity's most recent change
+                    latest.remove(c.getId());
+                    latest.put(c.getId(), c);
+                }
+            }
+            return new ChangeSet(j.createToken(), false, new ArrayList<>(latest.values()));
+        }
+    }
+
+    @Override
+    public void onDeviceAvailable(DeviceContext ctx) {
+        record(ctx.getHubContext(), DEVICE, idProvider.createDeviceId(ctx).getId(), UPDATED);
+    }
+
+    @Override
+    public void onDeviceUnavailable(DeviceContext ctx) {
+        record(ctx.getHubContext(), DEVICE, idProvider.createDeviceId(ctx).getId(), UPDATED);
+    }
+
+    @Override
+    public void onDeviceUpdated(DeviceContext ctx) {
+        record(ctx.getHubContext(), DEVICE, idProvider.createDeviceId(ctx).getId(), UPDATED);
+    }
+
+    @Override
+    public void onDeviceRemoved(DeviceContext ctx) {
+        record(ctx.getHubContext(), DEVICE, idProvider.createDeviceId(ctx).getId(), REMOVED);
+    }
+
+    @Override
+    public void onPluginChange(HubContext ctx) {
+        record(ctx, COLLECTION, idProvider.createDevicesId(ctx).getId(), UPDATED);
+    }
+
+    @Override
+    public void onHubChange(HubContext ctx) {
+        invalidate(ctx);
+    }
+
+    private Journal getJournal(HubContext hctx) {
+        Journal j;
+        boolean created = false;
+        synchronized (journals) {
+            j = journals.get(hctx.getHubId());
+            if (j == null) {
+                j = new Journal(UUID.randomUUID().toString().substring(0, 8));
+                journals.put(hctx.getHubId(), j);
+                created = true;
+            }
+        }
+        if (created) {
+            eventDispatcher.addListener(hctx, this);
+        }
+        return j;
+    }
+
+    private class Journal {
+        final String id;
+        long sequence;
+        long floor;
+        final ArrayDeque<Change> changes = new ArrayDeque<>();
+
+        Journal(String id) {
+            this.id = id;
+        }
+
+        String createToken() {
+            return id + "." + sequence;
+        }
+
+        /**
+         * Returns the sequence in a token (or null if the token is malformed or from another journal).
+         */
+        Long parseToken(String token) {
+            if (token != null) {
+                int ix = token.lastIndexOf('.');
+                if (ix > 0 && id.equals(token.substring(0, ix))) {
+                    try {
+                        return Long.parseLong(token.substring(ix + 1));
+                    } catch (NumberFormatException ignored) {}
+                }
+            }
+            return null;
+        }
+
+        void add(String type, String id, String action) {
+            changes.addLast(new Change(++sequence, type, id, action));
+            while (changes.size() > CAPACITY) {
+                floor = changes.removeFirst().getSequence();
+            }
+        }
+
+        void invalidate() {
+            changes.clear();
+            floor = ++sequence;
+        }
+    }
+
+    /**
+     * A single journal entry.
+     */
+    public static class Change {
+        private long sequence;
+        private String type;
+        private String id;
+        private String action;
+
+        public Change(long sequence, String type, String id, String action) {
+            this.sequence = sequence;
+            this.type = type;
+            this.id = id;
+            this.action = action;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getAction() {
+            return action;
+        }
+    }
+
+    /**
+     * The result of a change query.
+     */
+    public static class ChangeSet {
+        private String token;
+        private boolean fullSnapshot;
+        private List<Change> changes;
+
+        public ChangeSet(String token, boolean fullSnapshot, List<Change> changes) {
+            this.token = token;
+            this.fullSnapshot = fullSnapshot;
+            this.changes = changes;
+        }
+
+        /**
+         * Returns the token the client should use for its next request.
+         *
+         * @return a token
+         */
+        public String getToken() {
+            return token;
+        }
+
+        /**
+         * Indicates that the requested token is no longer covered by the journal and the client needs to
+         * re-fetch the collections it is interested in.
+         *
+         * @return a boolean
+         */
+        public boolean isFullSnapshot() {
+            return fullSnapshot;
+        }
+
+        public List<Change> getChanges() {
+            return changes;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.HobsonInvalidRequestException;
+import com.whizzosoftware.hobson.json.JSONAttributes;
+import org.apache.commons.codec.binary.Base64;
+import org.json.JSONObject;
+import org.restlet.data.Form;
+import org.restlet.data.Reference;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A single page of a collection selected by an opaque cursor. Items are ordered by a stable sort key and the cursor
+ * encodes the key of the last item on the previous page so that pages remain consistent when items are added or
+ * removed between requests.
+ *
+ * @param <T> the item type
+ */
+public class CursorPage<T> {
+    public static final String LIMIT = "limit";
+    public static final String CURSOR = "cursor";
+    public static final String NEXT = "next";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private List<T> items;
+    private String nextCursor;
+
+    /**
+     * Interface for obtaining an item's sort key.
+     *
+     * @param <T> the item type
+     */
+    public interface KeyProvider<T> {
+        String getKey(T item);
+    }
+
+    /**
+     * Creates a page from a collection. Items are only ordered here; the caller should apply any filtering first
+     * and build DTOs only for the returned items.
+     *
+     * @param items the full (filtered) collection
+     * @param keyProvider provides each item's sort key
+     * @param cursor the cursor from the request (or null for the first page)
+     * @param limit the maximum number of items to return (or null for no limit)
+     *
+     * @return a CursorPage instance
+     */
+    static public <T> CursorPage<T> create(Collection<T> items, KeyProvider<T> keyProvider, String cursor, Integer limit) {
+        if (items == null) {
+            return new CursorPage<>(new ArrayList<T>(), null);
+        }
+
+        // if no paging was requested, preserve the natural order of the collection
+        if (cursor == null && limit == null) {
+            return new CursorPage<>(new ArrayList<>(items), null);
+        }
+
+        TreeMap<String,T> sorted = new TreeMap<>();
+        for (T item : items) {
+            if (item != null) {
+                sorted.put(keyProvider.getKey(item), item);
+            }
+        }
+
+        Map<String,T> tail = (cursor != null) ? sorted.tailMap(decodeCursor(cursor), false) : sorted;
+        List<T> page = new ArrayList<>();
+        String lastKey = null;
+        String next = null;
+
+        Iterator<Map.Entry<String,T>> it = tail.entrySet().iterator();
+        while (it.hasNext()) {
+            if (limit != null && page.size() >= limit) {
+                next = encodeCursor(lastKey);
+                break;
+            }
+            Map.Entry<String,T> e = it.next();
+            page.add(e.getValue());
+            lastKey = e.getKey();
+        }
+
+        return new CursorPage<>(page, next);
+    }
+
+    /**
+     * Parses a limit query parameter.
+     *
+     * @param s the parameter value (may be null)
+     *
+     * @return the limit or null if none was specified
+     */
+    static public Integer parseLimit(String s) {
+        if (s != null) {
+            try {
+                int limit = Integer.parseInt(s);
+                if (limit > 0) {
+                    return limit;
+                }
+            } catch (NumberFormatException ignored) {
+            }
+            throw new HobsonInvalidRequestException("Invalid limit: " + s);
+        }
+        return null;
+    }
+
+    static public String encodeCursor(String key) {
+        return Base64.encodeBase64URLSafeString(key.getBytes(UTF8));
+    }
+
+    static public String decodeCursor(String cursor) {
+        if (!Base64.isBase64(cursor)) {
+            throw new HobsonInvalidRequestException("Invalid cursor: " + cursor);
+        }
+        return new String(Base64.decodeBase64(cursor), UTF8);
+    }
+
+    private CursorPage(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public boolean hasNext() {
+        return (nextCursor != null);
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Adds a "next" link to a JSON response if there is a subsequent page. The link is the request's own path and
+     * query with the cursor replaced.
+     *
+     * @param json the JSON response
+     * @param requestRef the request's resource reference
+     */
+    public void addNextLink(JSONObject json, Reference requestRef) {
+        if (hasNext()) {
+            Form query = requestRef.getQueryAsForm();
+            query.removeAll(CURSOR);
+            query.add(CURSOR, nextCursor);
+
+            JSONObject links = json.optJSONObject(JSONAttributes.LINKS);
+            if (links == null) {
+                links = new JSONObject();
+                json.put(JSONAttributes.LINKS, links);
+            }
+            links.put(NEXT, requestRef.getPath() + "?" + query.getQueryString());
+        }
+    }
+}
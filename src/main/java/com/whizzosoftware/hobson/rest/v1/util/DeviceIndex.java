@@ -0,0 +1,377 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.HobsonNotFoundException;
+import com.whizzosoftware.hobson.api.device.DeviceContext;
+import com.whizzosoftware.hobson.api.device.DeviceManager;
+import com.whizzosoftware.hobson.api.device.HobsonDeviceDescriptor;
+import com.whizzosoftware.hobson.api.event.device.DeviceVariableUpdate;
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import com.whizzosoftware.hobson.api.variable.DeviceVariableContext;
+import com.whizzosoftware.hobson.api.variable.DeviceVariableDescriptor;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An in-memory inverted index of a hub's devices keyed by variable name, device type and tag. Filtered device
+ * queries become set intersections rather than a scan of every device descriptor. Results are always returned in
+ * the order the DeviceManager lists the devices.
+ *
+ * The variable and type indexes are built from the full device set on first use and updated incrementally from
+ * device events: a device is re-fetched when it becomes available, unavailable or is updated (and dropped if the
+ * DeviceManager no longer knows it) and when it reports a variable the index hasn't seen for it yet. Since not
+ * every removal path is guaranteed to produce an event, the full device set is also reloaded once it is older than
+ * the number of milliseconds set with the "hobson.rest.deviceIndexTtl" system property. Tag sets are populated
+ * lazily from the DeviceManager the first time a tag is queried and dropped whenever a device's tags may have
+ * changed.
+ *
+ * The DeviceManager is never called while an index lock is held.
+ */
+@Singleton
+public class DeviceIndex extends HubEventListener {
+    static final long TTL = Long.getLong("hobson.rest.deviceIndexTtl", 60000);
+
+    @Inject
+    DeviceManager deviceManager;
+    @Inject
+    HubEventDispatcher eventDispatcher;
+
+    private final long ttl;
+    private final Map<String,HubIndex> hubIndexes = new HashMap<>();
+
+    public DeviceIndex() {
+        this(TTL);
+    }
+
+    DeviceIndex(long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * Returns the devices that match all the specified filters. Any filter can be null.
+     *
+     * @param hctx the hub context
+     * @param varName a variable name the device must publish
+     * @param type the device type
+     * @param tag a tag the device must have
+     *
+     * @return a collection of HobsonDeviceDescriptor instances
+     */
+    public Collection<HobsonDeviceDescriptor> getDevices(HubContext hctx, String varName, String type, String tag) {
+        HubIndex idx = getHubIndex(hctx);
+        load(hctx, idx);
+        Set<String> tagSet = (tag != null) ? getTagSet(hctx, idx, tag) : null;
+
+        synchronized (idx) {
+            List<Set<String>> sets = new ArrayList<>();
+            if (varName != null) {
+                sets.add(idx.getSet(idx.byVariable, varName));
+            }
+            if (type != null) {
+                sets.add(idx.getSet(idx.byType, type));
+            }
+            if (tagSet != null) {
+                sets.add(tagSet);
+            }
+
+            List<HobsonDeviceDescriptor> results = new ArrayList<>();
+            if (sets.isEmpty()) {
+                for (Entry e : idx.devices.values()) {
+                    results.add(e.device);
+                }
+            } else {
+                // iterate over the smallest set and check membership in the others
+                Set<String> smallest = sets.get(0);
+                for (Set<String> s : sets) {
+                    if (s.size() < smallest.size()) {
+                        smallest = s;
+                    }
+                }
+                List<Entry> matches = new ArrayList<>();
+                for (String key : smallest) {
+                    boolean match = true;
+                    for (Set<String> s : sets) {
+                        if (s != smallest && !s.contains(key)) {
+                            match = false;
+                            break;
+                        }
+                    }
+                    Entry e = idx.devices.get(key);
+                    if (match && e != null) {
+                        matches.add(e);
+                    }
+                }
+                Collections.sort(matches, ENTRY_ORDER);
+                for (Entry e : matches) {
+                    results.add(e.device);
+                }
+            }
+            return results;
+        }
+    }
+
+    @Override
+    public void onDeviceAvailable(DeviceContext ctx) {
+        refreshDevice(ctx);
+    }
+
+    @Override
+    public void onDeviceUnavailable(DeviceContext ctx) {
+        // the device may have been unpublished rather than just gone offline
+        refreshDevice(ctx);
+    }
+
+    @Override
+    public void onDeviceUpdated(DeviceContext ctx) {
+        refreshDevice(ctx);
+    }
+
+    @Override
+    public void onDeviceRemoved(DeviceContext ctx) {
+        HubIndex idx = getExistingHubIndex(ctx.getHubContext());
+        if (idx != null) {
+            synchronized (idx) {
+                idx.changes++;
+                idx.remove(createKey(ctx));
+            }
+        }
+    }
+
+    @Override
+    public void onDeviceVariablesUpdate(HubContext ctx, Collection<DeviceVariableUpdate> updates) {
+        HubIndex idx = getExistingHubIndex(ctx);
+        if (idx != null) {
+            // a variable the index hasn't seen means the device published it after it became available
+            Map<String,DeviceContext> stale = new LinkedHashMap<>();
+            synchronized (idx) {
+                for (DeviceVariableUpdate u : updates) {
+                    DeviceVariableContext v = u.getContext();
+                    String key = createKey(v.getDeviceContext());
+                    if (idx.devices.containsKey(key) && !idx.getSet(idx.byVariable, v.getName()).contains(key)) {
+                        stale.put(key, v.getDeviceContext());
+                    }
+                }
+            }
+            for (DeviceContext dctx : stale.values()) {
+                refreshDevice(dctx);
+            }
+        }
+    }
+
+    @Override
+    public void onPluginChange(HubContext ctx) {
+        // a plugin change can add or remove any number of devices so start over
+        synchronized (hubIndexes) {
+            hubIndexes.remove(ctx.getHubId());
+        }
+    }
+
+    private void load(HubContext hctx, HubIndex idx) {
+        long changes;
+        synchronized (idx) {
+            if (idx.loaded > 0 && System.currentTimeMillis() - idx.loaded < ttl) {
+                return;
+            }
+            changes = idx.changes;
+        }
+
+        Collection<HobsonDeviceDescriptor> devices = deviceManager.getDevices(hctx);
+
+        synchronized (idx) {
+            idx.clear();
+            if (devices != null) {
+                for (HobsonDeviceDescriptor d : devices) {
+                    idx.put(d);
+                }
+            }
+            // a change that arrived during the load may not be reflected in it so the next query loads again
+            idx.loaded = (idx.changes == changes) ? System.currentTimeMillis() : 0;
+        }
+    }
+
+    private void refreshDevice(DeviceContext ctx) {
+        HubIndex idx = getExistingHubIndex(ctx.getHubContext());
+        if (idx != null) {
+            HobsonDeviceDescriptor d;
+            try {
+                d = deviceManager.getDevice(ctx);
+            } catch (HobsonNotFoundException e) {
+                d = null;
+            }
+            synchronized (idx) {
+                idx.changes++;
+                if (d != null) {
+                    idx.put(d);
+                } else {
+                    idx.remove(createKey(ctx));
+                }
+                idx.clearTags();
+            }
+        }
+    }
+
+    private Set<String> getTagSet(HubContext hctx, HubIndex idx, String tag) {
+        long tagGeneration;
+        synchronized (idx) {
+            Set<String> s = idx.byTag.get(tag);
+            if (s != null) {
+                return s;
+            }
+            tagGeneration = idx.tagGeneration;
+        }
+
+        Set<String> s = new HashSet<>();
+        Collection<HobsonDeviceDescriptor> tagged = deviceManager.getDevices(hctx, tag);
+        if (tagged != null) {
+            for (HobsonDeviceDescriptor d : tagged) {
+                s.add(createKey(d.getContext()));
+            }
+        }
+
+        synchronized (idx) {
+            // only keep the set if no device's tags may have changed while it was being fetched
+            if (idx.tagGeneration == tagGeneration) {
+                idx.byTag.put(tag, s);
+            }
+        }
+        return s;
+    }
+
+    private HubIndex getExistingHubIndex(HubContext hctx) {
+        synchronized (hubIndexes) {
+            return hubIndexes.get(hctx.getHubId());
+        }
+    }
+
+    private HubIndex getHubIndex(HubContext hctx) {
+        HubIndex idx;
+        boolean created = false;
+        synchronized (hubIndexes) {
+            idx = hubIndexes.get(hctx.getHubId());
+            if (idx == null) {
+                idx = new HubIndex();
+                hubIndexes.put(hctx.getHubId(), idx);
+                created = true;
+            }
+        }
+        if (created) {
+            // register before the index is loaded so that no changes are missed
+            eventDispatcher.addListener(hctx, this);
+        }
+        return idx;
+    }
+
+    static String createKey(DeviceContext ctx) {
+        return ctx.getPluginId() + ":" + ctx.getDeviceId();
+    }
+
+    static private final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry e1, Entry e2) {
+            return Long.compare(e1.position, e2.position);
+        }
+    };
+
+    static private class Entry {
+        final HobsonDeviceDescriptor device;
+        final long position;
+
+        Entry(HobsonDeviceDescriptor device, long position) {
+            this.device = device;
+            this.position = position;
+        }
+    }
+
+    static private class HubIndex {
+        long loaded;
+        long changes;
+        long tagGeneration;
+        long nextPosition;
+        final Map<String,Entry> devices = new LinkedHashMap<>();
+        final Map<String,Set<String>> byVariable = new HashMap<>();
+        final Map<String,Set<String>> byType = new HashMap<>();
+        final Map<String,Set<String>> byTag = new HashMap<>();
+
+        /**
+         * Adds a device or replaces its descriptor. A replaced device keeps its position.
+         */
+        void put(HobsonDeviceDescriptor d) {
+            String key = createKey(d.getContext());
+            Entry old = devices.get(key);
+            if (old != null) {
+                removeFromSets(byType, key);
+                removeFromSets(byVariable, key);
+            }
+            devices.put(key, new Entry(d, (old != null) ? old.position : nextPosition++));
+            if (d.getType() != null) {
+                addToSet(byType, d.getType().toString(), key);
+            }
+            Collection<DeviceVariableDescriptor> vars = d.getVariables();
+            if (vars != null) {
+                for (DeviceVariableDescriptor v : vars) {
+                    addToSet(byVariable, v.getContext().getName(), key);
+                }
+            }
+        }
+
+        void remove(String key) {
+            if (devices.remove(key) != null) {
+                removeFromSets(byType, key);
+                removeFromSets(byVariable, key);
+                removeFromSets(byTag, key);
+            }
+        }
+
+        void clear() {
+            devices.clear();
+            byVariable.clear();
+            byType.clear();
+            clearTags();
+        }
+
+        void clearTags() {
+            byTag.clear();
+            tagGeneration++;
+        }
+
+        Set<String> getSet(Map<String,Set<String>> map, String name) {
+            Set<String> s = map.get(name);
+            return (s != null) ? s : Collections.<String>emptySet();
+        }
+
+        private void addToSet(Map<String,Set<String>> map, String name, String key) {
+            Set<String> s = map.get(name);
+            if (s == null) {
+                s = new LinkedHashSet<>();
+                map.put(name, s);
+            }
+            s.add(key);
+        }
+
+        private void removeFromSets(Map<String,Set<String>> map, String key) {
+            for (Set<String> s : map.values()) {
+                s.remove(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.device.DeviceContext;
+import com.whizzosoftware.hobson.api.event.EventManager;
+import com.whizzosoftware.hobson.api.event.device.DeviceVariablesUpdateRequestEvent;
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces rapid writes to the same device variable (e.g. from a dimmer slider) so that the device isn't flooded
+ * with update requests.
+ *
+ * The first write to a variable is sent immediately and opens a window. Writes that arrive during the window replace
+ * any pending value and only the most recent one is sent when the window closes, which opens a new window. The
+ * window length (in milliseconds) is set with the "hobson.rest.variableWriteWindow" system property; a value of 0
+ * disables coalescing.
+ *
+ * Every variable write should go through the coalescer, including ones that set several variables at once, so that
+ * a deferred value can never be sent after (and overwrite) a newer one. Update requests are posted while the
+ * window lock is held for the same reason.
+ */
+@Singleton
+public class DeviceVariableWriteCoalescer {
+    private static final Logger logger = LoggerFactory.getLogger(DeviceVariableWriteCoalescer.class);
+
+    static final long WINDOW = Long.getLong("hobson.rest.variableWriteWindow", 100);
+
+    @Inject
+    EventManager eventManager;
+
+    private final Map<String,Window> windows = new HashMap<>();
+    private ScheduledExecutorService executor;
+
+    /**
+     * Submits a variable write. The actual update request may be sent immediately or deferred until the variable's
+     * current window closes.
+     *
+     * @param hctx the hub context
+     * @param dctx the device context
+     * @param name the variable name
+     * @param value the new value
+     */
+    public void submit(HubContext hctx, DeviceContext dctx, String name, Object value) {
+        RestMetrics.increment(RestMetrics.VARIABLE_WRITES_RECEIVED);
+
+        if (WINDOW <= 0) {
+            send(hctx, dctx, Collections.singletonMap(name, value));
+            return;
+        }
+
+        final String key = createKey(dctx, name);
+        boolean opened = false;
+
+        synchronized (windows) {
+            Window w = windows.get(key);
+            if (w == null) {
+                windows.put(key, new Window(hctx, dctx, name));
+                send(hctx, dctx, Collections.singletonMap(name, value));
+                opened = true;
+            } else {
+                if (w.hasPending) {
+                    RestMetrics.increment(RestMetrics.VARIABLE_WRITES_COALESCED);
+                }
+                w.pendingValue = value;
+                w.hasPending = true;
+            }
+        }
+
+        if (opened) {
+            scheduleClose(key);
+        }
+    }
+
+    /**
+     * Submits a write of several variables on the same device. The update request is always sent immediately as a
+     * single request; any value still pending for one of the variables is older and is discarded. A window is then
+     * opened for each variable that doesn't already have one.
+     *
+     * @param hctx the hub context
+     * @param dctx the device context
+     * @param values the new values keyed by variable name
+     */
+    public void submit(HubContext hctx, DeviceContext dctx, Map<String,Object> values) {
+        RestMetrics.add(RestMetrics.VARIABLE_WRITES_RECEIVED, values.size());
+
+        if (WINDOW <= 0) {
+            send(hctx, dctx, values);
+            return;
+        }
+
+        List<String> opened = new ArrayList<>();
+
+        synchronized (windows) {
+            for (String name : values.keySet()) {
+                String key = createKey(dctx, name);
+                Window w = windows.get(key);
+                if (w == null) {
+                    windows.put(key, new Window(hctx, dctx, name));
+                    opened.add(key);
+                } else if (w.hasPending) {
+                    RestMetrics.increment(RestMetrics.VARIABLE_WRITES_COALESCED);
+                    w.pendingValue = null;
+                    w.hasPending = false;
+                }
+            }
+            send(hctx, dctx, values);
+        }
+
+        for (String key : opened) {
+            scheduleClose(key);
+        }
+    }
+
+    void closeWindow(String key) {
+        boolean send = false;
+
+        synchronized (windows) {
+            Window w = windows.get(key);
+            if (w != null) {
+                if (w.hasPending) {
+                    send(w.hctx, w.dctx, Collections.singletonMap(w.name, w.pendingValue));
+                    w.pendingValue = null;
+                    w.hasPending = false;
+                    send = true;
+                } else {
+                    windows.remove(key);
+                }
+            }
+        }
+
+        if (send) {
+            scheduleClose(key);
+        }
+    }
+
+    void send(HubContext hctx, DeviceContext dctx, Map<String,Object> values) {
+        try {
+            eventManager.postEvent(hctx, new DeviceVariablesUpdateRequestEvent(System.currentTimeMillis(), dctx, values));
+            RestMetrics.add(RestMetrics.VARIABLE_WRITES_SENT, values.size());
+        } catch (Exception e) {
+            logger.error("Error sending variable update for " + dctx + ":" + values.keySet(), e);
+        }
+    }
+
+    void scheduleClose(final String key) {
+        getExecutor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                closeWindow(key);
+            }
+        }, WINDOW, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the window timer. Pending coalesced writes are discarded. Called when the application stops.
+     */
+    synchronized public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    synchronized private ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("hobson-rest-coalescer"));
+        }
+        return executor;
+    }
+
+    private String createKey(DeviceContext dctx, String name) {
+        return dctx.getHubContext().getHubId() + ":" + dctx.getPluginId() + ":" + dctx.getDeviceId() + ":" + name;
+    }
+
+    private class Window {
+        final HubContext hctx;
+        final DeviceContext dctx;
+        final String name;
+        Object pendingValue;
+        boolean hasPending;
+
+        Window(HubContext hctx, DeviceContext dctx, String name) {
+            this.hctx = hctx;
+            this.dctx = dctx;
+            this.name = name;
+        }
+    }
+}
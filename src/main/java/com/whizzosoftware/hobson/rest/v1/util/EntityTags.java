@@ -0,0 +1,101 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.json.JSONObject;
+import org.restlet.Request;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.resource.ResourceException;
+
+import javax.inject.Singleton;
+import java.util.List;
+
+/**
+ * Allows clients to perform optimistic concurrency control on updatable resources with ETag and If-Match headers.
+ *
+ * A resource's tag is an MD5 hash of its serialized representation (as with CachedContent) so it changes whenever the
+ * resource does, no matter whether the change was made through this API, a plugin or the task/hub managers directly.
+ * A conditional write renders the resource's current representation for the request URI and only proceeds if one of
+ * the request's If-Match tags matches it. Conditional writes to the same resource are serialized so that of several
+ * writers holding the same tag, only the first succeeds.
+ */
+@Singleton
+public class EntityTags {
+    private static final int LOCK_COUNT = 64;
+
+    private final Object[] locks = new Object[LOCK_COUNT];
+
+    /**
+     * Renders the current representation of a resource.
+     */
+    public interface Renderer {
+        /**
+         * Returns the current representation.
+         *
+         * @return a JSONObject (or null if the resource doesn't exist)
+         */
+        JSONObject render();
+    }
+
+    public EntityTags() {
+        for (int i = 0; i < LOCK_COUNT; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Returns the tag for a representation.
+     *
+     * @param json the representation
+     *
+     * @return a strong Tag
+     */
+    static public Tag createTag(JSONObject json) {
+        return new Tag(DigestUtils.md5Hex(json.toString()), false);
+    }
+
+    /**
+     * Performs a write. If the request has an If-Match header, the write is only performed if one of its tags matches
+     * the resource's current representation.
+     *
+     * @param id the resource ID
+     * @param request the write request
+     * @param renderer renders the resource's current representation for the request
+     * @param write the write to perform
+     *
+     * @throws ResourceException with a 412 status if the If-Match header doesn't match the current representation
+     */
+    public void write(String id, Request request, Renderer renderer, Runnable write) {
+        List<Tag> match = request.getConditions().getMatch();
+        if (match == null || match.isEmpty()) {
+            write.run();
+            return;
+        }
+
+        synchronized (locks[(id.hashCode() & 0x7fffffff) % LOCK_COUNT]) {
+            JSONObject current = renderer.render();
+            if (current == null || !matches(match, createTag(current))) {
+                throw new ResourceException(Status.CLIENT_ERROR_PRECONDITION_FAILED, "The resource has been modified");
+            }
+            write.run();
+        }
+    }
+
+    private boolean matches(List<Tag> match, Tag current) {
+        for (Tag t : match) {
+            if (Tag.ALL.equals(t) || (!t.isWeak() && current.getName().equals(t.getName()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
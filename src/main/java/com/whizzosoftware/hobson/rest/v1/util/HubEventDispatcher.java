@@ -0,0 +1,157 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.device.DeviceContext;
+import com.whizzosoftware.hobson.api.event.EventHandler;
+import com.whizzosoftware.hobson.api.event.EventManager;
+import com.whizzosoftware.hobson.api.event.HobsonEvent;
+import com.whizzosoftware.hobson.api.event.device.DeviceAvailableEvent;
+import com.whizzosoftware.hobson.api.event.device.DeviceUnavailableEvent;
+import com.whizzosoftware.hobson.api.event.device.DeviceVariableUpdate;
+import com.whizzosoftware.hobson.api.event.device.DeviceVariablesUpdateEvent;
+import com.whizzosoftware.hobson.api.event.device.DeviceVariablesUpdateRequestEvent;
+import com.whizzosoftware.hobson.api.event.plugin.PluginStatusChangeEvent;
+import com.whizzosoftware.hobson.api.event.presence.PresenceUpdateRequestEvent;
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Fans hub events out to REST-layer listeners (caches, indexes, journals, etc.). A single instance registers itself
+ * with the EventManager once per hub the first time a listener asks for that hub so that individual resources never
+ * need to deal with event registration.
+ *
+ * Resources that perform a change themselves (e.g. deleting a device) can also notify listeners directly through
+ * the fire methods since not every change is guaranteed to produce a hub event.
+ */
+@Singleton
+public class HubEventDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(HubEventDispatcher.class);
+
+    @Inject
+    EventManager eventManager;
+
+    private final Set<String> registeredHubs = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+    private final List<HubEventListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Adds a listener and makes sure events for the given hub are being received.
+     *
+     * @param hctx the hub context
+     * @param listener the listener
+     */
+    public void addListener(HubContext hctx, HubEventListener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+        if (registeredHubs.add(hctx.getHubId())) {
+            eventManager.addListener(hctx, this);
+        }
+    }
+
+    public void removeListener(HubEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Unregisters from the EventManager for every hub and drops all listeners. Called when the application stops.
+     */
+    public void shutdown() {
+        for (String hubId : registeredHubs) {
+            try {
+                eventManager.removeListener(HubContext.create(hubId), this);
+            } catch (Exception e) {
+                logger.error("Error removing event listener for hub " + hubId, e);
+            }
+        }
+        registeredHubs.clear();
+        listeners.clear();
+    }
+
+    @EventHandler
+    public void onHobsonEvent(HobsonEvent event) {
+        try {
+            if (event instanceof DeviceAvailableEvent) {
+                fireDeviceAvailable(((DeviceAvailableEvent)event).getDeviceContext());
+            } else if (event instanceof DeviceUnavailableEvent) {
+                fireDeviceUnavailable(((DeviceUnavailableEvent)event).getDeviceContext());
+            } else if (event instanceof DeviceVariablesUpdateEvent) {
+                List<DeviceVariableUpdate> updates = new ArrayList<>(((DeviceVariablesUpdateEvent)event).getUpdates());
+                if (!updates.isEmpty()) {
+                    fireDeviceVariablesUpdate(updates.get(0).getContext().getDeviceContext().getHubContext(), updates);
+                }
+            } else if (event instanceof PluginStatusChangeEvent) {
+                for (String hubId : registeredHubs) {
+                    firePluginChange(HubContext.create(hubId));
+                }
+            } else if (!(event instanceof DeviceVariablesUpdateRequestEvent) && !(event instanceof PresenceUpdateRequestEvent)) {
+                // requests change nothing themselves but any other event may reflect a change made outside the REST API
+                for (String hubId : registeredHubs) {
+                    fireHubChange(HubContext.create(hubId));
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error dispatching event: " + event, e);
+        }
+    }
+
+    public void fireDeviceAvailable(DeviceContext ctx) {
+        for (HubEventListener l : listeners) {
+            l.onDeviceAvailable(ctx);
+        }
+    }
+
+    public void fireDeviceUnavailable(DeviceContext ctx) {
+        for (HubEventListener l : listeners) {
+            l.onDeviceUnavailable(ctx);
+        }
+    }
+
+    public void fireDeviceUpdated(DeviceContext ctx) {
+        for (HubEventListener l : listeners) {
+            l.onDeviceUpdated(ctx);
+        }
+    }
+
+    public void fireDeviceRemoved(DeviceContext ctx) {
+        for (HubEventListener l : listeners) {
+            l.onDeviceRemoved(ctx);
+        }
+    }
+
+    public void fireDeviceVariablesUpdate(HubContext ctx, Collection<DeviceVariableUpdate> updates) {
+        for (HubEventListener l : listeners) {
+            l.onDeviceVariablesUpdate(ctx, updates);
+        }
+    }
+
+    public void firePluginChange(HubContext ctx) {
+        for (HubEventListener l : listeners) {
+            l.onPluginChange(ctx);
+        }
+    }
+
+    public void fireHubChange(HubContext ctx) {
+        for (HubEventListener l : listeners) {
+            l.onHubChange(ctx);
+        }
+    }
+}
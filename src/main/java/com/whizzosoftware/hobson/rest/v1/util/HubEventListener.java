@@ -0,0 +1,77 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.device.DeviceContext;
+import com.whizzosoftware.hobson.api.event.device.DeviceVariableUpdate;
+import com.whizzosoftware.hobson.api.hub.HubContext;
+
+import java.util.Collection;
+
+/**
+ * A listener for hub changes that REST-layer caches and indexes need to react to. Methods are no-ops by default so
+ * subclasses only override what they care about.
+ *
+ * Notifications are delivered by the HubEventDispatcher, either from hub events or directly from resources that
+ * perform the change.
+ */
+abstract public class HubEventListener {
+    /**
+     * Called when a device has been published or has become available.
+     *
+     * @param ctx the device context
+     */
+    public void onDeviceAvailable(DeviceContext ctx) {}
+
+    /**
+     * Called when a device has become unavailable.
+     *
+     * @param ctx the device context
+     */
+    public void onDeviceUnavailable(DeviceContext ctx) {}
+
+    /**
+     * Called when a device's metadata (e.g. name or tags) has changed.
+     *
+     * @param ctx the device context
+     */
+    public void onDeviceUpdated(DeviceContext ctx) {}
+
+    /**
+     * Called when a device has been deleted.
+     *
+     * @param ctx the device context
+     */
+    public void onDeviceRemoved(DeviceContext ctx) {}
+
+    /**
+     * Called when one or more device variables have been updated.
+     *
+     * @param ctx the hub context
+     * @param updates the updates including each variable's new value
+     */
+    public void onDeviceVariablesUpdate(HubContext ctx, Collection<DeviceVariableUpdate> updates) {}
+
+    /**
+     * Called when a plugin has been installed, reloaded or has changed status.
+     *
+     * @param ctx the hub context
+     */
+    public void onPluginChange(HubContext ctx) {}
+
+    /**
+     * Called when the hub reports a change there is no more specific notification for (e.g. a task or presence
+     * change made outside the REST API). Listeners tracking anything other than devices should assume it may have
+     * changed.
+     *
+     * @param ctx the hub context
+     */
+    public void onHubChange(HubContext ctx) {}
+}
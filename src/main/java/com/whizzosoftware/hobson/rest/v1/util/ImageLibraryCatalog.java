@@ -0,0 +1,329 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.HobsonRuntimeException;
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import com.whizzosoftware.hobson.api.image.ImageGroup;
+import com.whizzosoftware.hobson.api.image.ImageInputStream;
+import com.whizzosoftware.hobson.api.image.ImageManager;
+import com.whizzosoftware.hobson.json.JSONAttributes;
+import com.whizzosoftware.hobson.rest.HobsonRestContext;
+import com.whizzosoftware.hobson.rest.v1.resource.image.ImageLibraryGroupResource;
+import com.whizzosoftware.hobson.rest.v1.resource.image.ImageLibraryImageResource;
+import org.apache.commons.codec.binary.Base64;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.restlet.data.MediaType;
+import org.restlet.routing.Template;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A cache of each hub's image library catalog (its groups and the image IDs in each group) along with rendered
+ * copies of the combined catalog JSON.
+ *
+ * A catalog is built with one pass over the ImageManager and is discarded when a plugin changes or after the number
+ * of milliseconds set with the "hobson.rest.imageLibraryTTL" system property.
+ */
+@Singleton
+public class ImageLibraryCatalog extends HubEventListener {
+    private static final Logger logger = LoggerFactory.getLogger(ImageLibraryCatalog.class);
+
+    static final long TTL = Long.getLong("hobson.rest.imageLibraryTTL", 300000);
+    static final int MAX_RENDERED = 8;
+
+    @Inject
+    ImageManager imageManager;
+    @Inject
+    ImageVariants imageVariants;
+    @Inject
+    HubEventDispatcher eventDispatcher;
+
+    private final ConcurrentHashMap<String,Catalog> catalogs = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the image library catalog for a hub.
+     *
+     * @param hctx the hub context
+     *
+     * @return a Catalog
+     */
+    public Catalog getCatalog(HubContext hctx) {
+        Catalog c = catalogs.get(hctx.getHubId());
+        if (c == null || System.currentTimeMillis() - c.created > TTL) {
+            eventDispatcher.addListener(hctx, this);
+            c = buildCatalog(hctx);
+            catalogs.put(hctx.getHubId(), c);
+        }
+        return c;
+    }
+
+    /**
+     * Returns the combined catalog JSON (all groups and their images) without thumbnails.
+     *
+     * @param ctx the REST context
+     *
+     * @return a CachedContent instance
+     */
+    public CachedContent getCombined(HobsonRestContext ctx) {
+        Catalog catalog = getCatalog(ctx.getHubContext());
+        String key = createRenderedKey(ctx, null);
+        CachedContent c = catalog.getRendered(key);
+        if (c == null) {
+            c = render(ctx, catalog, null);
+            catalog.putRendered(key, c);
+        }
+        return c;
+    }
+
+    /**
+     * Returns the combined catalog JSON with inline thumbnails if it has already been rendered.
+     *
+     * @param ctx the REST context
+     * @param thumbnailSpec the thumbnail variant
+     *
+     * @return a CachedContent instance (or null if the thumbnails still need to be generated)
+     */
+    public CachedContent getCachedCombined(HobsonRestContext ctx, ImageVariants.Spec thumbnailSpec) {
+        Catalog catalog = getCatalog(ctx.getHubContext());
+        if (catalog.getImageIds().isEmpty()) {
+            return getCombined(ctx);
+        }
+        return catalog.getRendered(createRenderedKey(ctx, thumbnailSpec));
+    }
+
+    /**
+     * Renders the combined catalog JSON with an inline thumbnail for each image. Thumbnails are generated (or
+     * fetched) through ImageVariants and the callback is invoked on a background thread once the last one arrives.
+     *
+     * @param ctx the REST context
+     * @param thumbnailSpec the thumbnail variant to inline
+     * @param callback the callback to receive the content
+     */
+    public void getCombined(final HobsonRestContext ctx, final ImageVariants.Spec thumbnailSpec, final ImageVariants.Callback callback) {
+        final HubContext hctx = ctx.getHubContext();
+        final Catalog catalog = getCatalog(hctx);
+        final String key = createRenderedKey(ctx, thumbnailSpec);
+        Set<String> imageIds = catalog.getImageIds();
+
+        // generate (or fetch) all thumbnails and render once the last one arrives
+        final Map<String,CachedContent> thumbnails = new ConcurrentHashMap<>();
+        final AtomicInteger remaining = new AtomicInteger(imageIds.size());
+        for (final String imageId : imageIds) {
+            imageVariants.getVariant(createSourceId(hctx, imageId), new ImageVariants.Source() {
+                @Override
+                public ImageInputStream open() {
+                    return imageManager.getImageLibraryImage(hctx, imageId);
+                }
+            }, thumbnailSpec, new ImageVariants.Callback() {
+                @Override
+                public void onComplete(CachedContent content, Throwable error) {
+                    if (content != null) {
+                        thumbnails.put(imageId, content);
+                    } else {
+                        logger.warn("Unable to create thumbnail for image library image {}", imageId);
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        try {
+                            CachedContent c = render(ctx, catalog, thumbnails);
+                            catalog.putRendered(key, c);
+                            callback.onComplete(c, null);
+                        } catch (Throwable t) {
+                            callback.onComplete(null, t);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onPluginChange(HubContext ctx) {
+        catalogs.remove(ctx.getHubId());
+    }
+
+    private String createRenderedKey(HobsonRestContext ctx, ImageVariants.Spec thumbnailSpec) {
+        return ctx.getApiRoot() + "|" + thumbnailSpec;
+    }
+
+    /**
+     * Returns the ID used for an image library image's variants.
+     *
+     * @param hctx the hub context
+     * @param imageId the image ID
+     *
+     * @return a String
+     */
+    static public String createSourceId(HubContext hctx, String imageId) {
+        return "lib:" + hctx.getHubId() + ":" + imageId;
+    }
+
+    /**
+     * Returns the URI prefix for image library group links so that a link can be built by appending a group ID
+     * rather than formatting a template per entry.
+     *
+     * @param ctx the REST context
+     *
+     * @return a String
+     */
+    static public String createGroupLinkPrefix(HobsonRestContext ctx) {
+        return ctx.getApiRoot() + new Template(ImageLibraryGroupResource.PATH).format(MapUtil.createSingleEntryMap(ctx, "groupId", ""));
+    }
+
+    /**
+     * Returns the URI prefix for image library image links.
+     *
+     * @param ctx the REST context
+     *
+     * @return a String
+     */
+    static public String createImageLinkPrefix(HobsonRestContext ctx) {
+        return ctx.getApiRoot() + new Template(ImageLibraryImageResource.PATH).format(MapUtil.createSingleEntryMap(ctx, "imageId", ""));
+    }
+
+    static JSONObject createLinks(String self) {
+        JSONObject json = new JSONObject();
+        JSONObject links = new JSONObject();
+        links.put("self", self);
+        json.put(JSONAttributes.LINKS, links);
+        return json;
+    }
+
+    private Catalog buildCatalog(HubContext hctx) {
+        List<Group> groups = new ArrayList<>();
+        for (ImageGroup g : imageManager.getImageLibraryGroups(hctx)) {
+            groups.add(new Group(g.getId(), g.getName(), imageManager.getImageLibraryImageIds(hctx, g.getId())));
+        }
+        return new Catalog(groups);
+    }
+
+    private CachedContent render(HobsonRestContext ctx, Catalog catalog, Map<String,CachedContent> thumbnails) {
+        String groupPrefix = createGroupLinkPrefix(ctx);
+        String imagePrefix = createImageLinkPrefix(ctx);
+
+        JSONArray groups = new JSONArray();
+        for (Group g : catalog.getGroups()) {
+            JSONObject gj = createLinks(groupPrefix + g.getId());
+            gj.put("name", g.getName());
+            JSONArray images = new JSONArray();
+            for (String imageId : g.getImageIds()) {
+                JSONObject ij = createLinks(imagePrefix + imageId);
+                CachedContent t = (thumbnails != null) ? thumbnails.get(imageId) : null;
+                if (t != null) {
+                    JSONObject tj = new JSONObject();
+                    tj.put("mediaType", t.getMediaType().toString());
+                    tj.put("data", Base64.encodeBase64String(t.getData()));
+                    ij.put("thumbnail", tj);
+                }
+                images.put(ij);
+            }
+            gj.put("images", images);
+            groups.put(gj);
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("groups", groups);
+        try {
+            return new CachedContent(json.toString().getBytes("UTF-8"), MediaType.APPLICATION_JSON);
+        } catch (UnsupportedEncodingException e) {
+            throw new HobsonRuntimeException("Error rendering image library catalog", e);
+        }
+    }
+
+    /**
+     * A snapshot of a hub's image library.
+     */
+    static public class Catalog {
+        private final long created = System.currentTimeMillis();
+        private final List<Group> groups;
+        private final Map<String,Group> groupMap = new HashMap<>();
+        private final Map<String,CachedContent> rendered = new LinkedHashMap<>();
+
+        Catalog(List<Group> groups) {
+            this.groups = Collections.unmodifiableList(groups);
+            for (Group g : groups) {
+                groupMap.put(g.getId(), g);
+            }
+        }
+
+        public List<Group> getGroups() {
+            return groups;
+        }
+
+        public Group getGroup(String id) {
+            return groupMap.get(id);
+        }
+
+        Set<String> getImageIds() {
+            Set<String> ids = new LinkedHashSet<>();
+            for (Group g : groups) {
+                ids.addAll(g.getImageIds());
+            }
+            return ids;
+        }
+
+        CachedContent getRendered(String key) {
+            synchronized (rendered) {
+                return rendered.get(key);
+            }
+        }
+
+        void putRendered(String key, CachedContent c) {
+            synchronized (rendered) {
+                if (rendered.size() >= MAX_RENDERED && !rendered.containsKey(key)) {
+                    rendered.remove(rendered.keySet().iterator().next());
+                }
+                rendered.put(key, c);
+            }
+        }
+    }
+
+    /**
+     * An image library group.
+     */
+    static public class Group {
+        private final String id;
+        private final String name;
+        private final List<String> imageIds;
+
+        Group(String id, String name, List<String> imageIds) {
+            this.id = id;
+            this.name = name;
+            this.imageIds = Collections.unmodifiableList(new ArrayList<>(imageIds));
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getImageIds() {
+            return imageIds;
+        }
+    }
+}
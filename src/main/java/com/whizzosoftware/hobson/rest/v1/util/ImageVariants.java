@@ -0,0 +1,590 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.HobsonInvalidRequestException;
+import com.whizzosoftware.hobson.api.image.ImageInputStream;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.EmptyRepresentation;
+import org.restlet.representation.Representation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import javax.inject.Singleton;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Produces scaled and/or re-encoded variants of images (e.g. thumbnails for the hub image and image library).
+ *
+ * Variants are keyed by a hash of the source image plus the requested size and format, so each one is generated
+ * only once. They are held in a bounded in-memory LRU cache (sized in bytes by the "hobson.rest.imageVariantMemory"
+ * system property) backed by a bounded on-disk cache (see "hobson.rest.imageVariantDir" and
+ * "hobson.rest.imageVariantDiskEntries"). Generation happens on a small background pool and concurrent requests for
+ * the same variant share a single generation.
+ *
+ * The hash of each source is remembered so cached variants can be found without reading the source. Sources can be
+ * replaced without an explicit invalidate() call (e.g. image library files changed on disk) so a remembered hash is
+ * only trusted for "hobson.rest.imageVariantSourceTtl" milliseconds before the source is read and hashed again.
+ */
+@Singleton
+public class ImageVariants {
+    private static final Logger logger = LoggerFactory.getLogger(ImageVariants.class);
+
+    static final int MAX_DIMENSION = Integer.getInteger("hobson.rest.maxImageDimension", 2048);
+    static final long MEMORY_SIZE = Long.getLong("hobson.rest.imageVariantMemory", 4 * 1024 * 1024);
+    static final int DISK_ENTRIES = Integer.getInteger("hobson.rest.imageVariantDiskEntries", 500);
+    static final long SOURCE_TTL = Long.getLong("hobson.rest.imageVariantSourceTtl", 60000);
+    static final int THREADS = Integer.getInteger("hobson.rest.imageVariantThreads", 2);
+    static final File DISK_DIR = new File(System.getProperty("hobson.rest.imageVariantDir", new File(System.getProperty("java.io.tmpdir"), "hobson-image-variants").getAbsolutePath()));
+
+    static final List<String> FORMATS = Arrays.asList("png", "jpeg", "gif", "bmp");
+
+    private final File diskDir;
+    private final long memorySize;
+    private final int diskEntries;
+    private final long sourceTtl;
+    private final Map<String,SourceInfo> sources = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String,CachedContent> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String,List<Callback>> pending = new HashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private long memoryBytes;
+    private ExecutorService executor;
+
+    /**
+     * Opens a source image.
+     */
+    public interface Source {
+        ImageInputStream open();
+    }
+
+    /**
+     * Receives a generated variant (or the error that prevented it from being generated).
+     */
+    public interface Callback {
+        void onComplete(CachedContent content, Throwable error);
+    }
+
+    public ImageVariants() {
+        this(DISK_DIR, MEMORY_SIZE, DISK_ENTRIES, SOURCE_TTL);
+    }
+
+    ImageVariants(File diskDir, long memorySize, int diskEntries, long sourceTtl) {
+        this.diskDir = diskDir;
+        this.memorySize = memorySize;
+        this.diskEntries = diskEntries;
+        this.sourceTtl = sourceTtl;
+    }
+
+    /**
+     * Creates a representation of an image variant. If the variant is already in memory it is returned immediately;
+     * otherwise the response is completed asynchronously once the variant has been generated and null is returned.
+     *
+     * @param request the request
+     * @param response the response
+     * @param sourceId a unique ID for the source image
+     * @param source the source image
+     * @param spec the variant to create
+     *
+     * @return a Representation (or null if the response will be committed later)
+     */
+    public Representation createRepresentation(final Request request, final Response response, String sourceId, Source source, Spec spec) {
+        CachedContent c = getCached(sourceId, spec);
+        if (c != null) {
+            return c.createRepresentation(request, response);
+        }
+
+        getVariant(sourceId, source, spec, createResponseCallback(request, response));
+        return null;
+    }
+
+    /**
+     * Creates a callback that completes a response with the content it receives. The response is switched to manual
+     * commit so the caller should return null from its handler.
+     *
+     * @param request the request
+     * @param response the response
+     *
+     * @return a Callback
+     */
+    static public Callback createResponseCallback(final Request request, final Response response) {
+        response.setAutoCommitting(false);
+        return new Callback() {
+            @Override
+            public void onComplete(CachedContent content, Throwable error) {
+                try {
+                    if (content != null) {
+                        response.setStatus(Status.SUCCESS_OK);
+                        response.setEntity(content.createRepresentation(request, response));
+                    } else {
+                        if (error instanceof HobsonInvalidRequestException) {
+                            response.setStatus(Status.CLIENT_ERROR_BAD_REQUEST, error.getMessage());
+                        } else {
+                            response.setStatus(Status.SERVER_ERROR_INTERNAL, "Unable to create image");
+                        }
+                        response.setEntity(new EmptyRepresentation());
+                    }
+                } finally {
+                    response.commit();
+                }
+            }
+        };
+    }
+
+    /**
+     * Retrieves an image variant, generating it if necessary. The callback is invoked on the calling thread if the
+     * variant is already in memory and on a background thread otherwise.
+     *
+     * @param sourceId a unique ID for the source image
+     * @param source the source image
+     * @param spec the variant to create
+     * @param callback the callback to receive the variant
+     */
+    public void getVariant(final String sourceId, final Source source, final Spec spec, Callback callback) {
+        CachedContent c = getCached(sourceId, spec);
+        if (c != null) {
+            callback.onComplete(c, null);
+            return;
+        }
+
+        final String pendingKey = sourceId + "|" + spec;
+        synchronized (pending) {
+            List<Callback> callbacks = pending.get(pendingKey);
+            if (callbacks != null) {
+                callbacks.add(callback);
+                return;
+            }
+            callbacks = new ArrayList<>();
+            callbacks.add(callback);
+            pending.put(pendingKey, callbacks);
+        }
+
+        getExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                CachedContent result = null;
+                Throwable error = null;
+                try {
+                    result = generate(sourceId, source, spec);
+                } catch (Throwable t) {
+                    if (!(t instanceof HobsonInvalidRequestException)) {
+                        logger.error("Error creating image variant for " + sourceId, t);
+                    }
+                    error = t;
+                }
+
+                List<Callback> callbacks;
+                synchronized (pending) {
+                    callbacks = pending.remove(pendingKey);
+                }
+                for (Callback cb : callbacks) {
+                    try {
+                        cb.onComplete(result, error);
+                    } catch (Throwable t) {
+                        logger.error("Error delivering image variant", t);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Indicates that a source image has changed. Variants of the old image are no longer served and age out of the
+     * caches.
+     *
+     * @param sourceId the source image ID
+     */
+    public void invalidate(String sourceId) {
+        generation.incrementAndGet();
+        sources.remove(sourceId);
+    }
+
+    CachedContent getCached(String sourceId, Spec spec) {
+        SourceInfo info = getSourceInfo(sourceId);
+        if (info != null) {
+            synchronized (memory) {
+                return memory.get(createKey(info.hash, spec.resolveFormat(info.mediaType), spec));
+            }
+        }
+        return null;
+    }
+
+    CachedContent generate(String sourceId, Source source, Spec spec) throws IOException {
+        long gen = generation.get();
+        byte[] sourceData = null;
+
+        // determine the source hash, reading the source if it hasn't been seen recently
+        SourceInfo info = getSourceInfo(sourceId);
+        if (info == null) {
+            ImageInputStream iis = source.open();
+            try {
+                sourceData = readFully(iis.getInputStream());
+                info = new SourceInfo(DigestUtils.md5Hex(sourceData), iis.getMediaType());
+            } finally {
+                iis.close();
+            }
+            if (generation.get() == gen) {
+                sources.put(sourceId, info);
+            }
+        }
+
+        String format = spec.resolveFormat(info.mediaType);
+        String key = createKey(info.hash, format, spec);
+
+        // check memory (another request may have generated it for a different source ID) and then disk
+        CachedContent c;
+        synchronized (memory) {
+            c = memory.get(key);
+        }
+        if (c != null) {
+            return c;
+        }
+        c = readFromDisk(key, format);
+        if (c != null) {
+            putInMemory(key, c);
+            return c;
+        }
+
+        // generate the variant
+        if (sourceData == null) {
+            ImageInputStream iis = source.open();
+            try {
+                sourceData = readFully(iis.getInputStream());
+            } finally {
+                iis.close();
+            }
+        }
+        byte[] data = scale(new ByteArrayInputStream(sourceData), spec.getWidth(), spec.getHeight(), format);
+        c = new CachedContent(data, createMediaType(format));
+        writeToDisk(key, data);
+        putInMemory(key, c);
+        return c;
+    }
+
+    private SourceInfo getSourceInfo(String sourceId) {
+        SourceInfo info = sources.get(sourceId);
+        if (info != null && System.currentTimeMillis() - info.created >= sourceTtl) {
+            sources.remove(sourceId, info);
+            return null;
+        }
+        return info;
+    }
+
+    private void putInMemory(String key, CachedContent c) {
+        synchronized (memory) {
+            CachedContent old = memory.put(key, c);
+            if (old != null) {
+                memoryBytes -= old.getSize();
+            }
+            memoryBytes += c.getSize();
+            Iterator<CachedContent> it = memory.values().iterator();
+            while (memoryBytes > memorySize && it.hasNext()) {
+                memoryBytes -= it.next().getSize();
+                it.remove();
+            }
+        }
+    }
+
+    private CachedContent readFromDisk(String key, String format) {
+        File f = new File(diskDir, key);
+        if (f.exists()) {
+            try {
+                CachedContent c = CachedContent.create(new FileInputStream(f), createMediaType(format));
+                if (!f.setLastModified(System.currentTimeMillis())) {
+                    logger.debug("Unable to update timestamp of {}", f);
+                }
+                return c;
+            } catch (Exception e) {
+                logger.warn("Unable to read cached image variant " + f, e);
+            }
+        }
+        return null;
+    }
+
+    private void writeToDisk(String key, byte[] data) {
+        try {
+            if (!diskDir.exists() && !diskDir.mkdirs()) {
+                logger.warn("Unable to create image variant directory {}", diskDir);
+                return;
+            }
+            OutputStream os = new FileOutputStream(new File(diskDir, key));
+            try {
+                os.write(data);
+            } finally {
+                os.close();
+            }
+            pruneDisk();
+        } catch (IOException e) {
+            logger.warn("Unable to write image variant to disk", e);
+        }
+    }
+
+    private void pruneDisk() {
+        File[] files = diskDir.listFiles();
+        if (files != null && files.length > diskEntries) {
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File f1, File f2) {
+                    return Long.compare(f1.lastModified(), f2.lastModified());
+                }
+            });
+            for (int i = 0; i < files.length - diskEntries; i++) {
+                if (!files[i].delete()) {
+                    logger.debug("Unable to delete image variant {}", files[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops variant generation. Queued generation requests are discarded. Called when the application stops.
+     */
+    synchronized public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    synchronized private ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(THREADS, new NamedThreadFactory("hobson-rest-image"));
+        }
+        return executor;
+    }
+
+    static String createKey(String hash, String format, Spec spec) {
+        return hash + "-" + spec.getWidth() + "x" + spec.getHeight() + "." + format;
+    }
+
+    static MediaType createMediaType(String format) {
+        return MediaType.valueOf("image/" + format);
+    }
+
+    static private byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int len;
+        while ((len = is.read(buf)) > -1) {
+            baos.write(buf, 0, len);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Computes the size of a scaled image. The image is scaled to fit within the requested width and/or height
+     * while preserving its aspect ratio and is never enlarged.
+     *
+     * @param srcWidth the source width
+     * @param srcHeight the source height
+     * @param width the requested width (or 0 for no constraint)
+     * @param height the requested height (or 0 for no constraint)
+     *
+     * @return an array containing the target width and height
+     */
+    static int[] computeSize(int srcWidth, int srcHeight, int width, int height) {
+        double scale = 1.0;
+        if (width > 0) {
+            scale = Math.min(scale, (double)width / srcWidth);
+        }
+        if (height > 0) {
+            scale = Math.min(scale, (double)height / srcHeight);
+        }
+        return new int[] {Math.max(1, (int)Math.round(srcWidth * scale)), Math.max(1, (int)Math.round(srcHeight * scale))};
+    }
+
+    /**
+     * Scales and encodes an image.
+     *
+     * @param is the source image
+     * @param width the maximum width (or 0 for no constraint)
+     * @param height the maximum height (or 0 for no constraint)
+     * @param format the ImageIO format name to encode with
+     *
+     * @return the encoded image
+     *
+     * @throws IOException on failure
+     */
+    static byte[] scale(InputStream is, int width, int height, String format) throws IOException {
+        BufferedImage src = ImageIO.read(is);
+        if (src == null) {
+            throw new HobsonInvalidRequestException("Unsupported image format");
+        }
+
+        int[] size = computeSize(src.getWidth(), src.getHeight(), width, height);
+        boolean alpha = "png".equals(format) || "gif".equals(format);
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        // scale down in halving steps for better quality than a single bilinear pass
+        BufferedImage img = src;
+        int w = src.getWidth();
+        int h = src.getHeight();
+        do {
+            w = Math.max(size[0], w / 2);
+            h = Math.max(size[1], h / 2);
+            BufferedImage dst = new BufferedImage(w, h, type);
+            Graphics2D g = dst.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                if (!alpha) {
+                    g.setColor(Color.WHITE);
+                    g.fillRect(0, 0, w, h);
+                }
+                g.drawImage(img, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            img = dst;
+        } while (w != size[0] || h != size[1]);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        if (!ImageIO.write(img, format, baos)) {
+            throw new HobsonInvalidRequestException("Unsupported image format: " + format);
+        }
+        return baos.toByteArray();
+    }
+
+    static private class SourceInfo {
+        final String hash;
+        final String mediaType;
+        final long created = System.currentTimeMillis();
+
+        SourceInfo(String hash, String mediaType) {
+            this.hash = hash;
+            this.mediaType = mediaType;
+        }
+    }
+
+    /**
+     * A requested image variant.
+     */
+    static public class Spec {
+        private final int width;
+        private final int height;
+        private final String format;
+
+        /**
+         * Parses a variant from request query parameters.
+         *
+         * @param width the "w" parameter
+         * @param height the "h" parameter
+         * @param format the "format" parameter
+         *
+         * @return a Spec (or null if no variant was requested)
+         */
+        static public Spec parse(String width, String height, String format) {
+            if (width == null && height == null && format == null) {
+                return null;
+            }
+            return new Spec(parseDimension("w", width), parseDimension("h", height), parseFormat(format));
+        }
+
+        Spec(int width, int height, String format) {
+            this.width = width;
+            this.height = height;
+            this.format = format;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Returns the requested format.
+         *
+         * @return a format name (or null to use the source image's format when possible)
+         */
+        public String getFormat() {
+            return format;
+        }
+
+        String resolveFormat(String sourceMediaType) {
+            if (format != null) {
+                return format;
+            }
+            if (sourceMediaType != null) {
+                String f = parseFormatName(sourceMediaType.substring(sourceMediaType.indexOf('/') + 1));
+                if (f != null) {
+                    return f;
+                }
+            }
+            return "png";
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height + ":" + format;
+        }
+
+        static private int parseDimension(String name, String s) {
+            if (s == null) {
+                return 0;
+            }
+            try {
+                int i = Integer.parseInt(s);
+                if (i > 0 && i <= MAX_DIMENSION) {
+                    return i;
+                }
+            } catch (NumberFormatException ignored) {}
+            throw new HobsonInvalidRequestException("Parameter \"" + name + "\" must be between 1 and " + MAX_DIMENSION);
+        }
+
+        static private String parseFormat(String s) {
+            if (s == null) {
+                return null;
+            }
+            String f = parseFormatName(s);
+            if (f == null) {
+                throw new HobsonInvalidRequestException("Parameter \"format\" must be one of " + FORMATS);
+            }
+            return f;
+        }
+
+        static private String parseFormatName(String s) {
+            s = s.toLowerCase();
+            if ("jpg".equals(s)) {
+                s = "jpeg";
+            }
+            return FORMATS.contains(s) ? s : null;
+        }
+    }
+}
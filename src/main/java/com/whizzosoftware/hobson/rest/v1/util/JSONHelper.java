@@ -11,12 +11,21 @@ import com.whizzosoftware.hobson.api.HobsonRuntimeException;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.json.JSONTokener;
+import org.restlet.data.Status;
 import org.restlet.representation.Representation;
+import org.restlet.resource.ResourceException;
 
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A helper utility for JSON-related functions.
@@ -24,14 +33,37 @@ import java.util.Map;
  * @author Dan Noguerol
  */
 public class JSONHelper {
+    /**
+     * The default maximum request body size in bytes (set with the "hobson.rest.maxJsonBodySize" system property).
+     */
+    public static final long MAX_BODY_SIZE = Long.getLong("hobson.rest.maxJsonBodySize", 1024 * 1024);
+    /**
+     * The maximum size in bytes of a JSON body that carries base64 image data, which is far larger than any other
+     * request body (set with the "hobson.rest.maxImageBodySize" system property). It is never lower than the default
+     * limit.
+     */
+    public static final long MAX_IMAGE_BODY_SIZE = Math.max(Long.getLong("hobson.rest.maxImageBodySize", 10 * 1024 * 1024), MAX_BODY_SIZE);
+
     public static JSONObject createJSONFromRepresentation(Representation r) {
+        return createJSONFromRepresentation(r, MAX_BODY_SIZE);
+    }
+
+    /**
+     * Parses a JSON object from a request body, rejecting bodies larger than a maximum size with a 413.
+     *
+     * @param r the request body
+     * @param maxSize the maximum size in bytes
+     *
+     * @return a JSONObject
+     */
+    public static JSONObject createJSONFromRepresentation(Representation r, long maxSize) {
         try {
-            InputStream is = r.getStream();
-            if (is != null) {
+            Reader reader = createReader(r, maxSize);
+            if (reader != null) {
                 try {
-                    return new JSONObject(new JSONTokener(is));
+                    return new JSONObject(new JSONTokener(reader));
                 } finally {
-                    is.close();
+                    reader.close();
                 }
             } else {
                 return new JSONObject();
@@ -43,12 +75,12 @@ public class JSONHelper {
 
     public static JSONArray createJSONArrayFromRepresentation(Representation r) {
         try {
-            InputStream is = r.getStream();
-            if (is != null) {
+            Reader reader = createReader(r, MAX_BODY_SIZE);
+            if (reader != null) {
                 try {
-                    return new JSONArray(new JSONTokener(is));
+                    return new JSONArray(new JSONTokener(reader));
                 } finally {
-                    is.close();
+                    reader.close();
                 }
             } else {
                 return new JSONArray();
@@ -58,6 +90,119 @@ public class JSONHelper {
         }
     }
 
+    /**
+     * Reads specific top-level fields from a JSON object request body without building the rest of the object tree.
+     * Reading stops as soon as all the requested fields have been found.
+     *
+     * @param r the request body
+     * @param names the names of the fields to read
+     *
+     * @return a Map of field name to value (fields not present in the body are omitted)
+     */
+    public static Map<String,Object> readFieldsFromRepresentation(Representation r, String... names) {
+        Map<String,Object> results = new HashMap<>();
+        try {
+            Reader reader = createReader(r, MAX_BODY_SIZE);
+            if (reader != null) {
+                try {
+                    readFields(new JSONStreamReader(reader), new HashSet<>(Arrays.asList(names)), results);
+                } finally {
+                    reader.close();
+                }
+            }
+            return results;
+        } catch (IOException e) {
+            throw new HobsonRuntimeException("Error reading JSON", e);
+        }
+    }
+
+    static void readFields(JSONStreamReader jsr, Set<String> names, Map<String,Object> results) {
+        jsr.beginObject();
+        String key;
+        while (results.size() < names.size() && (key = jsr.nextKey()) != null) {
+            if (names.contains(key)) {
+                results.put(key, jsr.nextValue());
+            } else {
+                jsr.skipValue();
+            }
+        }
+    }
+
+    /**
+     * Creates a buffered, size-limited UTF-8 reader for a request body.
+     *
+     * @param r the request body
+     * @param maxSize the maximum size in bytes
+     *
+     * @return a Reader (or null if there is no body)
+     *
+     * @throws IOException on failure
+     */
+    public static Reader createReader(Representation r, long maxSize) throws IOException {
+        if (r == null) {
+            return null;
+        }
+        // reject early if the declared size is already too large
+        if (r.getSize() > maxSize) {
+            throw createTooLargeException(maxSize);
+        }
+        InputStream is = r.getStream();
+        if (is != null) {
+            return new BufferedReader(new InputStreamReader(new LimitedInputStream(is, maxSize), "UTF-8"));
+        } else {
+            return null;
+        }
+    }
+
+    static ResourceException createTooLargeException(long maxSize) {
+        return new ResourceException(Status.CLIENT_ERROR_REQUEST_ENTITY_TOO_LARGE, "Request body exceeds maximum size of " + maxSize + " bytes");
+    }
+
+    /**
+     * An InputStream that fails with a 413 once more than a maximum number of bytes has been read.
+     */
+    static class LimitedInputStream extends FilterInputStream {
+        private final long maxSize;
+        private long count;
+
+        LimitedInputStream(InputStream in, long maxSize) {
+            super(in);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                check(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                check(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long s = super.skip(n);
+            check(s);
+            return s;
+        }
+
+        private void check(long n) {
+            count += n;
+            if (count > maxSize) {
+                throw createTooLargeException(maxSize);
+            }
+        }
+    }
+
     public static Map<String,Object> createMapFromJSONObject(JSONObject json) {
         Map<String,Object> map = new HashMap<>();
         for (Object o : json.keySet()) {
@@ -0,0 +1,174 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import org.json.JSONTokener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A pull-style reader for JSON objects that lets callers walk an object's keys, skip values they don't need without
+ * building them and read large string values (e.g. base64 image data) as a stream.
+ */
+public class JSONStreamReader {
+    private final JSONTokener t;
+    private final Deque<Boolean> first = new ArrayDeque<>();
+
+    public JSONStreamReader(Reader reader) {
+        this(new JSONTokener(reader));
+    }
+
+    public JSONStreamReader(JSONTokener t) {
+        this.t = t;
+    }
+
+    /**
+     * Consumes the start of an object.
+     */
+    public void beginObject() {
+        if (t.nextClean() != '{') {
+            throw t.syntaxError("A JSONObject text must begin with '{'");
+        }
+        first.push(true);
+    }
+
+    /**
+     * Returns the next key in the current object. The caller must then consume its value with nextValue(),
+     * skipValue(), beginObject() or openString().
+     *
+     * @return the key (or null if the end of the object has been reached)
+     */
+    public String nextKey() {
+        char c = t.nextClean();
+        if (!first.pop()) {
+            if (c == ',') {
+                c = t.nextClean();
+            } else if (c != '}') {
+                throw t.syntaxError("Expected a ',' or '}'");
+            }
+        }
+        if (c == '}') {
+            return null;
+        }
+        first.push(false);
+        if (c != '"' && c != '\'') {
+            throw t.syntaxError("Expected a quoted key");
+        }
+        String key = t.nextString(c);
+        if (t.nextClean() != ':') {
+            throw t.syntaxError("Expected a ':' after a key");
+        }
+        return key;
+    }
+
+    /**
+     * Reads the next value (building it if it's an object or array).
+     *
+     * @return the value
+     */
+    public Object nextValue() {
+        return t.nextValue();
+    }
+
+    /**
+     * Skips the next value without building it.
+     */
+    public void skipValue() {
+        char c = t.nextClean();
+        switch (c) {
+            case '"':
+            case '\'':
+                t.nextString(c);
+                break;
+            case '{':
+                t.back();
+                beginObject();
+                while (nextKey() != null) {
+                    skipValue();
+                }
+                break;
+            case '[':
+                c = t.nextClean();
+                while (c != ']') {
+                    t.back();
+                    skipValue();
+                    c = t.nextClean();
+                    if (c == ',') {
+                        c = t.nextClean();
+                    } else if (c != ']') {
+                        throw t.syntaxError("Expected a ',' or ']'");
+                    }
+                }
+                break;
+            case 0:
+                throw t.syntaxError("Unexpected end of text");
+            default:
+                // unquoted literal (number, true, false, null)
+                while (c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
+                    c = t.next();
+                }
+                t.back();
+        }
+    }
+
+    /**
+     * Returns the next value, which must be a string, as a stream of characters. Only ASCII characters and the "\/"
+     * escape are supported, which is sufficient for encoded data such as base64; anything else is rejected with a
+     * syntax error rather than being passed through incorrectly. The stream must be closed before the reader is used
+     * again.
+     *
+     * @return an InputStream
+     */
+    public InputStream openString() {
+        final char quote = t.nextClean();
+        if (quote != '"' && quote != '\'') {
+            throw t.syntaxError("Expected a string");
+        }
+        return new InputStream() {
+            private boolean done;
+
+            @Override
+            public int read() throws IOException {
+                if (done) {
+                    return -1;
+                }
+                char c = t.next();
+                if (c == quote) {
+                    done = true;
+                    return -1;
+                } else if (c == '\\') {
+                    c = t.next();
+                    if (c != '/') {
+                        done = true;
+                        throw t.syntaxError("Unsupported escape sequence in streamed string: \\" + c);
+                    }
+                } else if (c == 0 || c == '\n' || c == '\r') {
+                    done = true;
+                    throw t.syntaxError("Unterminated string");
+                } else if (c > 0x7F) {
+                    done = true;
+                    throw t.syntaxError("Unsupported character in streamed string");
+                }
+                return c;
+            }
+
+            @Override
+            public void close() throws IOException {
+                // consume the rest of the string so the reader is positioned after it (unless it was rejected, in
+                // which case the reader can't be used again anyway)
+                while (read() >= 0) {}
+            }
+        };
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.HobsonInvalidRequestException;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allows long-poll requests to wait for a job's state to change without tying up a thread.
+ *
+ * Each watched job is checked by a single poll task, no matter how many requests are waiting on it. The poll task
+ * fetches the job's state with one "probe" provider and only when that has changed does it render the state for
+ * each waiting request with the request's own provider, so every client receives a representation built for it
+ * (e.g. with its own API root and expansions). The poll task only runs while there are waiting requests. The poll interval
+ * (in milliseconds) is set with the "hobson.rest.jobPollInterval" system property and the longest wait a client can
+ * request with the "hobson.rest.jobMaxWait" system property.
+ */
+@Singleton
+public class JobWatcher {
+    private static final Logger logger = LoggerFactory.getLogger(JobWatcher.class);
+
+    static final long POLL_INTERVAL = Long.getLong("hobson.rest.jobPollInterval", 250);
+    public static final long MAX_WAIT = Long.getLong("hobson.rest.jobMaxWait", 60000);
+
+    private final Map<String,Watch> watches = new HashMap<>();
+    private ScheduledExecutorService executor;
+
+    /**
+     * Provides the current state of a job.
+     */
+    public interface StateProvider {
+        String getState();
+    }
+
+    /**
+     * Callback interface for wait completion.
+     */
+    public interface Callback {
+        /**
+         * Called when the wait has completed.
+         *
+         * @param state the new state (or null if the wait timed out)
+         * @param tag the tag of the new state (or null)
+         */
+        void onComplete(String state, String tag);
+
+        /**
+         * Called when the job's state could not be retrieved. The wait is over in this case.
+         *
+         * @param e the exception thrown by the state provider
+         */
+        void onError(Exception e);
+    }
+
+    /**
+     * Parses a job wait query parameter.
+     *
+     * @param s the parameter value (may be null)
+     *
+     * @return the number of milliseconds to wait (0 if no wait was requested)
+     */
+    static public long parseWait(String s) {
+        if (s != null) {
+            try {
+                long l = Long.parseLong(s);
+                if (l >= 0) {
+                    return Math.min(l, MAX_WAIT);
+                }
+            } catch (NumberFormatException ignored) {
+            }
+            throw new HobsonInvalidRequestException("Invalid job wait value: " + s);
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the tag for a state. This is an MD5 hash of the state so that it can be used as a strong entity tag.
+     *
+     * @param state the state
+     *
+     * @return a String
+     */
+    static public String createTag(String state) {
+        return DigestUtils.md5Hex(state);
+    }
+
+    /**
+     * Waits for a job's state to change.
+     *
+     * @param key a key that uniquely identifies the job
+     * @param probe the provider used to detect changes to the job's state if this is the first wait for the job
+     * @param renderer the provider used to retrieve the state this caller is sent
+     * @param knownTag the tag of the state (as returned by the renderer) that the caller already has
+     * @param timeout the maximum time to wait in milliseconds
+     * @param callback the callback to invoke on completion
+     */
+    public void watch(final String key, StateProvider probe, StateProvider renderer, String knownTag, long timeout, Callback callback) {
+        final Waiter waiter = new Waiter(renderer, knownTag, callback);
+
+        synchronized (watches) {
+            Watch w = watches.get(key);
+            if (w == null) {
+                w = new Watch(probe);
+                watches.put(key, w);
+                w.poll = getExecutor().scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        poll(key);
+                    }
+                }, POLL_INTERVAL, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            } else {
+                // the new waiter's state may predate the last probe so make sure the next poll checks it
+                w.probeTag = null;
+            }
+            w.waiters.add(waiter);
+        }
+
+        getExecutor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (remove(key, waiter)) {
+                    waiter.callback.onComplete(null, null);
+                }
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    void poll(String key) {
+        StateProvider probe;
+        synchronized (watches) {
+            Watch w = watches.get(key);
+            if (w == null) {
+                return;
+            }
+            probe = w.probe;
+        }
+
+        String probeTag = null;
+        Exception error = null;
+        try {
+            probeTag = createTag(probe.getState());
+        } catch (Exception e) {
+            logger.debug("Unable to retrieve state for " + key, e);
+            error = e;
+        }
+
+        List<Waiter> waiters;
+        synchronized (watches) {
+            Watch w = watches.get(key);
+            if (w == null || (probeTag != null && probeTag.equals(w.probeTag))) {
+                return;
+            }
+            w.probeTag = probeTag;
+            waiters = new ArrayList<>(w.waiters);
+        }
+
+        // only render the state for each waiter once the job has changed
+        for (Waiter waiter : waiters) {
+            try {
+                if (error != null) {
+                    if (remove(key, waiter)) {
+                        waiter.callback.onError(error);
+                    }
+                } else {
+                    String state = waiter.renderer.getState();
+                    String tag = createTag(state);
+                    if (!tag.equals(waiter.knownTag) && remove(key, waiter)) {
+                        waiter.callback.onComplete(state, tag);
+                    }
+                }
+            } catch (Exception e) {
+                logger.debug("Unable to retrieve state for " + key, e);
+                if (remove(key, waiter)) {
+                    waiter.callback.onError(e);
+                }
+            }
+        }
+    }
+
+    private boolean remove(String key, Waiter waiter) {
+        synchronized (watches) {
+            Watch w = watches.get(key);
+            if (w != null && w.waiters.remove(waiter)) {
+                if (w.waiters.isEmpty()) {
+                    w.poll.cancel(false);
+                    watches.remove(key);
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+
+    int getWatchCount() {
+        synchronized (watches) {
+            return watches.size();
+        }
+    }
+
+    /**
+     * Stops job polling. Called when the application stops.
+     */
+    synchronized public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    synchronized private ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("hobson-rest-jobs"));
+        }
+        return executor;
+    }
+
+    private class Watch {
+        final StateProvider probe;
+        final List<Waiter> waiters = new ArrayList<>();
+        String probeTag;
+        ScheduledFuture poll;
+
+        Watch(StateProvider probe) {
+            this.probe = probe;
+        }
+    }
+
+    private class Waiter {
+        final StateProvider renderer;
+        final String knownTag;
+        final Callback callback;
+
+        Waiter(StateProvider renderer, String knownTag, Callback callback) {
+            this.renderer = renderer;
+            this.knownTag = knownTag;
+            this.callback = callback;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Performs a set of independent lookups (e.g. one per hub) concurrently on a bounded pool so that the total time is
+ * roughly that of the slowest lookup rather than the sum of all of them.
+ *
+ * The pool size and queue capacity are set with the "hobson.rest.lookupThreads" and "hobson.rest.lookupQueueSize"
+ * system properties. Lookups always run on the pool (even a single one) so the timeout bounds how long the calling
+ * thread waits. Lookups that fail, don't finish within the timeout or can't be queued because the pool is saturated
+ * are omitted from the results so callers can render them as degraded entries.
+ */
+@Singleton
+public class ParallelLookup {
+    private static final Logger logger = LoggerFactory.getLogger(ParallelLookup.class);
+
+    static final int THREADS = Integer.getInteger("hobson.rest.lookupThreads", 8);
+    static final int QUEUE_SIZE = Integer.getInteger("hobson.rest.lookupQueueSize", 256);
+
+    private final int threads;
+    private final int queueSize;
+    private ExecutorService executor;
+
+    /**
+     * Looks up a value for a key.
+     */
+    public interface Lookup<K,V> {
+        V lookup(K key) throws Exception;
+    }
+
+    public ParallelLookup() {
+        this(THREADS, QUEUE_SIZE);
+    }
+
+    ParallelLookup(int threads, int queueSize) {
+        this.threads = threads;
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Looks up values for a collection of keys.
+     *
+     * @param keys the keys
+     * @param lookup the lookup to perform for each key
+     * @param timeout the maximum time in milliseconds to wait for each lookup
+     *
+     * @return a Map of key to value in key order (keys whose lookup failed, timed out, was rejected or returned null are omitted)
+     */
+    public <K,V> Map<K,V> lookupAll(Collection<K> keys, final Lookup<K,V> lookup, long timeout) {
+        Map<K,V> results = new LinkedHashMap<>();
+
+        List<K> keyList = new ArrayList<>(keys);
+        List<Future<V>> futures = new ArrayList<>(keyList.size());
+        for (final K key : keyList) {
+            try {
+                futures.add(getExecutor().submit(new Callable<V>() {
+                    @Override
+                    public V call() throws Exception {
+                        return lookup.lookup(key);
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                // running it on the calling thread would escape the timeout
+                logger.warn("Lookup rejected for {}; pool is saturated", key);
+                futures.add(null);
+            }
+        }
+
+        // all lookups start together so each one's timeout is measured from the same point
+        long deadline = System.currentTimeMillis() + timeout;
+        for (int i = 0; i < keyList.size(); i++) {
+            K key = keyList.get(i);
+            Future<V> f = futures.get(i);
+            if (f == null) {
+                continue;
+            }
+            try {
+                V v = f.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                if (v != null) {
+                    results.put(key, v);
+                }
+            } catch (TimeoutException e) {
+                f.cancel(true);
+                logger.warn("Lookup timed out for {}", key);
+            } catch (ExecutionException e) {
+                logger.warn("Lookup failed for " + key, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                f.cancel(true);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Stops the lookup pool. Called when the application stops.
+     */
+    synchronized public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    synchronized private ExecutorService getExecutor() {
+        if (executor == null) {
+            ThreadPoolExecutor tpe = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(queueSize), new NamedThreadFactory("hobson-rest-lookup"));
+            tpe.allowCoreThreadTimeOut(true);
+            executor = tpe;
+        }
+        return executor;
+    }
+}
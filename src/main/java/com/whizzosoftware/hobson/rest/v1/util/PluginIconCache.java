@@ -0,0 +1,105 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import com.whizzosoftware.hobson.api.image.ImageInputStream;
+import com.whizzosoftware.hobson.api.plugin.HobsonLocalPluginDescriptor;
+import com.whizzosoftware.hobson.api.plugin.PluginContext;
+import com.whizzosoftware.hobson.api.plugin.PluginManager;
+import org.apache.commons.codec.binary.Base64;
+import org.restlet.data.MediaType;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory cache of plugin icons. Each icon is read from the plugin manager once and held as both raw and
+ * base64-encoded CachedContent so it can be served with a strong ETag and 304 support.
+ *
+ * Entries are tied to the plugin version they were read from and all icons for a hub are discarded when a plugin is
+ * installed, reloaded or changes status.
+ */
+@Singleton
+public class PluginIconCache extends HubEventListener {
+    @Inject
+    PluginManager pluginManager;
+    @Inject
+    HubEventDispatcher eventDispatcher;
+
+    private final ConcurrentHashMap<String,Map<String,Icon>> icons = new ConcurrentHashMap<>();
+
+    /**
+     * Returns a plugin's icon.
+     *
+     * @param pctx the plugin context
+     * @param base64 whether to return the base64-encoded variant
+     *
+     * @return a CachedContent instance
+     */
+    public CachedContent getIcon(PluginContext pctx, boolean base64) {
+        Map<String,Icon> map = getHubMap(pctx.getHubContext());
+        String version = getVersion(pctx);
+        Icon icon = map.get(pctx.getPluginId());
+        if (icon == null || !version.equals(icon.version)) {
+            icon = loadIcon(pctx, version);
+            map.put(pctx.getPluginId(), icon);
+        }
+        return base64 ? icon.base64 : icon.raw;
+    }
+
+    @Override
+    public void onPluginChange(HubContext ctx) {
+        icons.remove(ctx.getHubId());
+    }
+
+    private Icon loadIcon(PluginContext pctx, String version) {
+        ImageInputStream iis = pluginManager.getLocalPluginIcon(pctx);
+        try {
+            MediaType mt = MediaType.valueOf(iis.getMediaType());
+            CachedContent raw = CachedContent.create(iis.getInputStream(), mt);
+            return new Icon(version, raw, new CachedContent(Base64.encodeBase64(raw.getData()), mt));
+        } finally {
+            iis.close();
+        }
+    }
+
+    private String getVersion(PluginContext pctx) {
+        HobsonLocalPluginDescriptor pd = pluginManager.getLocalPlugin(pctx);
+        return (pd != null && pd.getVersion() != null) ? pd.getVersion() : "";
+    }
+
+    private Map<String,Icon> getHubMap(HubContext hctx) {
+        Map<String,Icon> map = icons.get(hctx.getHubId());
+        if (map == null) {
+            eventDispatcher.addListener(hctx, this);
+            map = new ConcurrentHashMap<>();
+            Map<String,Icon> m = icons.putIfAbsent(hctx.getHubId(), map);
+            if (m != null) {
+                map = m;
+            }
+        }
+        return map;
+    }
+
+    static private class Icon {
+        final String version;
+        final CachedContent raw;
+        final CachedContent base64;
+
+        Icon(String version, CachedContent raw, CachedContent base64) {
+            this.version = version;
+            this.raw = raw;
+            this.base64 = base64;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.action.ActionManager;
+import com.whizzosoftware.hobson.api.device.DeviceContext;
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import com.whizzosoftware.hobson.api.hub.HubManager;
+import com.whizzosoftware.hobson.api.property.PropertyContainerClass;
+import com.whizzosoftware.hobson.api.property.PropertyContainerClassContext;
+import com.whizzosoftware.hobson.api.property.PropertyContainerClassProvider;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A shared PropertyContainerClassProvider that caches container class definitions so that mapping a DTO with many
+ * property containers (e.g. a task with many actions) only hits the hub manager once per distinct class.
+ *
+ * Cached classes for a hub are discarded when a plugin changes and cached classes for a device are discarded when
+ * the device is (re)published or removed.
+ */
+@Singleton
+public class PropertyContainerClassCache extends HubEventListener implements PropertyContainerClassProvider {
+    @Inject
+    HubManager hubManager;
+    @Inject
+    ActionManager actionManager;
+    @Inject
+    HubEventDispatcher eventDispatcher;
+
+    private final ConcurrentHashMap<String,Map<String,PropertyContainerClass>> containerClasses = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String,Map<String,PropertyContainerClass>> actionClasses = new ConcurrentHashMap<>();
+
+    private final PropertyContainerClassProvider actionClassProvider = new PropertyContainerClassProvider() {
+        @Override
+        public PropertyContainerClass getPropertyContainerClass(PropertyContainerClassContext ctx) {
+            return getActionClass(ctx);
+        }
+    };
+
+    @Override
+    public PropertyContainerClass getPropertyContainerClass(PropertyContainerClassContext ctx) {
+        Map<String,PropertyContainerClass> map = getHubMap(containerClasses, ctx.getHubContext());
+        String key = createKey(ctx);
+        PropertyContainerClass pcc = map.get(key);
+        if (pcc == null) {
+            RestMetrics.increment(RestMetrics.CONTAINER_CLASS_MISSES);
+            pcc = hubManager.getContainerClass(ctx);
+            if (pcc != null) {
+                map.put(key, pcc);
+            }
+        } else {
+            RestMetrics.increment(RestMetrics.CONTAINER_CLASS_HITS);
+        }
+        return pcc;
+    }
+
+    /**
+     * Returns an action class.
+     *
+     * @param ctx the action class context
+     *
+     * @return a PropertyContainerClass (or null if not found)
+     */
+    public PropertyContainerClass getActionClass(PropertyContainerClassContext ctx) {
+        Map<String,PropertyContainerClass> map = getHubMap(actionClasses, ctx.getHubContext());
+        String key = createKey(ctx);
+        PropertyContainerClass pcc = map.get(key);
+        if (pcc == null) {
+            RestMetrics.increment(RestMetrics.CONTAINER_CLASS_MISSES);
+            pcc = actionManager.getActionClass(ctx);
+            if (pcc != null) {
+                map.put(key, pcc);
+            }
+        } else {
+            RestMetrics.increment(RestMetrics.CONTAINER_CLASS_HITS);
+        }
+        return pcc;
+    }
+
+    /**
+     * Returns a provider that resolves container classes using action classes.
+     *
+     * @return a PropertyContainerClassProvider
+     */
+    public PropertyContainerClassProvider getActionClassProvider() {
+        return actionClassProvider;
+    }
+
+    @Override
+    public void onPluginChange(HubContext ctx) {
+        containerClasses.remove(ctx.getHubId());
+        actionClasses.remove(ctx.getHubId());
+    }
+
+    @Override
+    public void onDeviceAvailable(DeviceContext ctx) {
+        invalidateDevice(ctx);
+    }
+
+    @Override
+    public void onDeviceRemoved(DeviceContext ctx) {
+        invalidateDevice(ctx);
+    }
+
+    private void invalidateDevice(DeviceContext ctx) {
+        String prefix = ctx.getPluginId() + ":" + ctx.getDeviceId() + ":";
+        invalidatePrefix(containerClasses.get(ctx.getHubContext().getHubId()), prefix);
+        invalidatePrefix(actionClasses.get(ctx.getHubContext().getHubId()), prefix);
+    }
+
+    private void invalidatePrefix(Map<String,PropertyContainerClass> map, String prefix) {
+        if (map != null) {
+            Iterator<String> it = map.keySet().iterator();
+            while (it.hasNext()) {
+                if (it.next().startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private Map<String,PropertyContainerClass> getHubMap(ConcurrentHashMap<String,Map<String,PropertyContainerClass>> maps, HubContext hctx) {
+        Map<String,PropertyContainerClass> map = maps.get(hctx.getHubId());
+        if (map == null) {
+            eventDispatcher.addListener(hctx, this);
+            map = new ConcurrentHashMap<>();
+            Map<String,PropertyContainerClass> m = maps.putIfAbsent(hctx.getHubId(), map);
+            if (m != null) {
+                map = m;
+            }
+        }
+        return map;
+    }
+
+    static String createKey(PropertyContainerClassContext ctx) {
+        return ctx.getPluginId() + ":" + ctx.getDeviceId() + ":" + ctx.getContainerClassId();
+    }
+}
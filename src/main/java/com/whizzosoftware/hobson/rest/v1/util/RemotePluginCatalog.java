@@ -0,0 +1,212 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import com.whizzosoftware.hobson.api.plugin.HobsonPluginDescriptor;
+import com.whizzosoftware.hobson.api.plugin.PluginManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A stale-while-revalidate cache of each hub's remote plugin catalog (the plugins available from its remote
+ * repositories and their latest versions).
+ *
+ * Callers always receive the most recently fetched catalog without waiting on repository I/O. A refresh is started
+ * in the background when a catalog is older than the number of milliseconds set with the
+ * "hobson.rest.remotePluginRefresh" system property or when the repository list changes. A change that arrives while
+ * a refresh is in progress causes another refresh once it completes. The exception is a hub's first fetch: callers
+ * wait up to the number of milliseconds set with the "hobson.rest.remotePluginFirstFetchTimeout" system property for
+ * it to complete and only receive an empty catalog if it takes longer than that (or fails).
+ *
+ * A failed fetch keeps the previous catalog and is retried after the number of milliseconds set with the
+ * "hobson.rest.remotePluginRetry" system property, doubling with each consecutive failure up to the refresh interval.
+ * Each hub's fetches run on their own thread so a slow repository only delays the hubs that use it.
+ */
+@Singleton
+public class RemotePluginCatalog {
+    private static final Logger logger = LoggerFactory.getLogger(RemotePluginCatalog.class);
+
+    static final long REFRESH_INTERVAL = Long.getLong("hobson.rest.remotePluginRefresh", 600000);
+    static final long FIRST_FETCH_TIMEOUT = Long.getLong("hobson.rest.remotePluginFirstFetchTimeout", 5000);
+    static final long RETRY_INTERVAL = Long.getLong("hobson.rest.remotePluginRetry", 5000);
+
+    @Inject
+    PluginManager pluginManager;
+
+    private final long firstFetchTimeout;
+    private final long retryInterval;
+    private final ConcurrentHashMap<String,Entry> entries = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+
+    public RemotePluginCatalog() {
+        this(FIRST_FETCH_TIMEOUT, RETRY_INTERVAL);
+    }
+
+    RemotePluginCatalog(long firstFetchTimeout, long retryInterval) {
+        this.firstFetchTimeout = firstFetchTimeout;
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * Returns the plugins available from a hub's remote repositories.
+     *
+     * @param hctx the hub context
+     *
+     * @return a Collection of plugin descriptors
+     */
+    public Collection<HobsonPluginDescriptor> getRemotePlugins(HubContext hctx) {
+        return getEntry(hctx).plugins;
+    }
+
+    /**
+     * Returns the latest remote version of each plugin.
+     *
+     * @param hctx the hub context
+     *
+     * @return a Map of plugin ID to version
+     */
+    public Map<String,String> getRemotePluginVersions(HubContext hctx) {
+        return getEntry(hctx).versions;
+    }
+
+    /**
+     * Refreshes all catalogs in the background (e.g. because a repository was added or removed). Existing catalogs
+     * continue to be served until their refresh completes.
+     */
+    public void refreshAll() {
+        for (Map.Entry<String,Entry> e : entries.entrySet()) {
+            refresh(HubContext.create(e.getKey()), e.getValue(), true);
+        }
+    }
+
+    private Entry getEntry(HubContext hctx) {
+        Entry e = entries.get(hctx.getHubId());
+        if (e == null) {
+            Entry ne = new Entry();
+            e = entries.putIfAbsent(hctx.getHubId(), ne);
+            if (e == null) {
+                e = ne;
+            }
+        }
+        if (System.currentTimeMillis() >= e.nextRefresh) {
+            refresh(hctx, e, false);
+        }
+        if (e.firstFetch.getCount() > 0) {
+            try {
+                if (!e.firstFetch.await(firstFetchTimeout, TimeUnit.MILLISECONDS)) {
+                    logger.debug("Timed out waiting for remote plugins for hub {}", hctx.getHubId());
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Starts a background refresh of a catalog if one isn't already in progress.
+     *
+     * @param hctx the hub context
+     * @param e the catalog entry
+     * @param force whether a refresh already in progress should be followed by another one (because it may have
+     *              started before the change that prompted this one)
+     */
+    private void refresh(final HubContext hctx, final Entry e, boolean force) {
+        if (force) {
+            e.dirty.set(true);
+        }
+        if (e.refreshing.compareAndSet(false, true)) {
+            getExecutor().submit(new Runnable() {
+                @Override
+                public void run() {
+                    e.dirty.set(false);
+                    try {
+                        List<HobsonPluginDescriptor> plugins = new ArrayList<>(pluginManager.getRemotePlugins(hctx));
+                        Map<String,String> versions = pluginManager.getRemotePluginVersions(hctx);
+                        e.plugins = Collections.unmodifiableList(plugins);
+                        e.versions = (versions != null) ? Collections.unmodifiableMap(new HashMap<>(versions)) : Collections.<String,String>emptyMap();
+                        e.failures = 0;
+                        e.nextRefresh = System.currentTimeMillis() + REFRESH_INTERVAL;
+                    } catch (Throwable t) {
+                        logger.error("Error refreshing remote plugins for hub " + hctx.getHubId(), t);
+                        // back off so an unreachable repository isn't retried on every request
+                        e.failures++;
+                        e.nextRefresh = System.currentTimeMillis() + getRetryDelay(e.failures);
+                    } finally {
+                        e.firstFetch.countDown();
+                        e.refreshing.set(false);
+                    }
+                    if (e.dirty.get()) {
+                        refresh(hctx, e, false);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the delay before a failed fetch is retried.
+     *
+     * @param failures the number of consecutive failures
+     *
+     * @return the delay in milliseconds
+     */
+    long getRetryDelay(int failures) {
+        long delay = retryInterval;
+        for (int i = 1; i < failures && delay < REFRESH_INTERVAL; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, REFRESH_INTERVAL);
+    }
+
+    /**
+     * Stops catalog refreshes. Called when the application stops.
+     */
+    synchronized public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    synchronized private ExecutorService getExecutor() {
+        if (executor == null) {
+            // at most one refresh per hub is in progress at a time, so this uses at most one thread per hub
+            executor = Executors.newCachedThreadPool(new NamedThreadFactory("hobson-rest-remote-plugins"));
+        }
+        return executor;
+    }
+
+    static private class Entry {
+        volatile Collection<HobsonPluginDescriptor> plugins = Collections.emptyList();
+        volatile Map<String,String> versions = Collections.emptyMap();
+        volatile long nextRefresh;
+        volatile int failures;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+        final AtomicBoolean dirty = new AtomicBoolean();
+        final CountDownLatch firstFetch = new CountDownLatch(1);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simple process-wide counters for REST-layer optimizations (coalescing, caching, etc.) so their effectiveness can
+ * be observed through the metrics resource.
+ */
+public class RestMetrics {
+    public static final String VARIABLE_WRITES_RECEIVED = "variableWrites.received";
+    public static final String VARIABLE_WRITES_SENT = "variableWrites.sent";
+    public static final String VARIABLE_WRITES_COALESCED = "variableWrites.coalesced";
+    public static final String ACTIONS_ADMITTED = "actions.admitted";
+    public static final String ACTIONS_REJECTED = "actions.rejected";
+    public static final String CONTAINER_CLASS_HITS = "containerClasses.hits";
+    public static final String CONTAINER_CLASS_MISSES = "containerClasses.misses";
+    public static final String DTO_MEMO_HITS = "dtoMemo.hits";
+    public static final String DTO_MEMO_MISSES = "dtoMemo.misses";
+
+    static final ConcurrentHashMap<String,AtomicLong> counters = new ConcurrentHashMap<>();
+
+    static public void increment(String name) {
+        add(name, 1);
+    }
+
+    static public void add(String name, long delta) {
+        AtomicLong l = counters.get(name);
+        if (l == null) {
+            AtomicLong nl = new AtomicLong();
+            l = counters.putIfAbsent(name, nl);
+            if (l == null) {
+                l = nl;
+            }
+        }
+        l.addAndGet(delta);
+    }
+
+    static public long get(String name) {
+        AtomicLong l = counters.get(name);
+        return (l != null) ? l.get() : 0;
+    }
+
+    /**
+     * Returns the ratio of two counters (or 0 if the denominator is 0).
+     *
+     * @param numerator the numerator counter name
+     * @param denominator the denominator counter name
+     *
+     * @return a double
+     */
+    static public double ratio(String numerator, String denominator) {
+        long d = get(denominator);
+        return (d > 0) ? (double)get(numerator) / d : 0;
+    }
+
+    /**
+     * Returns a sorted point-in-time copy of all counters.
+     *
+     * @return a Map of counter name to value
+     */
+    static public Map<String,Long> snapshot() {
+        Map<String,Long> map = new TreeMap<>();
+        for (Map.Entry<String,AtomicLong> e : counters.entrySet()) {
+            map.put(e.getKey(), e.getValue().get());
+        }
+        return map;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Releases the threads and event registrations held by the REST-layer singletons so that nothing outlives the
+ * application when its bundle is stopped or reloaded.
+ */
+@Singleton
+public class RestServices {
+    private static final Logger logger = LoggerFactory.getLogger(RestServices.class);
+
+    @Inject
+    HubEventDispatcher eventDispatcher;
+    @Inject
+    DeviceVariableWriteCoalescer writeCoalescer;
+    @Inject
+    VariableUpdateWaiter updateWaiter;
+    @Inject
+    JobWatcher jobWatcher;
+    @Inject
+    BackgroundJobs backgroundJobs;
+    @Inject
+    ImageVariants imageVariants;
+    @Inject
+    RemotePluginCatalog remotePluginCatalog;
+    @Inject
+    ParallelLookup parallelLookup;
+
+    public void shutdown() {
+        logger.debug("Shutting down REST services");
+
+        // stop receiving events first so nothing new gets scheduled on the executors below
+        eventDispatcher.shutdown();
+        writeCoalescer.shutdown();
+        updateWaiter.shutdown();
+        jobWatcher.shutdown();
+        backgroundJobs.shutdown();
+        imageVariants.shutdown();
+        remotePluginCatalog.shutdown();
+        parallelLookup.shutdown();
+    }
+}
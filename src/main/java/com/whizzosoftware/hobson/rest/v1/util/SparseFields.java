@@ -0,0 +1,236 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.json.JSONAttributes;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A parsed representation of a "fields" query parameter (e.g. "name,variables.on,cclass") that allows a client to
+ * request a subset of a DTO's attributes. Dotted names address nested attributes and are stored as a tree so a
+ * single parse can be applied to an entire response.
+ *
+ * For item lists, the fields apply to each list item. List items can be selected by their "name" attribute with
+ * brackets (e.g. "variables[on]" or "variables[on].value"), in which case only the selected items are retained and
+ * any fields following the selector apply to them.
+ *
+ * Attributes that start with "@" (such as the entity ID) are always retained with the exception of the ID template
+ * map, which must be requested explicitly.
+ */
+public class SparseFields {
+    public static final String ITEM_LIST_ELEMENT = "itemListElement";
+    public static final String NUMBER_OF_ITEMS = "numberOfItems";
+
+    private Map<String,SparseFields> children;
+    private Map<String,SparseFields> selections;
+
+    public SparseFields(String fields) {
+        if (fields != null) {
+            for (String f : fields.split(",")) {
+                f = f.trim();
+                if (f.length() > 0) {
+                    SparseFields node = this;
+                    for (String s : f.split("\\.")) {
+                        int ix = s.indexOf('[');
+                        if (ix > -1 && s.endsWith("]")) {
+                            if (ix > 0) {
+                                node = node.addChild(s.substring(0, ix));
+                            }
+                            node = node.addSelection(s.substring(ix + 1, s.length() - 1));
+                        } else if (s.length() > 0) {
+                            node = node.addChild(s);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private SparseFields() {
+    }
+
+    /**
+     * Indicates whether any fields were specified. If not, no filtering should take place.
+     *
+     * @return a boolean
+     */
+    public boolean isEmpty() {
+        return ((children == null || children.isEmpty()) && (selections == null || selections.isEmpty()));
+    }
+
+    /**
+     * Indicates whether a top-level field was requested. This always returns true if no fields were specified.
+     *
+     * @param name the field name
+     *
+     * @return a boolean
+     */
+    public boolean has(String name) {
+        return (isEmpty() || (children != null && children.containsKey(name)));
+    }
+
+    /**
+     * Indicates whether the ID template map should be included in the response.
+     *
+     * @return a boolean
+     */
+    public boolean includeIdTemplateMap() {
+        return has(JSONAttributes.AIDT);
+    }
+
+    public SparseFields getChild(String name) {
+        return (children != null) ? children.get(name) : null;
+    }
+
+    /**
+     * Restricts an "expand" query parameter to the expansions that can contribute to the requested fields so that
+     * the DTO builders don't perform work that will be discarded.
+     *
+     * @param expand the expand query parameter value
+     * @param itemPrefix the prefix the expansions use to refer to list items (or null if not a list)
+     *
+     * @return the restricted expand value (or null if no expansions remain)
+     */
+    public String restrictExpansions(String expand, String itemPrefix) {
+        if (expand == null || isEmpty()) {
+            return expand;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (String e : expand.split(",")) {
+            e = e.trim();
+            String rel = e;
+            if (itemPrefix != null) {
+                if (e.equals(itemPrefix)) {
+                    rel = null;
+                } else if (e.startsWith(itemPrefix + ".")) {
+                    rel = e.substring(itemPrefix.length() + 1);
+                }
+            }
+            if (rel == null || has(rel.split("\\.")[0])) {
+                if (sb.length() > 0) {
+                    sb.append(",");
+                }
+                sb.append(e);
+            }
+        }
+
+        return (sb.length() > 0) ? sb.toString() : null;
+    }
+
+    /**
+     * Returns a copy of a JSON object containing only the requested fields.
+     *
+     * @param json the JSON object to filter
+     *
+     * @return a new JSONObject (or the original if no fields were specified)
+     */
+    public JSONObject filter(JSONObject json) {
+        if (isEmpty() || json == null) {
+            return json;
+        }
+
+        JSONObject result = new JSONObject();
+
+        // item lists are transparent -- the fields apply to the list items
+        if (json.has(ITEM_LIST_ELEMENT)) {
+            for (Object o : json.keySet()) {
+                String key = (String)o;
+                if (ITEM_LIST_ELEMENT.equals(key)) {
+                    result.put(key, filterItemList(json.getJSONArray(key)));
+                } else if (!JSONAttributes.AIDT.equals(key) || includeIdTemplateMap()) {
+                    result.put(key, json.get(key));
+                }
+            }
+            return result;
+        }
+
+        for (Object o : json.keySet()) {
+            String key = (String)o;
+            if (JSONAttributes.AIDT.equals(key)) {
+                if (includeIdTemplateMap()) {
+                    result.put(key, json.get(key));
+                }
+            } else if (key.startsWith("@")) {
+                result.put(key, json.get(key));
+            } else if (children != null && children.containsKey(key)) {
+                result.put(key, filterValue(children.get(key), json.get(key)));
+            }
+        }
+
+        return result;
+    }
+
+    private JSONArray filterItemList(JSONArray items) {
+        boolean selectByName = (selections != null && !selections.isEmpty());
+
+        JSONArray result = new JSONArray();
+        for (int i = 0; i < items.length(); i++) {
+            JSONObject element = items.getJSONObject(i);
+            JSONObject item = element.optJSONObject(JSONAttributes.ITEM);
+            if (item == null) {
+                result.put(element);
+            } else if (selectByName) {
+                SparseFields child = selections.get(item.optString(JSONAttributes.NAME, null));
+                if (child != null) {
+                    result.put(new JSONObject().put(JSONAttributes.ITEM, child.filter(item)));
+                }
+            } else {
+                result.put(new JSONObject().put(JSONAttributes.ITEM, filter(item)));
+            }
+        }
+        return result;
+    }
+
+    private Object filterValue(SparseFields node, Object value) {
+        if (node.isEmpty()) {
+            return value;
+        } else if (value instanceof JSONObject) {
+            return node.filter((JSONObject)value);
+        } else if (value instanceof JSONArray) {
+            JSONArray a = (JSONArray)value;
+            JSONArray result = new JSONArray();
+            for (int i = 0; i < a.length(); i++) {
+                result.put(filterValue(node, a.get(i)));
+            }
+            return result;
+        } else {
+            return value;
+        }
+    }
+
+    private SparseFields addSelection(String itemName) {
+        if (selections == null) {
+            selections = new HashMap<>();
+        }
+        SparseFields child = selections.get(itemName);
+        if (child == null) {
+            child = new SparseFields();
+            selections.put(itemName, child);
+        }
+        return child;
+    }
+
+    private SparseFields addChild(String name) {
+        if (children == null) {
+            children = new HashMap<>();
+        }
+        SparseFields child = children.get(name);
+        if (child == null) {
+            child = new SparseFields();
+            children.put(name, child);
+        }
+        return child;
+    }
+}
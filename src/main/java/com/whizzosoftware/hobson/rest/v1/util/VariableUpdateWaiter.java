@@ -0,0 +1,250 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.HobsonInvalidRequestException;
+import com.whizzosoftware.hobson.api.event.device.DeviceVariableUpdate;
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import com.whizzosoftware.hobson.api.variable.DeviceVariableContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Allows a request to be notified when one or more device variables have taken on requested values without tying
+ * up a thread while it waits. A variable is only confirmed by an update that reports the requested value; any other
+ * update (e.g. an intermediate state or another client's write) is ignored. Callbacks are invoked exactly once,
+ * either from the event thread when the last variable is confirmed, from a timer thread when the timeout expires
+ * or from the thread that shuts the waiter down.
+ */
+@Singleton
+public class VariableUpdateWaiter extends HubEventListener {
+    private static final Logger logger = LoggerFactory.getLogger(VariableUpdateWaiter.class);
+
+    public static final long MAX_WAIT = 30000;
+
+    @Inject
+    HubEventDispatcher eventDispatcher;
+
+    private final Map<String,List<Waiter>> waiters = new HashMap<>();
+    private ScheduledExecutorService executor;
+
+    /**
+     * Callback interface for wait completion.
+     */
+    public interface Callback {
+        /**
+         * Called when the wait has completed.
+         *
+         * @param confirmed true if all variables were updated; false if the wait timed out
+         */
+        void onComplete(boolean confirmed);
+
+        /**
+         * Called instead of onComplete when the wait is abandoned because the application is stopping.
+         */
+        void onCancel();
+    }
+
+    /**
+     * Parses a wait query parameter.
+     *
+     * @param s the parameter value (may be null)
+     *
+     * @return the number of milliseconds to wait (0 if no wait was requested)
+     */
+    static public long parseWait(String s) {
+        if (s != null) {
+            try {
+                long l = Long.parseLong(s);
+                if (l >= 0) {
+                    return Math.min(l, MAX_WAIT);
+                }
+            } catch (NumberFormatException ignored) {
+            }
+            throw new HobsonInvalidRequestException("Invalid wait value: " + s);
+        }
+        return 0;
+    }
+
+    /**
+     * Waits for a set of variables to be updated to the requested values. This must be called before the update
+     * request is sent so that no update is missed.
+     *
+     * @param hctx the hub context
+     * @param values the requested values of the variables to wait for
+     * @param timeout the maximum time to wait in milliseconds
+     * @param callback the callback to invoke on completion
+     */
+    public void waitForUpdate(HubContext hctx, Map<DeviceVariableContext,Object> values, long timeout, Callback callback) {
+        eventDispatcher.addListener(hctx, this);
+
+        final Waiter w = new Waiter(values, callback);
+        synchronized (waiters) {
+            for (String key : w.values.keySet()) {
+                List<Waiter> l = waiters.get(key);
+                if (l == null) {
+                    l = new ArrayList<>();
+                    waiters.put(key, l);
+                }
+                l.add(w);
+            }
+        }
+
+        getExecutor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                complete(w, false);
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onDeviceVariablesUpdate(HubContext ctx, Collection<DeviceVariableUpdate> updates) {
+        List<Waiter> confirmed = null;
+
+        synchronized (waiters) {
+            for (DeviceVariableUpdate u : updates) {
+                String key = createKey(u.getContext());
+                List<Waiter> l = waiters.get(key);
+                if (l != null) {
+                    for (Waiter w : l) {
+                        // an update with any other value (e.g. an intermediate state) doesn't confirm the request
+                        if (matches(w.values.get(key), u.getNewValue()) && w.remaining.remove(key) && w.remaining.isEmpty()) {
+                            if (confirmed == null) {
+                                confirmed = new ArrayList<>();
+                            }
+                            confirmed.add(w);
+                        }
+                    }
+                }
+            }
+        }
+
+        if (confirmed != null) {
+            for (Waiter w : confirmed) {
+                complete(w, true);
+            }
+        }
+    }
+
+    private void complete(Waiter w, boolean confirmed) {
+        if (w.completed.compareAndSet(false, true)) {
+            synchronized (waiters) {
+                for (String key : w.values.keySet()) {
+                    List<Waiter> l = waiters.get(key);
+                    if (l != null) {
+                        l.remove(w);
+                        if (l.isEmpty()) {
+                            waiters.remove(key);
+                        }
+                    }
+                }
+            }
+            try {
+                w.callback.onComplete(confirmed);
+            } catch (Exception e) {
+                logger.error("Error completing variable update wait", e);
+            }
+        }
+    }
+
+    /**
+     * Stops the timeout timer and cancels every wait still in progress so that no parked response is left
+     * uncommitted. Called when the application stops.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+
+        Set<Waiter> pending = new HashSet<>();
+        synchronized (waiters) {
+            for (List<Waiter> l : waiters.values()) {
+                pending.addAll(l);
+            }
+            waiters.clear();
+        }
+        for (Waiter w : pending) {
+            if (w.completed.compareAndSet(false, true)) {
+                try {
+                    w.callback.onCancel();
+                } catch (Exception e) {
+                    logger.error("Error cancelling variable update wait", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Indicates whether a reported variable value matches a requested one. Values are compared numerically when both
+     * are numbers and by their string form otherwise since the requested value comes from JSON and may not have the
+     * same type as the one the device reports (e.g. "true" vs. true or 50 vs. 50.0).
+     *
+     * @param requested the requested value
+     * @param actual the reported value
+     *
+     * @return a boolean
+     */
+    static boolean matches(Object requested, Object actual) {
+        if (requested == null || actual == null) {
+            return (requested == actual);
+        } else if (requested.equals(actual)) {
+            return true;
+        } else if (requested instanceof Number && actual instanceof Number) {
+            return (((Number)requested).doubleValue() == ((Number)actual).doubleValue());
+        } else {
+            return requested.toString().equals(actual.toString());
+        }
+    }
+
+    synchronized private ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("hobson-rest-waiter"));
+        }
+        return executor;
+    }
+
+    static String createKey(DeviceVariableContext vctx) {
+        return vctx.getHubContext().getHubId() + ":" + vctx.getPluginId() + ":" + vctx.getDeviceId() + ":" + vctx.getName();
+    }
+
+    private class Waiter {
+        final Map<String,Object> values = new LinkedHashMap<>();
+        final Set<String> remaining = new HashSet<>();
+        final Callback callback;
+        final AtomicBoolean completed = new AtomicBoolean(false);
+
+        Waiter(Map<DeviceVariableContext,Object> values, Callback callback) {
+            for (Map.Entry<DeviceVariableContext,Object> e : values.entrySet()) {
+                this.values.put(createKey(e.getKey()), e.getValue());
+            }
+            this.remaining.addAll(this.values.keySet());
+            this.callback = callback;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.dto.context;
+
+import com.whizzosoftware.hobson.api.device.DeviceContext;
+import com.whizzosoftware.hobson.api.device.DeviceManager;
+import com.whizzosoftware.hobson.api.device.DeviceType;
+import com.whizzosoftware.hobson.api.device.HobsonDeviceDescriptor;
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import com.whizzosoftware.hobson.api.variable.DeviceVariableContext;
+import com.whizzosoftware.hobson.api.variable.DeviceVariableState;
+import com.whizzosoftware.hobson.rest.v1.util.ManagerStub;
+import com.whizzosoftware.hobson.rest.v1.util.RestMetrics;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MediaProxyDTOBuildContextTest {
+    private final HubContext hctx = HubContext.createLocal();
+    private ManagerStub<DeviceManager> deviceManager;
+    private MediaProxyDTOBuildContext ctx;
+
+    @Before
+    public void setUp() {
+        deviceManager = new ManagerStub<>(DeviceManager.class).on("getDevice", new ManagerStub.Answer() {
+            @Override
+            public Object answer(Object[] args) {
+                return new HobsonDeviceDescriptor.Builder((DeviceContext)args[0]).type(DeviceType.LIGHTBULB).build();
+            }
+        });
+        ctx = (MediaProxyDTOBuildContext)new MediaProxyDTOBuildContext.Builder("/api/v1").build();
+        ctx.deviceManager = deviceManager.get();
+    }
+
+    @Test
+    public void testOneDeviceLookupPerRequest() {
+        DeviceContext dctx1 = DeviceContext.create(hctx, "plugin1", "device1");
+        DeviceContext dctx2 = DeviceContext.create(hctx, "plugin1", "device2");
+        long hits = RestMetrics.get(RestMetrics.DTO_MEMO_HITS);
+        long misses = RestMetrics.get(RestMetrics.DTO_MEMO_MISSES);
+
+        HobsonDeviceDescriptor d1 = ctx.getDevice(dctx1);
+        assertSame(d1, ctx.getDevice(dctx1));
+        assertSame(d1, ctx.getDevice(DeviceContext.create(hctx, "plugin1", "device1")));
+        ctx.getDevice(dctx2);
+        ctx.getDevice(dctx2);
+
+        assertEquals(2, deviceManager.getCalls("getDevice"));
+        assertEquals(3, RestMetrics.get(RestMetrics.DTO_MEMO_HITS) - hits);
+        assertEquals(2, RestMetrics.get(RestMetrics.DTO_MEMO_MISSES) - misses);
+    }
+
+    @Test
+    public void testStateMissCountsOnce() {
+        DeviceContext dctx = DeviceContext.create(hctx, "plugin1", "device1");
+        long hits = RestMetrics.get(RestMetrics.DTO_MEMO_HITS);
+        long misses = RestMetrics.get(RestMetrics.DTO_MEMO_MISSES);
+
+        // the device descriptor fetched for the state isn't counted separately
+        ctx.getDeviceVariableState(DeviceVariableContext.create(hctx, "plugin1", "device1", "on"));
+        assertEquals(0, RestMetrics.get(RestMetrics.DTO_MEMO_HITS) - hits);
+        assertEquals(1, RestMetrics.get(RestMetrics.DTO_MEMO_MISSES) - misses);
+
+        // but it is shared with later device lookups
+        int calls = deviceManager.getCalls("getDevice");
+        ctx.getDeviceVariableState(DeviceVariableContext.create(hctx, "plugin1", "device1", "level"));
+        ctx.getDevice(dctx);
+        assertEquals(calls, deviceManager.getCalls("getDevice"));
+        assertEquals(1, RestMetrics.get(RestMetrics.DTO_MEMO_HITS) - hits);
+        assertEquals(2, RestMetrics.get(RestMetrics.DTO_MEMO_MISSES) - misses);
+    }
+
+    @Test
+    public void testProxyStubKey() {
+        DeviceVariableContext vctx = DeviceVariableContext.create(hctx, "plugin1", "device1", "image");
+        MediaProxyDTOBuildContext.ProxyStubKey k = new MediaProxyDTOBuildContext.ProxyStubKey("/api/v1", vctx, 100L);
+
+        // an equal variable context from another request finds the same stub
+        assertEquals(k, new MediaProxyDTOBuildContext.ProxyStubKey("/api/v1", DeviceVariableContext.create(hctx, "plugin1", "device1", "image"), 100L));
+        assertEquals(k.hashCode(), new MediaProxyDTOBuildContext.ProxyStubKey("/api/v1", DeviceVariableContext.create(hctx, "plugin1", "device1", "image"), 100L).hashCode());
+
+        // but a stub is rebuilt once the variable has been updated
+        assertNotEquals(k, new MediaProxyDTOBuildContext.ProxyStubKey("/api/v1", vctx, 200L));
+        assertNotEquals(k, new MediaProxyDTOBuildContext.ProxyStubKey("/api/v1", vctx, null));
+        assertNotEquals(k, new MediaProxyDTOBuildContext.ProxyStubKey("/api/v2", vctx, 100L));
+    }
+
+    @Test
+    public void testProxyStubCacheEvictsLeastRecentlyUsed() {
+        MediaProxyDTOBuildContext.ProxyStubCache cache = new MediaProxyDTOBuildContext.ProxyStubCache(2);
+        MediaProxyDTOBuildContext.ProxyStubKey k1 = createStubKey("image1");
+        MediaProxyDTOBuildContext.ProxyStubKey k2 = createStubKey("image2");
+        MediaProxyDTOBuildContext.ProxyStubKey k3 = createStubKey("image3");
+        DeviceVariableState s1 = new DeviceVariableState(DeviceVariableContext.create(hctx, "plugin1", "device1", "image1"), "url1", 100L);
+
+        cache.put(k1, s1);
+        cache.put(k2, new DeviceVariableState(DeviceVariableContext.create(hctx, "plugin1", "device1", "image2"), "url2", 100L));
+
+        // reading k1 makes k2 the eldest entry
+        assertSame(s1, cache.get(k1));
+        cache.put(k3, new DeviceVariableState(DeviceVariableContext.create(hctx, "plugin1", "device1", "image3"), "url3", 100L));
+
+        assertEquals(2, cache.size());
+        assertSame(s1, cache.get(k1));
+        assertNull(cache.get(k2));
+        assertNotNull(cache.get(k3));
+    }
+
+    private MediaProxyDTOBuildContext.ProxyStubKey createStubKey(String name) {
+        return new MediaProxyDTOBuildContext.ProxyStubKey("/api/v1", DeviceVariableContext.create(hctx, "plugin1", "device1", name), 100L);
+    }
+}
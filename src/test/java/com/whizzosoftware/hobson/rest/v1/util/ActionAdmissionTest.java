@@ -0,0 +1,38 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import org.junit.Test;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.Status;
+
+import static org.junit.Assert.*;
+
+public class ActionAdmissionTest {
+    @Test
+    public void testTryAcquire() {
+        ActionAdmission aa = new ActionAdmission(2);
+
+        assertTrue(aa.tryAcquire(new Response(new Request())));
+        assertTrue(aa.tryAcquire(new Response(new Request())));
+        assertEquals(0, aa.getAvailable());
+
+        // the queue is full so the request should be rejected
+        Response response = new Response(new Request());
+        assertFalse(aa.tryAcquire(response));
+        assertEquals(Status.SERVER_ERROR_SERVICE_UNAVAILABLE, response.getStatus());
+        assertNotNull(response.getRetryAfter());
+
+        // releasing an admission should allow a new one
+        aa.release();
+        assertTrue(aa.tryAcquire(new Response(new Request())));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BackgroundJobsTest {
+    @Test
+    public void testSubmit() throws Exception {
+        BackgroundJobs jobs = new BackgroundJobs();
+        HubContext hctx = HubContext.createLocal();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+
+        String jobId = jobs.submit(hctx, new BackgroundJobs.Work() {
+            @Override
+            public void run(BackgroundJobs.Job job) throws Exception {
+                job.setTotal(2);
+                job.increment();
+                started.countDown();
+                proceed.await();
+                job.increment();
+            }
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        BackgroundJobs.Job job = jobs.getJob(hctx, jobId);
+        assertNotNull(job);
+        assertEquals(BackgroundJobs.RUNNING, job.getStatus());
+        assertEquals(1, job.getCompleted());
+
+        proceed.countDown();
+        waitForFinish(job);
+        assertEquals(BackgroundJobs.SUCCESS, job.getStatus());
+
+        JSONObject json = job.toJSON("/api/v1/hubs/local/jobs/" + jobId);
+        assertEquals(2, json.getJSONObject("progress").getInt("completed"));
+        assertEquals(2, json.getJSONObject("progress").getInt("total"));
+
+        // jobs are scoped to a hub
+        assertNull(jobs.getJob(HubContext.create("other"), jobId));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        BackgroundJobs jobs = new BackgroundJobs();
+        HubContext hctx = HubContext.createLocal();
+
+        String jobId = jobs.submit(hctx, new BackgroundJobs.Work() {
+            @Override
+            public void run(BackgroundJobs.Job job) throws Exception {
+                throw new Exception("oops");
+            }
+        });
+
+        BackgroundJobs.Job job = jobs.getJob(hctx, jobId);
+        waitForFinish(job);
+        assertEquals(BackgroundJobs.FAILED, job.getStatus());
+        assertEquals("oops", job.toJSON("id").getJSONArray("messages").getString(0));
+    }
+
+    @Test
+    public void testDeduplicateByKey() throws Exception {
+        BackgroundJobs jobs = new BackgroundJobs();
+        HubContext hctx = HubContext.createLocal();
+        final CountDownLatch proceed = new CountDownLatch(1);
+
+        BackgroundJobs.Work work = new BackgroundJobs.Work() {
+            @Override
+            public void run(BackgroundJobs.Job job) throws Exception {
+                proceed.await();
+                job.setResult("/api/v1/hubs/local/plugins/local/plugin1");
+            }
+        };
+
+        String jobId = jobs.submit(hctx, BackgroundJobs.PLUGIN_QUEUE, "install:plugin1:1.0.0", work);
+        String queuedId = jobs.submit(hctx, BackgroundJobs.PLUGIN_QUEUE, "install:plugin2:1.0.0", work);
+
+        // a repeated request shares the existing job while a different key queues behind it
+        assertEquals(jobId, jobs.submit(hctx, BackgroundJobs.PLUGIN_QUEUE, "install:plugin1:1.0.0", work));
+        assertNotEquals(jobId, queuedId);
+        assertEquals(BackgroundJobs.QUEUED, jobs.getJob(hctx, queuedId).getStatus());
+
+        proceed.countDown();
+        BackgroundJobs.Job job = jobs.getJob(hctx, jobId);
+        waitForFinish(job);
+        waitForFinish(jobs.getJob(hctx, queuedId));
+        assertEquals(BackgroundJobs.SUCCESS, job.getStatus());
+        assertEquals("/api/v1/hubs/local/plugins/local/plugin1", job.toJSON("id").getString("result"));
+
+        // once finished, the same key starts a new job
+        assertNotEquals(jobId, jobs.submit(hctx, BackgroundJobs.PLUGIN_QUEUE, "install:plugin1:1.0.0", work));
+    }
+
+    @Test
+    public void testHubsDoNotShareQueues() throws Exception {
+        BackgroundJobs jobs = new BackgroundJobs();
+        HubContext hctx1 = HubContext.createLocal();
+        HubContext hctx2 = HubContext.create("hub2");
+        final CountDownLatch proceed = new CountDownLatch(1);
+
+        String blockedId = jobs.submit(hctx1, new BackgroundJobs.Work() {
+            @Override
+            public void run(BackgroundJobs.Job job) throws Exception {
+                proceed.await();
+            }
+        });
+        String jobId = jobs.submit(hctx2, new BackgroundJobs.Work() {
+            @Override
+            public void run(BackgroundJobs.Job job) {}
+        });
+
+        // a long-running job on one hub doesn't hold up another hub's jobs
+        BackgroundJobs.Job job = jobs.getJob(hctx2, jobId);
+        waitForFinish(job);
+        assertEquals(BackgroundJobs.SUCCESS, job.getStatus());
+        assertEquals(0, jobs.getJob(hctx1, blockedId).getFinishTime());
+
+        proceed.countDown();
+        waitForFinish(jobs.getJob(hctx1, blockedId));
+        jobs.shutdown();
+    }
+
+    private void waitForFinish(BackgroundJobs.Job job) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (job.getFinishTime() == 0 && System.currentTimeMillis() - start < 5000) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import org.junit.Test;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.Encoding;
+import org.restlet.data.MediaType;
+import org.restlet.data.Preference;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.representation.Representation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class CachedContentTest {
+    @Test
+    public void testTagIsStableAndStrong() {
+        CachedContent c1 = new CachedContent("{\"foo\":\"bar\"}".getBytes(), MediaType.APPLICATION_JSON);
+        CachedContent c2 = CachedContent.create(new ByteArrayInputStream("{\"foo\":\"bar\"}".getBytes()), MediaType.APPLICATION_JSON);
+        CachedContent c3 = new CachedContent("{\"foo\":\"baz\"}".getBytes(), MediaType.APPLICATION_JSON);
+        assertEquals(c1.getTag(), c2.getTag());
+        assertFalse(c1.getTag().isWeak());
+        assertNotEquals(c1.getTag(), c3.getTag());
+    }
+
+    @Test
+    public void testGzipVariant() throws Exception {
+        byte[] data = "{\"foo\":\"bar\"}".getBytes();
+        CachedContent c = new CachedContent(data, MediaType.APPLICATION_JSON);
+
+        GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(c.getGzipData()));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buf = new byte[256];
+        int len;
+        while ((len = gis.read(buf)) > -1) {
+            baos.write(buf, 0, len);
+        }
+        assertArrayEquals(data, baos.toByteArray());
+
+        Request request = new Request();
+        request.getClientInfo().getAcceptedEncodings().add(new Preference<>(Encoding.GZIP));
+        Representation r = c.createRepresentation(request, new Response(request));
+        assertTrue(r.getEncodings().contains(Encoding.GZIP));
+        assertEquals(c.getGzipTag(), r.getTag());
+        assertNotEquals(c.getTag(), c.getGzipTag());
+
+        // either tag validates a conditional request
+        request = new Request();
+        request.getConditions().setNoneMatch(Collections.singletonList(new Tag(c.getGzipTag().getName(), false)));
+        Response response = new Response(request);
+        c.createRepresentation(request, response);
+        assertEquals(Status.REDIRECTION_NOT_MODIFIED, response.getStatus());
+    }
+
+    @Test
+    public void testCompressedImagesAreNotGzipped() {
+        CachedContent c = new CachedContent(new byte[] {1, 2, 3}, MediaType.IMAGE_PNG);
+        assertNull(c.getGzipData());
+        assertNull(c.getGzipTag());
+
+        Request request = new Request();
+        request.getClientInfo().getAcceptedEncodings().add(new Preference<>(Encoding.GZIP));
+        Representation r = c.createRepresentation(request, new Response(request));
+        assertTrue(r.getEncodings().isEmpty());
+        assertEquals(c.getTag(), r.getTag());
+
+        // uncompressed image formats still get a gzip variant
+        assertNotNull(new CachedContent("<svg/>".getBytes(), MediaType.IMAGE_SVG).getGzipData());
+        assertNotNull(new CachedContent(new byte[] {1, 2, 3}, MediaType.IMAGE_BMP).getGzipData());
+    }
+
+    @Test
+    public void testCreateRepresentation() {
+        CachedContent c = new CachedContent("{\"foo\":\"bar\"}".getBytes(), MediaType.APPLICATION_JSON);
+
+        // unconditional request
+        Request request = new Request();
+        Response response = new Response(request);
+        Representation r = c.createRepresentation(request, response);
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        assertEquals(c.getSize(), r.getSize());
+        assertTrue(r.getEncodings().isEmpty());
+
+        // conditional request with matching tag
+        request = new Request();
+        request.getConditions().setNoneMatch(Collections.singletonList(new Tag(c.getTag().getName(), false)));
+        response = new Response(request);
+        c.createRepresentation(request, response);
+        assertEquals(Status.REDIRECTION_NOT_MODIFIED, response.getStatus());
+
+        // conditional request with stale tag
+        request = new Request();
+        request.getConditions().setNoneMatch(Collections.singletonList(new Tag("stale", false)));
+        response = new Response(request);
+        c.createRepresentation(request, response);
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.device.DeviceContext;
+import com.whizzosoftware.hobson.api.event.device.DeviceVariableUpdate;
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import com.whizzosoftware.hobson.api.variable.DeviceVariableContext;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ChangeJournalTest {
+    @Test
+    public void testChanges() {
+        ChangeJournal journal = createJournal();
+        HubContext hctx = HubContext.createLocal();
+
+        // no token means a full snapshot is required
+        ChangeJournal.ChangeSet cs = journal.getChanges(hctx, null);
+        assertTrue(cs.isFullSnapshot());
+        String token = cs.getToken();
+
+        DeviceContext dctx = DeviceContext.create(hctx, "plugin1", "device1");
+        journal.onDeviceUpdated(dctx);
+        journal.record(hctx, ChangeJournal.TASK, "/api/v1/hubs/local/tasks/task1", ChangeJournal.UPDATED);
+        journal.onDeviceRemoved(dctx);
+
+        cs = journal.getChanges(hctx, token);
+        assertFalse(cs.isFullSnapshot());
+        assertNotEquals(token, cs.getToken());
+
+        // the two device changes should be collapsed into the most recent one
+        List<ChangeJournal.Change> changes = cs.getChanges();
+        assertEquals(2, changes.size());
+        assertEquals(ChangeJournal.TASK, changes.get(0).getType());
+        assertEquals(ChangeJournal.DEVICE, changes.get(1).getType());
+        assertEquals(ChangeJournal.REMOVED, changes.get(1).getAction());
+        assertEquals("/api/v1/hubs/local/plugins/local/plugin1/devices/device1", changes.get(1).getId());
+
+        // nothing new since the last sequence
+        cs = journal.getChanges(hctx, cs.getToken());
+        assertFalse(cs.isFullSnapshot());
+        assertEquals(0, cs.getChanges().size());
+
+        // unknown future sequences and malformed tokens require a full snapshot
+        String id = cs.getToken().substring(0, cs.getToken().lastIndexOf('.'));
+        assertTrue(journal.getChanges(hctx, id + ".1000").isFullSnapshot());
+        assertTrue(journal.getChanges(hctx, "12345").isFullSnapshot());
+    }
+
+    @Test
+    public void testTokenFromAnotherJournal() {
+        HubContext hctx = HubContext.createLocal();
+
+        // a token issued by a previous journal (e.g. before a restart) never matches, even if its sequence is in range
+        ChangeJournal old = createJournal();
+        old.record(hctx, ChangeJournal.TASK, "/api/v1/hubs/local/tasks/task1", ChangeJournal.UPDATED);
+        String token = old.getToken(hctx);
+
+        ChangeJournal journal = createJournal();
+        journal.record(hctx, ChangeJournal.TASK, "/api/v1/hubs/local/tasks/task1", ChangeJournal.UPDATED);
+        journal.record(hctx, ChangeJournal.TASK, "/api/v1/hubs/local/tasks/task2", ChangeJournal.UPDATED);
+        assertTrue(journal.getChanges(hctx, token).isFullSnapshot());
+    }
+
+    @Test
+    public void testInvalidate() {
+        ChangeJournal journal = createJournal();
+        HubContext hctx = HubContext.createLocal();
+        String token = journal.getToken(hctx);
+        journal.record(hctx, ChangeJournal.TASK, "/tasks/task1", ChangeJournal.UPDATED);
+
+        // a change the journal can't attribute (e.g. one reported by a hub event) requires a full snapshot
+        journal.onHubChange(hctx);
+        assertTrue(journal.getChanges(hctx, token).isFullSnapshot());
+
+        // but tokens issued after it are still served incrementally
+        token = journal.getToken(hctx);
+        journal.record(hctx, ChangeJournal.TASK, "/tasks/task2", ChangeJournal.UPDATED);
+        ChangeJournal.ChangeSet cs = journal.getChanges(hctx, token);
+        assertFalse(cs.isFullSnapshot());
+        assertEquals(1, cs.getChanges().size());
+        assertEquals("/tasks/task2", cs.getChanges().get(0).getId());
+    }
+
+    @Test
+    public void testVariableUpdatesNotJournaled() {
+        ChangeJournal journal = createJournal();
+        HubContext hctx = HubContext.createLocal();
+        String token = journal.getToken(hctx);
+
+        for (int i = 0; i < ChangeJournal.CAPACITY + 1; i++) {
+            journal.onDeviceVariablesUpdate(hctx, Collections.singletonList(new DeviceVariableUpdate(DeviceVariableContext.create(hctx, "plugin1", "device1", "on"), false, true)));
+        }
+
+        ChangeJournal.ChangeSet cs = journal.getChanges(hctx, token);
+        assertFalse(cs.isFullSnapshot());
+        assertEquals(0, cs.getChanges().size());
+    }
+
+    @Test
+    public void testExpiredSequence() {
+        ChangeJournal journal = createJournal();
+        HubContext hctx = HubContext.createLocal();
+
+        String token = journal.getToken(hctx);
+        String id = token.substring(0, token.lastIndexOf('.'));
+        for (int i = 0; i < ChangeJournal.CAPACITY + 1; i++) {
+            journal.record(hctx, ChangeJournal.TASK, "/api/v1/hubs/local/tasks/task" + i, ChangeJournal.UPDATED);
+        }
+
+        assertTrue(journal.getChanges(hctx, token).isFullSnapshot());
+        ChangeJournal.ChangeSet cs = journal.getChanges(hctx, id + ".1");
+        assertFalse(cs.isFullSnapshot());
+        assertEquals(ChangeJournal.CAPACITY, cs.getChanges().size());
+    }
+
+    private ChangeJournal createJournal() {
+        ChangeJournal journal = new ChangeJournal();
+        journal.idProvider = new RestResourceIdProvider();
+        journal.eventDispatcher = new HubEventDispatcher() {
+            @Override
+            public void addListener(HubContext hctx, HubEventListener listener) {
+            }
+        };
+        return journal;
+    }
+}
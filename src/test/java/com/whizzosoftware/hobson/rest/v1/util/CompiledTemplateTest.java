@@ -0,0 +1,41 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CompiledTemplateTest {
+    @Test
+    public void testFormat() {
+        CompiledTemplate t = new CompiledTemplate("/hubs/{hubId}/plugins/{pluginId}/devices/{deviceId}/media/{mediaId}", "hubId", "pluginId", "deviceId", "mediaId");
+        assertEquals("/api/v1/hubs/local/plugins/plugin1/devices/camera1/media/imageStatusUrl", t.format("/api/v1", "local", "plugin1", "camera1", "imageStatusUrl"));
+    }
+
+    @Test
+    public void testFormatWithDifferentValueOrder() {
+        CompiledTemplate t = new CompiledTemplate("{a}/x/{b}", "b", "a");
+        assertEquals("1/x/2", t.format("", "2", "1"));
+    }
+
+    @Test
+    public void testFormatWithNoVariables() {
+        assertEquals("/api/v1/hubs", new CompiledTemplate("/hubs").format("/api/v1"));
+    }
+
+    @Test
+    public void testUnknownVariable() {
+        try {
+            new CompiledTemplate("/hubs/{hubId}", "pluginId");
+            fail("Should have thrown exception");
+        } catch (IllegalArgumentException ignored) {}
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.HobsonInvalidRequestException;
+import com.whizzosoftware.hobson.json.JSONAttributes;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.restlet.data.Reference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CursorPageTest {
+    private static final CursorPage.KeyProvider<String> KEY_PROVIDER = new CursorPage.KeyProvider<String>() {
+        @Override
+        public String getKey(String item) {
+            return item;
+        }
+    };
+
+    @Test
+    public void testNoPaging() {
+        List<String> items = Arrays.asList("c", "a", "b");
+        CursorPage<String> page = CursorPage.create(items, KEY_PROVIDER, null, null);
+        assertEquals(items, page.getItems());
+        assertFalse(page.hasNext());
+
+        page = CursorPage.create(null, KEY_PROVIDER, null, 10);
+        assertEquals(0, page.getItems().size());
+    }
+
+    @Test
+    public void testPaging() {
+        List<String> items = new ArrayList<>(Arrays.asList("e", "c", "a", "d", "b"));
+
+        CursorPage<String> page = CursorPage.create(items, KEY_PROVIDER, null, 2);
+        assertEquals(Arrays.asList("a", "b"), page.getItems());
+        assertTrue(page.hasNext());
+        assertEquals("b", CursorPage.decodeCursor(page.getNextCursor()));
+
+        // an item removed before the cursor shouldn't affect the next page
+        items.remove("a");
+
+        page = CursorPage.create(items, KEY_PROVIDER, page.getNextCursor(), 2);
+        assertEquals(Arrays.asList("c", "d"), page.getItems());
+        assertTrue(page.hasNext());
+
+        page = CursorPage.create(items, KEY_PROVIDER, page.getNextCursor(), 2);
+        assertEquals(Arrays.asList("e"), page.getItems());
+        assertFalse(page.hasNext());
+    }
+
+    @Test
+    public void testParseLimit() {
+        assertNull(CursorPage.parseLimit(null));
+        assertEquals(20, (int)CursorPage.parseLimit("20"));
+        try {
+            CursorPage.parseLimit("0");
+            fail("Should have thrown exception");
+        } catch (HobsonInvalidRequestException ignored) {}
+        try {
+            CursorPage.parseLimit("foo");
+            fail("Should have thrown exception");
+        } catch (HobsonInvalidRequestException ignored) {}
+    }
+
+    @Test
+    public void testCursorEncoding() {
+        String key = "com.whizzosoftware.hobson.hub.hobson-hub-zwave:node/12";
+        String cursor = CursorPage.encodeCursor(key);
+        assertFalse(cursor.contains("/"));
+        assertFalse(cursor.contains("+"));
+        assertFalse(cursor.contains("="));
+        assertEquals(key, CursorPage.decodeCursor(cursor));
+
+        try {
+            CursorPage.decodeCursor("not a cursor!");
+            fail("Should have thrown exception");
+        } catch (HobsonInvalidRequestException ignored) {}
+    }
+
+    @Test
+    public void testAddNextLink() {
+        CursorPage<String> page = CursorPage.create(Arrays.asList("a", "b", "c"), KEY_PROVIDER, null, 2);
+        JSONObject json = new JSONObject();
+        page.addNextLink(json, new Reference("http://localhost:8182/api/v1/hubs/local/devices?limit=2&cursor=foo"));
+        String next = json.getJSONObject(JSONAttributes.LINKS).getString(CursorPage.NEXT);
+        assertEquals("/api/v1/hubs/local/devices?limit=2&cursor=" + page.getNextCursor(), next);
+
+        page = CursorPage.create(Arrays.asList("a", "b"), KEY_PROVIDER, null, 2);
+        json = new JSONObject();
+        page.addNextLink(json, new Reference("http://localhost:8182/api/v1/hubs/local/devices?limit=2"));
+        assertFalse(json.has(JSONAttributes.LINKS));
+    }
+}
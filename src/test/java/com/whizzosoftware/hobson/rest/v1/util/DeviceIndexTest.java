@@ -0,0 +1,193 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.device.DeviceContext;
+import com.whizzosoftware.hobson.api.device.DeviceManager;
+import com.whizzosoftware.hobson.api.device.DeviceType;
+import com.whizzosoftware.hobson.api.device.HobsonDeviceDescriptor;
+import com.whizzosoftware.hobson.api.event.EventManager;
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DeviceIndexTest {
+    private final HubContext hctx = HubContext.createLocal();
+    private final Map<String,HobsonDeviceDescriptor> devices = new LinkedHashMap<>();
+    private final List<String> kitchen = new ArrayList<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final AtomicInteger tagLoads = new AtomicInteger();
+    private ManagerStub<DeviceManager> deviceManager;
+    private DeviceIndex index;
+
+    @Before
+    public void setUp() {
+        addDevice("device1", DeviceType.LIGHTBULB);
+        addDevice("device2", DeviceType.LIGHTBULB);
+        addDevice("device3", DeviceType.SWITCH);
+        kitchen.add("device2");
+        kitchen.add("device3");
+
+        deviceManager = new ManagerStub<>(DeviceManager.class).on("getDevices", new ManagerStub.Answer() {
+            @Override
+            public Object answer(Object[] args) {
+                if (args.length == 1) {
+                    loads.incrementAndGet();
+                    return new ArrayList<>(devices.values());
+                } else {
+                    tagLoads.incrementAndGet();
+                    List<HobsonDeviceDescriptor> results = new ArrayList<>();
+                    if ("kitchen".equals(args[1])) {
+                        for (String id : kitchen) {
+                            results.add(devices.get(id));
+                        }
+                    }
+                    return results;
+                }
+            }
+        }).on("getDevice", new ManagerStub.Answer() {
+            @Override
+            public Object answer(Object[] args) {
+                return devices.get(((DeviceContext)args[0]).getDeviceId());
+            }
+        });
+
+        index = new DeviceIndex();
+        index.deviceManager = deviceManager.get();
+        index.eventDispatcher = new HubEventDispatcher();
+        index.eventDispatcher.eventManager = new ManagerStub<>(EventManager.class).get();
+    }
+
+    @Test
+    public void testLoadedOnce() {
+        assertEquals(3, index.getDevices(hctx, null, null, null).size());
+        assertEquals(2, index.getDevices(hctx, null, DeviceType.LIGHTBULB.toString(), null).size());
+        assertEquals(1, index.getDevices(hctx, null, DeviceType.SWITCH.toString(), null).size());
+        assertEquals(0, index.getDevices(hctx, null, DeviceType.CAMERA.toString(), null).size());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testTagSetsCachedUntilDeviceUpdated() {
+        assertIds(index.getDevices(hctx, null, null, "kitchen"), "device2", "device3");
+        assertIds(index.getDevices(hctx, null, DeviceType.LIGHTBULB.toString(), "kitchen"), "device2");
+        assertEquals(1, tagLoads.get());
+
+        // a metadata change may have changed tags so the tag set is fetched again
+        kitchen.remove("device3");
+        index.onDeviceUpdated(DeviceContext.create(hctx, "plugin1", "device3"));
+        assertIds(index.getDevices(hctx, null, null, "kitchen"), "device2");
+        assertEquals(2, tagLoads.get());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testIncrementalUpdates() {
+        index.getDevices(hctx, null, null, null);
+
+        // a newly available device is fetched on its own without reloading the hub
+        addDevice("device4", DeviceType.SWITCH);
+        index.onDeviceAvailable(DeviceContext.create(hctx, "plugin1", "device4"));
+        assertIds(index.getDevices(hctx, null, DeviceType.SWITCH.toString(), null), "device3", "device4");
+
+        devices.remove("device1");
+        index.onDeviceRemoved(DeviceContext.create(hctx, "plugin1", "device1"));
+        assertIds(index.getDevices(hctx, null, DeviceType.LIGHTBULB.toString(), null), "device2");
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testOrderPreserved() {
+        // results follow the DeviceManager's order rather than hash order, including after an update
+        addDevice("device0", DeviceType.LIGHTBULB);
+        assertOrder(index.getDevices(hctx, null, null, null), "device1", "device2", "device3", "device0");
+        index.onDeviceUpdated(DeviceContext.create(hctx, "plugin1", "device1"));
+        assertOrder(index.getDevices(hctx, null, DeviceType.LIGHTBULB.toString(), null), "device1", "device2", "device0");
+        assertOrder(index.getDevices(hctx, null, null, "kitchen"), "device2", "device3");
+    }
+
+    @Test
+    public void testUnavailableDeviceRevalidated() {
+        index.getDevices(hctx, null, null, null);
+
+        // a device that merely went offline stays in the index
+        index.onDeviceUnavailable(DeviceContext.create(hctx, "plugin1", "device1"));
+        assertIds(index.getDevices(hctx, null, DeviceType.LIGHTBULB.toString(), null), "device1", "device2");
+
+        // one the DeviceManager no longer knows is dropped
+        devices.remove("device2");
+        index.onDeviceUnavailable(DeviceContext.create(hctx, "plugin1", "device2"));
+        assertIds(index.getDevices(hctx, null, DeviceType.LIGHTBULB.toString(), null), "device1");
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testExpiredIndexReloads() {
+        index = new DeviceIndex(0);
+        index.deviceManager = deviceManager.get();
+        index.eventDispatcher = new HubEventDispatcher();
+        index.eventDispatcher.eventManager = new ManagerStub<>(EventManager.class).get();
+
+        index.getDevices(hctx, null, null, null);
+
+        // a device removed without any event is gone once the index is revalidated
+        devices.remove("device3");
+        assertIds(index.getDevices(hctx, null, null, null), "device1", "device2");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testPluginChangeReloads() {
+        index.getDevices(hctx, null, null, null);
+
+        // changes for another hub are ignored
+        index.onPluginChange(HubContext.create("hub2"));
+        index.getDevices(hctx, null, null, null);
+        assertEquals(1, loads.get());
+
+        addDevice("device4", DeviceType.LIGHTBULB);
+        index.onPluginChange(hctx);
+        assertEquals(3, index.getDevices(hctx, null, DeviceType.LIGHTBULB.toString(), null).size());
+        assertEquals(2, loads.get());
+    }
+
+    private void addDevice(String id, DeviceType type) {
+        devices.put(id, new HobsonDeviceDescriptor.Builder(DeviceContext.create(hctx, "plugin1", id)).type(type).build());
+    }
+
+    private void assertOrder(Collection<HobsonDeviceDescriptor> results, String... ids) {
+        List<String> actual = new ArrayList<>();
+        for (HobsonDeviceDescriptor d : results) {
+            actual.add(d.getContext().getDeviceId());
+        }
+        assertEquals(Arrays.asList(ids), actual);
+    }
+
+    private void assertIds(Collection<HobsonDeviceDescriptor> results, String... ids) {
+        List<String> actual = new ArrayList<>();
+        for (HobsonDeviceDescriptor d : results) {
+            actual.add(d.getContext().getDeviceId());
+        }
+        assertEquals(ids.length, actual.size());
+        for (String id : ids) {
+            assertTrue(actual.contains(id));
+        }
+    }
+}
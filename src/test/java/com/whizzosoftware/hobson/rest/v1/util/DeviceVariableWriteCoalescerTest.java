@@ -0,0 +1,141 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.device.DeviceContext;
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DeviceVariableWriteCoalescerTest {
+    @Test
+    public void testWindow() {
+        HubContext hctx = HubContext.createLocal();
+        DeviceContext dctx = DeviceContext.create(hctx, "plugin1", "device1");
+        MockCoalescer c = new MockCoalescer();
+        long coalesced = RestMetrics.get(RestMetrics.VARIABLE_WRITES_COALESCED);
+
+        // the first write is sent immediately and opens a window
+        c.submit(hctx, dctx, "level", 10);
+        assertEquals(1, c.sent.size());
+        assertEquals("level=10", c.sent.get(0));
+        assertEquals(1, c.scheduled.size());
+
+        // writes during the window are held and only the last one survives
+        c.submit(hctx, dctx, "level", 20);
+        c.submit(hctx, dctx, "level", 30);
+        c.submit(hctx, dctx, "level", 40);
+        assertEquals(1, c.sent.size());
+        assertEquals(coalesced + 2, RestMetrics.get(RestMetrics.VARIABLE_WRITES_COALESCED));
+
+        // closing the window sends the pending value and opens a new window
+        c.closeWindow(c.scheduled.get(0));
+        assertEquals(2, c.sent.size());
+        assertEquals("level=40", c.sent.get(1));
+        assertEquals(2, c.scheduled.size());
+
+        // closing a window with nothing pending ends it
+        c.closeWindow(c.scheduled.get(1));
+        assertEquals(2, c.sent.size());
+        assertEquals(2, c.scheduled.size());
+
+        // so the next write is sent immediately again
+        c.submit(hctx, dctx, "level", 50);
+        assertEquals(3, c.sent.size());
+        assertEquals("level=50", c.sent.get(2));
+    }
+
+    @Test
+    public void testVariablesHaveSeparateWindows() {
+        HubContext hctx = HubContext.createLocal();
+        DeviceContext dctx1 = DeviceContext.create(hctx, "plugin1", "device1");
+        DeviceContext dctx2 = DeviceContext.create(hctx, "plugin1", "device2");
+        MockCoalescer c = new MockCoalescer();
+
+        c.submit(hctx, dctx1, "level", 10);
+        c.submit(hctx, dctx1, "on", true);
+        c.submit(hctx, dctx2, "level", 20);
+        assertEquals(3, c.sent.size());
+        assertEquals(3, c.scheduled.size());
+
+        c.submit(hctx, dctx1, "level", 15);
+        c.submit(hctx, dctx2, "level", 25);
+        assertEquals(3, c.sent.size());
+
+        // closing one variable's window leaves the other pending
+        c.closeWindow(c.scheduled.get(0));
+        assertEquals(4, c.sent.size());
+        assertEquals("level=15", c.sent.get(3));
+        c.closeWindow(c.scheduled.get(1));
+        assertEquals(4, c.sent.size());
+        c.closeWindow(c.scheduled.get(2));
+        assertEquals(5, c.sent.size());
+        assertEquals("level=25", c.sent.get(4));
+    }
+
+    @Test
+    public void testMultiVariableWriteSupersedesPending() {
+        HubContext hctx = HubContext.createLocal();
+        DeviceContext dctx = DeviceContext.create(hctx, "plugin1", "device1");
+        MockCoalescer c = new MockCoalescer();
+
+        c.submit(hctx, dctx, "level", 10);
+        c.submit(hctx, dctx, "level", 20);
+        assertEquals(1, c.sent.size());
+
+        // a multi-variable write is sent immediately and discards the older pending value
+        Map<String,Object> values = new LinkedHashMap<>();
+        values.put("level", 30);
+        values.put("on", true);
+        c.submit(hctx, dctx, values);
+        assertEquals(2, c.sent.size());
+        assertEquals("level=30,on=true", c.sent.get(1));
+        assertEquals(2, c.scheduled.size());
+
+        // so closing the window sends nothing
+        c.closeWindow(c.scheduled.get(0));
+        assertEquals(2, c.sent.size());
+
+        // and later single writes are held by the window it opened
+        c.submit(hctx, dctx, "on", false);
+        assertEquals(2, c.sent.size());
+        c.closeWindow(c.scheduled.get(1));
+        assertEquals(3, c.sent.size());
+        assertEquals("on=false", c.sent.get(2));
+    }
+
+    private class MockCoalescer extends DeviceVariableWriteCoalescer {
+        final List<String> sent = new ArrayList<>();
+        final List<String> scheduled = new ArrayList<>();
+
+        @Override
+        void send(HubContext hctx, DeviceContext dctx, Map<String,Object> values) {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String,Object> e : values.entrySet()) {
+                if (sb.length() > 0) {
+                    sb.append(",");
+                }
+                sb.append(e.getKey()).append("=").append(e.getValue());
+            }
+            sent.add(sb.toString());
+        }
+
+        @Override
+        void scheduleClose(String key) {
+            scheduled.add(key);
+        }
+    }
+}
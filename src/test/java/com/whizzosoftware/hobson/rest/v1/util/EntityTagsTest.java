@@ -0,0 +1,115 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.restlet.Request;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.resource.ResourceException;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class EntityTagsTest {
+    private final AtomicReference<String> name = new AtomicReference<>("task1");
+    private final AtomicInteger writes = new AtomicInteger();
+
+    private final EntityTags.Renderer renderer = new EntityTags.Renderer() {
+        @Override
+        public JSONObject render() {
+            return (name.get() != null) ? new JSONObject().put("name", name.get()) : null;
+        }
+    };
+
+    @Test
+    public void testTagIsContentHash() {
+        Tag t1 = EntityTags.createTag(renderer.render());
+        assertFalse(t1.isWeak());
+        assertEquals(t1, EntityTags.createTag(renderer.render()));
+        name.set("task2");
+        assertNotEquals(t1, EntityTags.createTag(renderer.render()));
+    }
+
+    @Test
+    public void testConditionalWrite() {
+        EntityTags tags = new EntityTags();
+        Tag t1 = EntityTags.createTag(renderer.render());
+
+        // two writers with the same tag; only the first should succeed
+        tags.write("task1", createRequest(t1), renderer, createWrite("task1-a"));
+        assertEquals(1, writes.get());
+        try {
+            tags.write("task1", createRequest(t1), renderer, createWrite("task1-b"));
+            fail("Should have thrown exception");
+        } catch (ResourceException e) {
+            assertEquals(Status.CLIENT_ERROR_PRECONDITION_FAILED, e.getStatus());
+        }
+        assertEquals(1, writes.get());
+        assertEquals("task1-a", name.get());
+
+        // the second writer can retry with the new tag
+        tags.write("task1", createRequest(EntityTags.createTag(renderer.render())), renderer, createWrite("task1-b"));
+        assertEquals("task1-b", name.get());
+    }
+
+    @Test
+    public void testChangeMadeElsewhereIsDetected() {
+        EntityTags tags = new EntityTags();
+        Tag t1 = EntityTags.createTag(renderer.render());
+
+        // a change that didn't go through the REST API still invalidates the client's tag
+        name.set("changed by plugin");
+        try {
+            tags.write("task1", createRequest(t1), renderer, createWrite("task1-a"));
+            fail("Should have thrown exception");
+        } catch (ResourceException e) {
+            assertEquals(Status.CLIENT_ERROR_PRECONDITION_FAILED, e.getStatus());
+        }
+        assertEquals(0, writes.get());
+    }
+
+    @Test
+    public void testUnconditionalWrite() {
+        EntityTags tags = new EntityTags();
+        tags.write("task1", new Request(), renderer, createWrite("task1-a"));
+        tags.write("task1", createRequest(Tag.ALL), renderer, createWrite("task1-b"));
+        assertEquals(2, writes.get());
+
+        // a deleted resource matches nothing
+        name.set(null);
+        try {
+            tags.write("task1", createRequest(Tag.ALL), renderer, createWrite("task1-c"));
+            fail("Should have thrown exception");
+        } catch (ResourceException e) {
+            assertEquals(Status.CLIENT_ERROR_PRECONDITION_FAILED, e.getStatus());
+        }
+    }
+
+    private Runnable createWrite(final String newName) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                writes.incrementAndGet();
+                name.set(newName);
+            }
+        };
+    }
+
+    private Request createRequest(Tag tag) {
+        Request request = new Request();
+        request.getConditions().setMatch(Collections.singletonList(tag));
+        return request;
+    }
+}
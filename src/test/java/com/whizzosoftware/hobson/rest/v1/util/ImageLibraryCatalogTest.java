@@ -0,0 +1,101 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.event.EventManager;
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import com.whizzosoftware.hobson.api.image.ImageGroup;
+import com.whizzosoftware.hobson.api.image.ImageManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.restlet.data.MediaType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ImageLibraryCatalogTest {
+    private final HubContext hctx = HubContext.createLocal();
+    private final List<ImageGroup> groups = new ArrayList<>();
+    private ManagerStub<ImageManager> imageManager;
+    private ImageLibraryCatalog catalog;
+
+    @Before
+    public void setUp() {
+        groups.add(new ImageGroup("group1", "Group 1"));
+        groups.add(new ImageGroup("group2", "Group 2"));
+
+        imageManager = new ManagerStub<>(ImageManager.class).on("getImageLibraryGroups", new ManagerStub.Answer() {
+            @Override
+            public Object answer(Object[] args) {
+                return new ArrayList<>(groups);
+            }
+        }).on("getImageLibraryImageIds", new ManagerStub.Answer() {
+            @Override
+            public Object answer(Object[] args) {
+                String groupId = (String)args[1];
+                return Arrays.asList(groupId + "-image1", groupId + "-image2");
+            }
+        });
+
+        catalog = new ImageLibraryCatalog();
+        catalog.imageManager = imageManager.get();
+        catalog.eventDispatcher = new HubEventDispatcher();
+        catalog.eventDispatcher.eventManager = new ManagerStub<>(EventManager.class).get();
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        ImageLibraryCatalog.Catalog c = catalog.getCatalog(hctx);
+        assertEquals(2, c.getGroups().size());
+        assertEquals(Arrays.asList("group2-image1", "group2-image2"), c.getGroup("group2").getImageIds());
+        assertEquals(4, c.getImageIds().size());
+
+        assertSame(c, catalog.getCatalog(hctx));
+        assertEquals(1, imageManager.getCalls("getImageLibraryGroups"));
+        assertEquals(2, imageManager.getCalls("getImageLibraryImageIds"));
+
+        // each hub has its own catalog
+        catalog.getCatalog(HubContext.create("hub2"));
+        assertEquals(2, imageManager.getCalls("getImageLibraryGroups"));
+    }
+
+    @Test
+    public void testPluginChangeInvalidates() {
+        ImageLibraryCatalog.Catalog c1 = catalog.getCatalog(hctx);
+
+        catalog.onPluginChange(HubContext.create("hub2"));
+        assertSame(c1, catalog.getCatalog(hctx));
+
+        groups.add(new ImageGroup("group3", "Group 3"));
+        catalog.onPluginChange(hctx);
+        ImageLibraryCatalog.Catalog c2 = catalog.getCatalog(hctx);
+        assertNotSame(c1, c2);
+        assertEquals(3, c2.getGroups().size());
+        assertEquals(2, imageManager.getCalls("getImageLibraryGroups"));
+    }
+
+    @Test
+    public void testRenderedEviction() {
+        ImageLibraryCatalog.Catalog c = catalog.getCatalog(hctx);
+        for (int i = 0; i < ImageLibraryCatalog.MAX_RENDERED; i++) {
+            c.putRendered("key" + i, new CachedContent(("" + i).getBytes(), MediaType.APPLICATION_JSON));
+        }
+        assertNotNull(c.getRendered("key0"));
+
+        // the oldest rendering is dropped once the limit is reached
+        c.putRendered("new", new CachedContent("new".getBytes(), MediaType.APPLICATION_JSON));
+        assertNull(c.getRendered("key0"));
+        assertNotNull(c.getRendered("key1"));
+        assertNotNull(c.getRendered("new"));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.HobsonInvalidRequestException;
+import com.whizzosoftware.hobson.api.image.ImageInputStream;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ImageVariantsTest {
+    @Test
+    public void testComputeSize() {
+        assertArrayEquals(new int[] {200, 100}, ImageVariants.computeSize(800, 400, 200, 0));
+        assertArrayEquals(new int[] {100, 50}, ImageVariants.computeSize(800, 400, 200, 50));
+        assertArrayEquals(new int[] {400, 200}, ImageVariants.computeSize(800, 400, 0, 200));
+        // never enlarged
+        assertArrayEquals(new int[] {800, 400}, ImageVariants.computeSize(800, 400, 1000, 1000));
+        assertArrayEquals(new int[] {800, 400}, ImageVariants.computeSize(800, 400, 0, 0));
+    }
+
+    @Test
+    public void testScale() throws IOException {
+        byte[] data = ImageVariants.scale(new ByteArrayInputStream(createImage(640, 480)), 64, 0, "jpeg");
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
+        assertEquals(64, img.getWidth());
+        assertEquals(48, img.getHeight());
+    }
+
+    @Test
+    public void testParseSpec() {
+        assertNull(ImageVariants.Spec.parse(null, null, null));
+        ImageVariants.Spec spec = ImageVariants.Spec.parse("200", null, "JPG");
+        assertEquals(200, spec.getWidth());
+        assertEquals(0, spec.getHeight());
+        assertEquals("jpeg", spec.getFormat());
+        assertEquals("png", ImageVariants.Spec.parse("10", null, null).resolveFormat("image/svg+xml"));
+        assertEquals("gif", ImageVariants.Spec.parse("10", null, null).resolveFormat("image/gif"));
+
+        try {
+            ImageVariants.Spec.parse("0", null, null);
+            fail("Should have thrown exception");
+        } catch (HobsonInvalidRequestException ignored) {}
+        try {
+            ImageVariants.Spec.parse(null, "abc", null);
+            fail("Should have thrown exception");
+        } catch (HobsonInvalidRequestException ignored) {}
+        try {
+            ImageVariants.Spec.parse(null, null, "tiff");
+            fail("Should have thrown exception");
+        } catch (HobsonInvalidRequestException ignored) {}
+    }
+
+    @Test
+    public void testCaching() throws Exception {
+        File dir = Files.createTempDirectory("variants").toFile();
+        final byte[] image = createImage(320, 240);
+        final AtomicInteger opens = new AtomicInteger();
+        ImageVariants.Source source = new ImageVariants.Source() {
+            @Override
+            public ImageInputStream open() {
+                opens.incrementAndGet();
+                return new ImageInputStream("image/png", new ByteArrayInputStream(image));
+            }
+        };
+        ImageVariants.Spec spec = ImageVariants.Spec.parse("32", null, null);
+
+        // first generation reads the source once and populates both caches
+        ImageVariants iv = new ImageVariants(dir, 1024 * 1024, 10, 60000);
+        CachedContent c = iv.generate("hub:local", source, spec);
+        assertEquals(1, opens.get());
+        assertEquals("image/png", c.getMediaType().toString());
+        assertSame(c, iv.getCached("hub:local", spec));
+        assertEquals(1, dir.listFiles().length);
+
+        // a new instance is served from disk once the source hash is known
+        ImageVariants iv2 = new ImageVariants(dir, 1024 * 1024, 10, 60000);
+        assertNull(iv2.getCached("hub:local", spec));
+        CachedContent c2 = iv2.generate("hub:local", source, spec);
+        assertEquals(2, opens.get());
+        assertEquals(c.getTag(), c2.getTag());
+        assertEquals(1, dir.listFiles().length);
+
+        // invalidating the source forgets its hash
+        iv2.invalidate("hub:local");
+        assertNull(iv2.getCached("hub:local", spec));
+    }
+
+    @Test
+    public void testSourceRevalidation() throws Exception {
+        File dir = Files.createTempDirectory("variants").toFile();
+        final AtomicReference<byte[]> image = new AtomicReference<>(createImage(320, 240));
+        final AtomicInteger opens = new AtomicInteger();
+        ImageVariants.Source source = new ImageVariants.Source() {
+            @Override
+            public ImageInputStream open() {
+                opens.incrementAndGet();
+                return new ImageInputStream("image/png", new ByteArrayInputStream(image.get()));
+            }
+        };
+        ImageVariants.Spec spec = ImageVariants.Spec.parse("32", null, null);
+
+        // with no TTL the source hash is never trusted so every lookup re-reads the source
+        ImageVariants iv = new ImageVariants(dir, 1024 * 1024, 10, 0);
+        CachedContent c = iv.generate("lib:local:1", source, spec);
+        assertNull(iv.getCached("lib:local:1", spec));
+
+        // an unchanged source hashes the same and is served from memory
+        assertSame(c, iv.generate("lib:local:1", source, spec));
+        assertEquals(2, opens.get());
+
+        // a source replaced without an invalidate() call is picked up
+        image.set(createImage(160, 240));
+        CachedContent c2 = iv.generate("lib:local:1", source, spec);
+        assertNotEquals(c.getTag(), c2.getTag());
+    }
+
+    @Test
+    public void testDiskPruning() throws Exception {
+        File dir = Files.createTempDirectory("variants").toFile();
+        final byte[] image = createImage(100, 100);
+        ImageVariants.Source source = new ImageVariants.Source() {
+            @Override
+            public ImageInputStream open() {
+                return new ImageInputStream("image/png", new ByteArrayInputStream(image));
+            }
+        };
+        ImageVariants iv = new ImageVariants(dir, 1024 * 1024, 2, 60000);
+        for (int i = 1; i <= 4; i++) {
+            iv.generate("lib:local:1", source, ImageVariants.Spec.parse(Integer.toString(i * 10), null, null));
+        }
+        assertEquals(2, dir.listFiles().length);
+    }
+
+    private byte[] createImage(int width, int height) throws IOException {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            img.setRGB(x, height / 2, 0xFF0000);
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", baos);
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.InputRepresentation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.ResourceException;
+
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class JSONHelperTest {
+    @Test
+    public void testCreateJSONWithinLimit() {
+        JSONObject json = JSONHelper.createJSONFromRepresentation(new StringRepresentation("{\"name\":\"foo\"}", MediaType.APPLICATION_JSON), 100);
+        assertEquals("foo", json.getString("name"));
+    }
+
+    @Test
+    public void testCreateJSONTooLarge() {
+        // declared size exceeds the limit
+        try {
+            JSONHelper.createJSONFromRepresentation(new StringRepresentation("{\"name\":\"foobarfoobar\"}", MediaType.APPLICATION_JSON), 10);
+            fail("Should have thrown exception");
+        } catch (ResourceException e) {
+            assertEquals(Status.CLIENT_ERROR_REQUEST_ENTITY_TOO_LARGE, e.getStatus());
+        }
+
+        // unknown size that turns out to exceed the limit
+        try {
+            JSONHelper.createJSONFromRepresentation(new InputRepresentation(new ByteArrayInputStream("{\"name\":\"foobarfoobar\"}".getBytes())), 10);
+            fail("Should have thrown exception");
+        } catch (ResourceException e) {
+            assertEquals(Status.CLIENT_ERROR_REQUEST_ENTITY_TOO_LARGE, e.getStatus());
+        }
+    }
+
+    @Test
+    public void testReadFields() {
+        String s = "{\"conditions\":[{\"cclass\":{\"@id\":\"foo\"},\"values\":{\"a\":1,\"b\":[true,null,\"x]\"]}}],\"name\":\"task1\",\"enabled\":false,\"description\":\"d\"}";
+        Map<String,Object> fields = JSONHelper.readFieldsFromRepresentation(new StringRepresentation(s, MediaType.APPLICATION_JSON), "name", "enabled", "missing");
+        assertEquals(2, fields.size());
+        assertEquals("task1", fields.get("name"));
+        assertEquals(false, fields.get("enabled"));
+
+        fields = JSONHelper.readFieldsFromRepresentation(new StringRepresentation("{\"value\":{\"x\":1}}", MediaType.APPLICATION_JSON), "value");
+        assertEquals(1, ((JSONObject)fields.get("value")).getInt("x"));
+
+        assertTrue(JSONHelper.readFieldsFromRepresentation(new StringRepresentation("{}", MediaType.APPLICATION_JSON), "value").isEmpty());
+    }
+}
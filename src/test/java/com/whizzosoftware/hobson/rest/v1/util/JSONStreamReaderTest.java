@@ -0,0 +1,124 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64InputStream;
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class JSONStreamReaderTest {
+    @Test
+    public void testWalkAndSkip() {
+        JSONStreamReader jsr = new JSONStreamReader(new StringReader("{\"a\":{\"b\":[1,{\"c\":null}]},\"d\":\"e\",\"f\":true}"));
+        jsr.beginObject();
+        assertEquals("a", jsr.nextKey());
+        jsr.skipValue();
+        assertEquals("d", jsr.nextKey());
+        assertEquals("e", jsr.nextValue());
+        assertEquals("f", jsr.nextKey());
+        assertEquals(true, jsr.nextValue());
+        assertNull(jsr.nextKey());
+    }
+
+    @Test
+    public void testNestedObject() {
+        JSONStreamReader jsr = new JSONStreamReader(new StringReader("{\"image\":{\"mediaType\":\"image/png\"},\"x\":1}"));
+        jsr.beginObject();
+        assertEquals("image", jsr.nextKey());
+        jsr.beginObject();
+        assertEquals("mediaType", jsr.nextKey());
+        assertEquals("image/png", jsr.nextValue());
+        assertNull(jsr.nextKey());
+        assertEquals("x", jsr.nextKey());
+        assertEquals(1, jsr.nextValue());
+        assertNull(jsr.nextKey());
+    }
+
+    @Test
+    public void testOpenString() throws IOException {
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)i;
+        }
+        // include an escaped slash as some encoders produce
+        String b64 = Base64.encodeBase64String(data).replace("/", "\\/");
+
+        JSONStreamReader jsr = new JSONStreamReader(new StringReader("{\"data\":\"" + b64 + "\",\"mediaType\":\"image/png\"}"));
+        jsr.beginObject();
+        assertEquals("data", jsr.nextKey());
+        InputStream is = new Base64InputStream(jsr.openString());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buf = new byte[256];
+        int n;
+        while ((n = is.read(buf)) >= 0) {
+            baos.write(buf, 0, n);
+        }
+        is.close();
+        assertArrayEquals(data, baos.toByteArray());
+        assertEquals("mediaType", jsr.nextKey());
+        assertEquals("image/png", jsr.nextValue());
+        assertNull(jsr.nextKey());
+    }
+
+    @Test
+    public void testCloseSkipsRestOfString() throws IOException {
+        JSONStreamReader jsr = new JSONStreamReader(new StringReader("{\"data\":\"abcdef\",\"x\":1}"));
+        jsr.beginObject();
+        assertEquals("data", jsr.nextKey());
+        InputStream is = jsr.openString();
+        assertEquals('a', is.read());
+        is.close();
+        assertEquals("x", jsr.nextKey());
+    }
+
+    @Test
+    public void testStringEscapes() throws IOException {
+        JSONStreamReader jsr = new JSONStreamReader(new StringReader("{\"data\":\"a\\/b\"}"));
+        jsr.beginObject();
+        assertEquals("data", jsr.nextKey());
+        InputStream is = jsr.openString();
+        assertEquals('a', is.read());
+        assertEquals('/', is.read());
+        assertEquals('b', is.read());
+        assertEquals(-1, is.read());
+        is.close();
+        assertNull(jsr.nextKey());
+
+        // any other escape is rejected rather than decoded incorrectly
+        for (String esc : new String[] {"\\b", "\\f", "\\n", "\\u00e9", "\\u0141"}) {
+            jsr = new JSONStreamReader(new StringReader("{\"data\":\"a" + esc + "\"}"));
+            jsr.beginObject();
+            jsr.nextKey();
+            is = jsr.openString();
+            assertEquals('a', is.read());
+            try {
+                is.read();
+                fail("Should have thrown exception for " + esc);
+            } catch (JSONException ignored) {}
+            is.close();
+        }
+
+        jsr = new JSONStreamReader(new StringReader("{\"data\":\"\u00e9\"}"));
+        jsr.beginObject();
+        jsr.nextKey();
+        try {
+            jsr.openString().read();
+            fail("Should have thrown exception");
+        } catch (JSONException ignored) {}
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.HobsonInvalidRequestException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class JobWatcherTest {
+    @Test
+    public void testFanOut() {
+        JobWatcher watcher = new JobWatcher();
+        final AtomicReference<String> state = new AtomicReference<>("{\"status\":\"RUNNING\"}");
+        final AtomicInteger fetches = new AtomicInteger();
+        JobWatcher.StateProvider provider = new JobWatcher.StateProvider() {
+            @Override
+            public String getState() {
+                fetches.incrementAndGet();
+                return state.get();
+            }
+        };
+        String tag = JobWatcher.createTag(state.get());
+
+        final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+        JobWatcher.Callback cb = new JobWatcher.Callback() {
+            @Override
+            public void onComplete(String s, String t) {
+                results.add(s);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                fail("Unexpected error");
+            }
+        };
+        JobWatcher.StateProvider renderer = new JobWatcher.StateProvider() {
+            @Override
+            public String getState() {
+                return state.get();
+            }
+        };
+        watcher.watch("job1", provider, renderer, tag, 30000, cb);
+        watcher.watch("job1", provider, renderer, tag, 30000, cb);
+        assertEquals(1, watcher.getWatchCount());
+
+        // no change so nothing should complete and the probe is only fetched once per poll
+        watcher.poll("job1");
+        watcher.poll("job1");
+        assertEquals(0, results.size());
+        assertEquals(2, fetches.get());
+
+        // a change should complete both waiters from a single probe fetch
+        state.set("{\"status\":\"COMPLETE\"}");
+        watcher.poll("job1");
+        assertEquals(3, fetches.get());
+        assertEquals(2, results.size());
+        assertEquals("{\"status\":\"COMPLETE\"}", results.get(0));
+        assertEquals(0, watcher.getWatchCount());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        JobWatcher watcher = new JobWatcher();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<String> result = new AtomicReference<>("notnull");
+        JobWatcher.StateProvider provider = new JobWatcher.StateProvider() {
+            @Override
+            public String getState() {
+                return "{}";
+            }
+        };
+        watcher.watch("job1", provider, provider, JobWatcher.createTag("{}"), 50, new JobWatcher.Callback() {
+            @Override
+            public void onComplete(String s, String t) {
+                result.set(s);
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                fail("Unexpected error");
+            }
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertNull(result.get());
+        assertEquals(0, watcher.getWatchCount());
+    }
+
+    @Test
+    public void testProviderError() {
+        JobWatcher watcher = new JobWatcher();
+        final AtomicBoolean fail = new AtomicBoolean(false);
+        JobWatcher.StateProvider provider = new JobWatcher.StateProvider() {
+            @Override
+            public String getState() {
+                if (fail.get()) {
+                    throw new IllegalStateException("gone");
+                }
+                return "{}";
+            }
+        };
+        final List<String> completed = new ArrayList<>();
+        final List<Exception> errors = new ArrayList<>();
+        watcher.watch("job1", provider, provider, JobWatcher.createTag("{}"), 30000, new JobWatcher.Callback() {
+            @Override
+            public void onComplete(String s, String t) {
+                completed.add(s);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                errors.add(e);
+            }
+        });
+
+        // a failed fetch must be reported as an error and not as a timeout (which means "not modified")
+        fail.set(true);
+        watcher.poll("job1");
+        assertEquals(0, completed.size());
+        assertEquals(1, errors.size());
+        assertEquals("gone", errors.get(0).getMessage());
+        assertEquals(0, watcher.getWatchCount());
+    }
+
+    @Test
+    public void testRenderedPerWaiter() {
+        JobWatcher watcher = new JobWatcher();
+        final AtomicReference<String> status = new AtomicReference<>("RUNNING");
+        JobWatcher.StateProvider probe = new JobWatcher.StateProvider() {
+            @Override
+            public String getState() {
+                return status.get();
+            }
+        };
+        final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+        JobWatcher.Callback cb = new JobWatcher.Callback() {
+            @Override
+            public void onComplete(String s, String t) {
+                results.add(s);
+                assertEquals(JobWatcher.createTag(s), t);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                fail("Unexpected error");
+            }
+        };
+        watcher.watch("job1", probe, createRenderer("/api/v1", status), JobWatcher.createTag(createState("/api/v1", "RUNNING")), 30000, cb);
+        watcher.watch("job1", probe, createRenderer("/other/v1", status), JobWatcher.createTag(createState("/other/v1", "RUNNING")), 30000, cb);
+        watcher.poll("job1");
+        assertEquals(0, results.size());
+
+        // each waiter receives the state rendered for its own request
+        status.set("COMPLETE");
+        watcher.poll("job1");
+        assertEquals(2, results.size());
+        assertTrue(results.contains(createState("/api/v1", "COMPLETE")));
+        assertTrue(results.contains(createState("/other/v1", "COMPLETE")));
+    }
+
+    @Test
+    public void testTagIsContentHash() {
+        assertEquals(32, JobWatcher.createTag("{}").length());
+        assertEquals(JobWatcher.createTag("{}"), JobWatcher.createTag("{}"));
+        // these two strings have the same hash code and length
+        assertNotEquals(JobWatcher.createTag("Aa"), JobWatcher.createTag("BB"));
+    }
+
+    @Test
+    public void testParseWait() {
+        assertEquals(0, JobWatcher.parseWait(null));
+        assertEquals(5000, JobWatcher.parseWait("5000"));
+        assertEquals(JobWatcher.MAX_WAIT, JobWatcher.parseWait(Long.toString(JobWatcher.MAX_WAIT + 1)));
+        try {
+            JobWatcher.parseWait("-1");
+            fail("Should have thrown exception");
+        } catch (HobsonInvalidRequestException ignored) {}
+    }
+
+    private JobWatcher.StateProvider createRenderer(final String apiRoot, final AtomicReference<String> status) {
+        return new JobWatcher.StateProvider() {
+            @Override
+            public String getState() {
+                return createState(apiRoot, status.get());
+            }
+        };
+    }
+
+    private String createState(String apiRoot, String status) {
+        return "{\"@id\":\"" + apiRoot + "/hubs/local/jobs/job1\",\"status\":\"" + status + "\"}";
+    }
+}
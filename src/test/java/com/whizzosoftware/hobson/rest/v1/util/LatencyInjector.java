@@ -0,0 +1,244 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.HobsonRuntimeException;
+import com.whizzosoftware.hobson.api.data.DataStreamManager;
+import com.whizzosoftware.hobson.api.device.DeviceManager;
+import com.whizzosoftware.hobson.api.plugin.PluginManager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Decorates manager implementations (e.g. the mock managers) with injected latency, jitter and failures so that
+ * caching, coalescing and timeout behavior can be exercised realistically without a live hub. This is test code and
+ * isn't part of the runtime; it's published in the test-jar so that a mock-backed hub (e.g. the integration test
+ * module's MockHub) can wrap its managers with decorate() before binding them.
+ *
+ * Each profile is read from system properties with the prefix "hobson.rest.latency.[name]." where name is "device",
+ * "plugin" or "dataStream":
+ *
+ * base - the fixed latency in milliseconds added to every call
+ * jitter - the maximum additional latency in milliseconds (chosen uniformly)
+ * spikeRate - the fraction of calls (0 to 1) that incur a latency spike
+ * spike - the additional latency in milliseconds of a spike
+ * failureRate - the fraction of calls (0 to 1) that fail with a HobsonRuntimeException
+ * seed - the random seed
+ * methods - per-method base latency overrides (e.g. "getDevices=250,getDevice=20")
+ *
+ * Object methods and isStub() are passed through unchanged. The single argument decorate() methods return the
+ * delegate itself when none of its profile's properties are set, so a hub can always call them without paying for
+ * the proxy when no latency is configured.
+ *
+ * Each method draws from its own Random seeded from the profile seed, so the calls to one method always see the same
+ * sequence of delays and failures regardless of calls to other methods. Concurrent calls to the same method take their
+ * draws in whatever order they arrive, though; the sequence is the same but which call gets which delay is only
+ * reproducible when the calls are made from a single thread.
+ */
+public class LatencyInjector {
+    public static final String PROPERTY_PREFIX = "hobson.rest.latency.";
+
+    /**
+     * Decorates a DeviceManager using the "device" profile.
+     *
+     * @param delegate the manager to decorate
+     *
+     * @return a DeviceManager
+     */
+    static public DeviceManager decorate(DeviceManager delegate) {
+        return Profile.isConfigured("device") ? decorate(DeviceManager.class, delegate, Profile.fromProperties("device")) : delegate;
+    }
+
+    /**
+     * Decorates a PluginManager using the "plugin" profile.
+     *
+     * @param delegate the manager to decorate
+     *
+     * @return a PluginManager
+     */
+    static public PluginManager decorate(PluginManager delegate) {
+        return Profile.isConfigured("plugin") ? decorate(PluginManager.class, delegate, Profile.fromProperties("plugin")) : delegate;
+    }
+
+    /**
+     * Decorates a DataStreamManager using the "dataStream" profile.
+     *
+     * @param delegate the manager to decorate
+     *
+     * @return a DataStreamManager
+     */
+    static public DataStreamManager decorate(DataStreamManager delegate) {
+        return Profile.isConfigured("dataStream") ? decorate(DataStreamManager.class, delegate, Profile.fromProperties("dataStream")) : delegate;
+    }
+
+    /**
+     * Decorates an implementation of any interface.
+     *
+     * @param iface the interface to expose
+     * @param delegate the implementation to delegate to
+     * @param profile the latency profile
+     *
+     * @return an implementation of the interface
+     */
+    static public <T> T decorate(final Class<T> iface, final T delegate, final Profile profile) {
+        return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class[] {iface}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getDeclaringClass() != Object.class && !"isStub".equals(method.getName())) {
+                    Delay d = profile.next(method.getName());
+                    if (d.millis > 0) {
+                        Thread.sleep(d.millis);
+                    }
+                    if (d.fail) {
+                        throw new HobsonRuntimeException("Injected failure in " + iface.getSimpleName() + "." + method.getName());
+                    }
+                }
+                try {
+                    return method.invoke(delegate, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        }));
+    }
+
+    /**
+     * The latency and failure characteristics applied to a manager's calls.
+     */
+    static public class Profile {
+        private long base;
+        private long jitter;
+        private double spikeRate;
+        private long spike;
+        private double failureRate;
+        private final Map<String,Long> methodBase = new HashMap<>();
+        private final Map<String,Random> randoms = new HashMap<>();
+        private long seed;
+
+        /**
+         * Creates a profile from the system properties for a manager.
+         *
+         * @param name the profile name (e.g. "device")
+         *
+         * @return a Profile
+         */
+        static public Profile fromProperties(String name) {
+            String prefix = PROPERTY_PREFIX + name + ".";
+            Profile p = new Profile()
+                .setBase(Long.getLong(prefix + "base", 0))
+                .setJitter(Long.getLong(prefix + "jitter", 0))
+                .setSpike(Double.parseDouble(System.getProperty(prefix + "spikeRate", "0")), Long.getLong(prefix + "spike", 0))
+                .setFailureRate(Double.parseDouble(System.getProperty(prefix + "failureRate", "0")))
+                .setSeed(Long.getLong(prefix + "seed", 0));
+            String methods = System.getProperty(prefix + "methods");
+            if (methods != null) {
+                for (String s : methods.split(",")) {
+                    int ix = s.indexOf('=');
+                    if (ix > 0) {
+                        p.setMethodBase(s.substring(0, ix).trim(), Long.parseLong(s.substring(ix + 1).trim()));
+                    }
+                }
+            }
+            return p;
+        }
+
+        /**
+         * Indicates whether any system properties are set for a profile.
+         *
+         * @param name the profile name (e.g. "device")
+         *
+         * @return a boolean
+         */
+        static public boolean isConfigured(String name) {
+            String prefix = PROPERTY_PREFIX + name + ".";
+            for (String key : System.getProperties().stringPropertyNames()) {
+                if (key.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public Profile setBase(long base) {
+            this.base = base;
+            return this;
+        }
+
+        public Profile setJitter(long jitter) {
+            this.jitter = jitter;
+            return this;
+        }
+
+        public Profile setSpike(double spikeRate, long spike) {
+            this.spikeRate = spikeRate;
+            this.spike = spike;
+            return this;
+        }
+
+        public Profile setFailureRate(double failureRate) {
+            this.failureRate = failureRate;
+            return this;
+        }
+
+        public Profile setMethodBase(String method, long base) {
+            methodBase.put(method, base);
+            return this;
+        }
+
+        synchronized public Profile setSeed(long seed) {
+            this.seed = seed;
+            randoms.clear();
+            return this;
+        }
+
+        /**
+         * Returns the delay and outcome for the next call to a method.
+         *
+         * @param method the method name
+         *
+         * @return a Delay
+         */
+        synchronized Delay next(String method) {
+            Random random = randoms.get(method);
+            if (random == null) {
+                random = new Random(seed * 31 + method.hashCode());
+                randoms.put(method, random);
+            }
+
+            // the random draws are made in the same order for every call so a seed always produces the same sequence
+            double jr = random.nextDouble();
+            double sr = random.nextDouble();
+            double fr = random.nextDouble();
+
+            Long mb = methodBase.get(method);
+            long millis = (mb != null ? mb : base) + (long)(jr * jitter);
+            if (sr < spikeRate) {
+                millis += spike;
+            }
+            return new Delay(millis, fr < failureRate);
+        }
+    }
+
+    static class Delay {
+        final long millis;
+        final boolean fail;
+
+        Delay(long millis, boolean fail) {
+            this.millis = millis;
+            this.fail = fail;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.HobsonRuntimeException;
+import com.whizzosoftware.hobson.api.plugin.PluginManager;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+
+public class LatencyInjectorTest {
+    @Test
+    public void testDelay() throws Exception {
+        Callable<String> c = LatencyInjector.decorate(Callable.class, new Callable<String>() {
+            @Override
+            public String call() {
+                return "result";
+            }
+        }, new LatencyInjector.Profile().setMethodBase("call", 100));
+
+        long start = System.currentTimeMillis();
+        assertEquals("result", c.call());
+        assertTrue(System.currentTimeMillis() - start >= 100);
+    }
+
+    @Test
+    public void testSeededSequence() {
+        LatencyInjector.Profile p1 = new LatencyInjector.Profile().setBase(10).setJitter(50).setSpike(0.1, 1000).setFailureRate(0.2).setSeed(42);
+        LatencyInjector.Profile p2 = new LatencyInjector.Profile().setBase(10).setJitter(50).setSpike(0.1, 1000).setFailureRate(0.2).setSeed(42);
+
+        int failures = 0;
+        for (int i = 0; i < 1000; i++) {
+            LatencyInjector.Delay d1 = p1.next("getDevice");
+            LatencyInjector.Delay d2 = p2.next("getDevice");
+            assertEquals(d1.millis, d2.millis);
+            assertEquals(d1.fail, d2.fail);
+            assertTrue(d1.millis >= 10 && (d1.millis < 60 || (d1.millis >= 1010 && d1.millis < 1060)));
+            if (d1.fail) {
+                failures++;
+            }
+        }
+        assertTrue(failures > 100 && failures < 300);
+    }
+
+    @Test
+    public void testMethodsHaveIndependentSequences() {
+        LatencyInjector.Profile p1 = new LatencyInjector.Profile().setJitter(1000).setSeed(42);
+        LatencyInjector.Profile p2 = new LatencyInjector.Profile().setJitter(1000).setSeed(42);
+
+        // calls to other methods don't shift a method's sequence
+        for (int i = 0; i < 100; i++) {
+            p1.next("getDevices");
+            assertEquals(p2.next("getDevice").millis, p1.next("getDevice").millis);
+        }
+    }
+
+    @Test
+    public void testFailures() throws Exception {
+        Callable<String> c = LatencyInjector.decorate(Callable.class, new Callable<String>() {
+            @Override
+            public String call() {
+                return "result";
+            }
+        }, new LatencyInjector.Profile().setFailureRate(1.0));
+
+        try {
+            c.call();
+            fail("Should have thrown exception");
+        } catch (HobsonRuntimeException ignored) {}
+
+        // Object methods are never delayed or failed
+        assertNotNull(c.toString());
+    }
+
+    @Test
+    public void testDelegateExceptionIsUnwrapped() {
+        Callable<String> c = LatencyInjector.decorate(Callable.class, new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                throw new IllegalStateException("delegate");
+            }
+        }, new LatencyInjector.Profile());
+
+        try {
+            c.call();
+            fail("Should have thrown exception");
+        } catch (Exception e) {
+            assertTrue(e instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testUnconfiguredProfileIsNotDecorated() {
+        PluginManager pm = new ManagerStub<>(PluginManager.class).get();
+        assertFalse(LatencyInjector.Profile.isConfigured("plugin"));
+        assertSame(pm, LatencyInjector.decorate(pm));
+
+        System.setProperty(LatencyInjector.PROPERTY_PREFIX + "plugin.base", "10");
+        try {
+            assertTrue(LatencyInjector.Profile.isConfigured("plugin"));
+            assertNotSame(pm, LatencyInjector.decorate(pm));
+        } finally {
+            System.clearProperty(LatencyInjector.PROPERTY_PREFIX + "plugin.base");
+        }
+    }
+}
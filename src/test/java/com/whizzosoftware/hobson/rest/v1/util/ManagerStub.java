@@ -0,0 +1,82 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal stand-in for a manager interface that counts calls so tests can verify what a cache actually fetched.
+ * Methods without an answer return null (or 0/false for primitives).
+ */
+public class ManagerStub<T> implements InvocationHandler {
+    private final T proxy;
+    private final Map<String,Answer> answers = new HashMap<>();
+    private final ConcurrentHashMap<String,AtomicInteger> calls = new ConcurrentHashMap<>();
+
+    public interface Answer {
+        Object answer(Object[] args);
+    }
+
+    public ManagerStub(Class<T> iface) {
+        this.proxy = iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class[] {iface}, this));
+    }
+
+    public ManagerStub<T> on(String method, Answer answer) {
+        answers.put(method, answer);
+        return this;
+    }
+
+    public T get() {
+        return proxy;
+    }
+
+    public int getCalls(String method) {
+        AtomicInteger i = calls.get(method);
+        return i != null ? i.get() : 0;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "ManagerStub";
+            }
+        }
+
+        calls.putIfAbsent(method.getName(), new AtomicInteger());
+        calls.get(method.getName()).incrementAndGet();
+
+        Answer a = answers.get(method.getName());
+        if (a != null) {
+            return a.answer(args);
+        }
+
+        Class<?> rt = method.getReturnType();
+        if (rt == boolean.class) {
+            return false;
+        } else if (rt == int.class) {
+            return 0;
+        } else if (rt == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
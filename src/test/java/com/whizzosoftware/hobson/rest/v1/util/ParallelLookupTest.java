@@ -0,0 +1,107 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ParallelLookupTest {
+    @Test
+    public void testLookupAll() {
+        ParallelLookup pl = new ParallelLookup(4, 16);
+        long start = System.currentTimeMillis();
+        Map<String,String> results = pl.lookupAll(Arrays.asList("hub1", "slow", "hub2", "fail", "hub3"), new ParallelLookup.Lookup<String,String>() {
+            @Override
+            public String lookup(String key) throws Exception {
+                if ("slow".equals(key)) {
+                    Thread.sleep(5000);
+                } else if ("fail".equals(key)) {
+                    throw new Exception("Lookup failed");
+                } else {
+                    Thread.sleep(100);
+                }
+                return key.toUpperCase();
+            }
+        }, 500);
+
+        // the lookups ran concurrently and the slow one didn't hold up the results
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(new ArrayList<>(Arrays.asList("hub1", "hub2", "hub3")), new ArrayList<>(results.keySet()));
+        assertEquals("HUB2", results.get("hub2"));
+    }
+
+    @Test
+    public void testLatencySpikesAreOmitted() {
+        final LatencyInjector.Profile profile = new LatencyInjector.Profile().setBase(20).setSpike(0.3, 2000).setSeed(7);
+        @SuppressWarnings("unchecked")
+        ParallelLookup.Lookup<Integer,Integer> lookup = LatencyInjector.decorate(ParallelLookup.Lookup.class, new ParallelLookup.Lookup<Integer,Integer>() {
+            @Override
+            public Integer lookup(Integer key) {
+                return key;
+            }
+        }, profile);
+
+        // which lookups spike depends on thread scheduling but how many of them do is fixed by the seed
+        LatencyInjector.Profile expected = new LatencyInjector.Profile().setBase(20).setSpike(0.3, 2000).setSeed(7);
+        List<Integer> keys = new ArrayList<>();
+        int spikes = 0;
+        for (int i = 0; i < 10; i++) {
+            keys.add(i);
+            if (expected.next("lookup").millis >= 2000) {
+                spikes++;
+            }
+        }
+        assertTrue(spikes > 0);
+
+        long start = System.currentTimeMillis();
+        Map<Integer,Integer> results = new ParallelLookup(10, 16).lookupAll(keys, lookup, 500);
+        assertTrue(System.currentTimeMillis() - start < 1500);
+        assertEquals(10 - spikes, results.size());
+    }
+
+    @Test
+    public void testSingleLookupTimesOut() {
+        long start = System.currentTimeMillis();
+        Map<String,String> results = new ParallelLookup(1, 1).lookupAll(Collections.singletonList("local"), new ParallelLookup.Lookup<String,String>() {
+            @Override
+            public String lookup(String key) throws Exception {
+                Thread.sleep(5000);
+                return key;
+            }
+        }, 100);
+        assertTrue(results.isEmpty());
+        assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+
+    @Test
+    public void testSaturatedPoolRejects() {
+        final Thread caller = Thread.currentThread();
+        long start = System.currentTimeMillis();
+
+        // one lookup runs, one is queued and the rest are rejected rather than run on the calling thread
+        Map<String,Boolean> results = new ParallelLookup(1, 1).lookupAll(Arrays.asList("hub1", "hub2", "hub3", "hub4"), new ParallelLookup.Lookup<String,Boolean>() {
+            @Override
+            public Boolean lookup(String key) throws Exception {
+                Thread.sleep(100);
+                return Thread.currentThread() == caller;
+            }
+        }, 1000);
+        assertEquals(new ArrayList<>(Arrays.asList("hub1", "hub2")), new ArrayList<>(results.keySet()));
+        assertFalse(results.get("hub1"));
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.event.EventManager;
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import com.whizzosoftware.hobson.api.image.ImageInputStream;
+import com.whizzosoftware.hobson.api.plugin.PluginContext;
+import com.whizzosoftware.hobson.api.plugin.PluginManager;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class PluginIconCacheTest {
+    private final HubContext hctx = HubContext.createLocal();
+    private final AtomicReference<String> iconData = new AtomicReference<>("icon1");
+    private ManagerStub<PluginManager> pluginManager;
+    private PluginIconCache cache;
+
+    @Before
+    public void setUp() {
+        pluginManager = new ManagerStub<>(PluginManager.class).on("getLocalPluginIcon", new ManagerStub.Answer() {
+            @Override
+            public Object answer(Object[] args) {
+                return new ImageInputStream("image/png", new ByteArrayInputStream(iconData.get().getBytes()));
+            }
+        });
+
+        cache = new PluginIconCache();
+        cache.pluginManager = pluginManager.get();
+        cache.eventDispatcher = new HubEventDispatcher();
+        cache.eventDispatcher.eventManager = new ManagerStub<>(EventManager.class).get();
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        PluginContext pctx1 = PluginContext.create(hctx, "plugin1");
+        PluginContext pctx2 = PluginContext.create(hctx, "plugin2");
+
+        CachedContent raw = cache.getIcon(pctx1, false);
+        assertEquals("icon1", new String(raw.getData()));
+        assertSame(raw, cache.getIcon(pctx1, false));
+
+        // the base64 variant comes from the same read
+        assertEquals(Base64.encodeBase64String("icon1".getBytes()), new String(cache.getIcon(pctx1, true).getData()));
+        assertEquals(1, pluginManager.getCalls("getLocalPluginIcon"));
+
+        cache.getIcon(pctx2, false);
+        assertEquals(2, pluginManager.getCalls("getLocalPluginIcon"));
+    }
+
+    @Test
+    public void testPluginChangeInvalidates() {
+        PluginContext pctx = PluginContext.create(hctx, "plugin1");
+        CachedContent c1 = cache.getIcon(pctx, false);
+
+        // another hub's change has no effect
+        cache.onPluginChange(HubContext.create("hub2"));
+        assertSame(c1, cache.getIcon(pctx, false));
+
+        iconData.set("icon2");
+        cache.onPluginChange(hctx);
+        CachedContent c2 = cache.getIcon(pctx, false);
+        assertEquals("icon2", new String(c2.getData()));
+        assertNotEquals(c1.getTag(), c2.getTag());
+        assertEquals(2, pluginManager.getCalls("getLocalPluginIcon"));
+    }
+}
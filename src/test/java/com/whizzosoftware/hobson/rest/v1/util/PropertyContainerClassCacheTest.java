@@ -0,0 +1,130 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.action.ActionManager;
+import com.whizzosoftware.hobson.api.device.DeviceContext;
+import com.whizzosoftware.hobson.api.event.EventManager;
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import com.whizzosoftware.hobson.api.hub.HubManager;
+import com.whizzosoftware.hobson.api.plugin.PluginContext;
+import com.whizzosoftware.hobson.api.property.PropertyContainerClass;
+import com.whizzosoftware.hobson.api.property.PropertyContainerClassContext;
+import com.whizzosoftware.hobson.api.property.PropertyContainerClassType;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PropertyContainerClassCacheTest {
+    private HubContext hctx = HubContext.createLocal();
+    private ManagerStub<HubManager> hubManager;
+    private ManagerStub<ActionManager> actionManager;
+    private PropertyContainerClassCache cache;
+
+    @Before
+    public void setUp() {
+        hubManager = new ManagerStub<>(HubManager.class).on("getContainerClass", new ManagerStub.Answer() {
+            @Override
+            public Object answer(Object[] args) {
+                return new PropertyContainerClass((PropertyContainerClassContext)args[0], PropertyContainerClassType.CONDITION);
+            }
+        });
+        actionManager = new ManagerStub<>(ActionManager.class).on("getActionClass", new ManagerStub.Answer() {
+            @Override
+            public Object answer(Object[] args) {
+                return new PropertyContainerClass((PropertyContainerClassContext)args[0], PropertyContainerClassType.ACTION);
+            }
+        });
+
+        cache = new PropertyContainerClassCache();
+        cache.hubManager = hubManager.get();
+        cache.actionManager = actionManager.get();
+        cache.eventDispatcher = new HubEventDispatcher();
+        cache.eventDispatcher.eventManager = new ManagerStub<>(EventManager.class).get();
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        PropertyContainerClassContext ctx1 = PropertyContainerClassContext.create(PluginContext.create(hctx, "plugin1"), "class1");
+        PropertyContainerClassContext ctx2 = PropertyContainerClassContext.create(PluginContext.create(hctx, "plugin1"), "class2");
+
+        PropertyContainerClass pcc = cache.getPropertyContainerClass(ctx1);
+        assertNotNull(pcc);
+        assertSame(pcc, cache.getPropertyContainerClass(ctx1));
+        assertEquals(1, hubManager.getCalls("getContainerClass"));
+
+        cache.getPropertyContainerClass(ctx2);
+        assertEquals(2, hubManager.getCalls("getContainerClass"));
+
+        // action classes are cached separately from container classes
+        cache.getActionClass(ctx1);
+        cache.getActionClass(ctx1);
+        assertEquals(1, actionManager.getCalls("getActionClass"));
+        assertEquals(2, hubManager.getCalls("getContainerClass"));
+    }
+
+    @Test
+    public void testMissingClassIsNotCached() {
+        hubManager.on("getContainerClass", new ManagerStub.Answer() {
+            @Override
+            public Object answer(Object[] args) {
+                return null;
+            }
+        });
+        PropertyContainerClassContext ctx = PropertyContainerClassContext.create(PluginContext.create(hctx, "plugin1"), "class1");
+        assertNull(cache.getPropertyContainerClass(ctx));
+        assertNull(cache.getPropertyContainerClass(ctx));
+        assertEquals(2, hubManager.getCalls("getContainerClass"));
+    }
+
+    @Test
+    public void testDeviceInvalidation() {
+        DeviceContext dctx1 = DeviceContext.create(hctx, "plugin1", "device1");
+        DeviceContext dctx2 = DeviceContext.create(hctx, "plugin1", "device2");
+        PropertyContainerClassContext ctx1 = PropertyContainerClassContext.create(dctx1, "action1");
+        PropertyContainerClassContext ctx2 = PropertyContainerClassContext.create(dctx2, "action1");
+
+        cache.getActionClass(ctx1);
+        cache.getActionClass(ctx2);
+        assertEquals(2, actionManager.getCalls("getActionClass"));
+
+        // republishing a device only discards that device's classes
+        cache.onDeviceAvailable(dctx1);
+        cache.getActionClass(ctx1);
+        cache.getActionClass(ctx2);
+        assertEquals(3, actionManager.getCalls("getActionClass"));
+
+        cache.onDeviceRemoved(dctx2);
+        cache.getActionClass(ctx1);
+        cache.getActionClass(ctx2);
+        assertEquals(4, actionManager.getCalls("getActionClass"));
+    }
+
+    @Test
+    public void testPluginChangeInvalidatesHub() {
+        PropertyContainerClassContext ctx = PropertyContainerClassContext.create(PluginContext.create(hctx, "plugin1"), "class1");
+        cache.getPropertyContainerClass(ctx);
+        cache.getActionClass(ctx);
+
+        // another hub's change has no effect
+        cache.onPluginChange(HubContext.create("hub2"));
+        cache.getPropertyContainerClass(ctx);
+        cache.getActionClass(ctx);
+        assertEquals(1, hubManager.getCalls("getContainerClass"));
+        assertEquals(1, actionManager.getCalls("getActionClass"));
+
+        cache.onPluginChange(hctx);
+        cache.getPropertyContainerClass(ctx);
+        cache.getActionClass(ctx);
+        assertEquals(2, hubManager.getCalls("getContainerClass"));
+        assertEquals(2, actionManager.getCalls("getActionClass"));
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import com.whizzosoftware.hobson.api.plugin.PluginManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class RemotePluginCatalogTest {
+    private final HubContext hctx = HubContext.createLocal();
+    private final AtomicReference<String> version = new AtomicReference<>("1.0.0");
+    private final AtomicReference<CountDownLatch> gate = new AtomicReference<>();
+    private final AtomicReference<String> gatedHub = new AtomicReference<>();
+    private final AtomicInteger failures = new AtomicInteger();
+    private ManagerStub<PluginManager> pluginManager;
+    private RemotePluginCatalog catalog;
+
+    @Before
+    public void setUp() {
+        pluginManager = new ManagerStub<>(PluginManager.class).on("getRemotePlugins", new ManagerStub.Answer() {
+            @Override
+            public Object answer(Object[] args) {
+                CountDownLatch latch = gate.get();
+                if (latch != null && (gatedHub.get() == null || gatedHub.get().equals(((HubContext)args[0]).getHubId()))) {
+                    try {
+                        latch.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException ignored) {}
+                }
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("Repository unavailable");
+                }
+                return new ArrayList<>();
+            }
+        }).on("getRemotePluginVersions", new ManagerStub.Answer() {
+            @Override
+            public Object answer(Object[] args) {
+                return Collections.singletonMap("plugin1", version.get());
+            }
+        });
+
+        catalog = new RemotePluginCatalog(2000, 50);
+        catalog.pluginManager = pluginManager.get();
+    }
+
+    @After
+    public void tearDown() {
+        catalog.shutdown();
+    }
+
+    @Test
+    public void testFirstFetchIsAwaited() {
+        // a cold hub doesn't return an empty catalog
+        assertEquals("1.0.0", catalog.getRemotePluginVersions(hctx).get("plugin1"));
+        assertTrue(catalog.getRemotePlugins(hctx).isEmpty());
+
+        // subsequent calls are served from the cache
+        version.set("2.0.0");
+        assertEquals("1.0.0", catalog.getRemotePluginVersions(hctx).get("plugin1"));
+        assertEquals(1, pluginManager.getCalls("getRemotePlugins"));
+    }
+
+    @Test
+    public void testSlowFirstFetchTimesOut() {
+        catalog = new RemotePluginCatalog(50, 50);
+        catalog.pluginManager = LatencyInjector.decorate(PluginManager.class, pluginManager.get(), new LatencyInjector.Profile().setMethodBase("getRemotePlugins", 300));
+
+        long start = System.currentTimeMillis();
+        assertTrue(catalog.getRemotePluginVersions(hctx).isEmpty());
+        assertTrue(System.currentTimeMillis() - start < 250);
+
+        // the catalog is served once the slow fetch completes
+        waitForVersion("1.0.0");
+    }
+
+    @Test
+    public void testRefreshAll() throws Exception {
+        catalog.getRemotePluginVersions(hctx);
+
+        version.set("2.0.0");
+        catalog.refreshAll();
+        waitForVersion("2.0.0");
+        assertEquals(2, pluginManager.getCalls("getRemotePlugins"));
+    }
+
+    @Test
+    public void testRefreshAllDuringRefreshIsNotLost() throws Exception {
+        catalog.getRemotePluginVersions(hctx);
+
+        // hold a refresh in progress
+        gate.set(new CountDownLatch(1));
+        catalog.refreshAll();
+        while (pluginManager.getCalls("getRemotePlugins") < 2) {
+            Thread.sleep(10);
+        }
+
+        // a change that arrives now may not be seen by the refresh in progress so another one must follow it
+        version.set("3.0.0");
+        catalog.refreshAll();
+        gate.get().countDown();
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (pluginManager.getCalls("getRemotePlugins") < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, pluginManager.getCalls("getRemotePlugins"));
+        waitForVersion("3.0.0");
+    }
+
+    @Test
+    public void testFailedFetchIsRetried() throws Exception {
+        // a failed first fetch doesn't leave the hub with an empty catalog for a full refresh interval
+        failures.set(2);
+        assertTrue(catalog.getRemotePluginVersions(hctx).isEmpty());
+        waitForVersion("1.0.0");
+        assertEquals(3, pluginManager.getCalls("getRemotePlugins"));
+    }
+
+    @Test
+    public void testRetryBackoff() {
+        assertEquals(50, catalog.getRetryDelay(1));
+        assertEquals(100, catalog.getRetryDelay(2));
+        assertEquals(400, catalog.getRetryDelay(4));
+        assertEquals(RemotePluginCatalog.REFRESH_INTERVAL, catalog.getRetryDelay(100));
+    }
+
+    @Test
+    public void testSlowHubDoesNotBlockOthers() throws Exception {
+        final HubContext slow = HubContext.create("slow");
+        gatedHub.set(slow.getHubId());
+        gate.set(new CountDownLatch(1));
+        try {
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    catalog.getRemotePluginVersions(slow);
+                }
+            });
+            t.start();
+            while (pluginManager.getCalls("getRemotePlugins") < 1) {
+                Thread.sleep(10);
+            }
+
+            // another hub's first fetch completes while the slow hub's is still in progress
+            long start = System.currentTimeMillis();
+            assertEquals("1.0.0", catalog.getRemotePluginVersions(hctx).get("plugin1"));
+            assertTrue(System.currentTimeMillis() - start < 1000);
+        } finally {
+            gate.get().countDown();
+        }
+    }
+
+    private void waitForVersion(String v) {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!v.equals(catalog.getRemotePluginVersions(hctx).get("plugin1")) && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        assertEquals(v, catalog.getRemotePluginVersions(hctx).get("plugin1"));
+    }
+}
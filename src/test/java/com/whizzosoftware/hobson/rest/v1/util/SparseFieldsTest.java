@@ -0,0 +1,147 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.json.JSONAttributes;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SparseFieldsTest {
+    @Test
+    public void testEmpty() {
+        SparseFields f = new SparseFields(null);
+        assertTrue(f.isEmpty());
+        assertTrue(f.has("name"));
+        assertTrue(f.includeIdTemplateMap());
+
+        JSONObject json = new JSONObject().put("name", "foo");
+        assertSame(json, f.filter(json));
+
+        f = new SparseFields(" , ");
+        assertTrue(f.isEmpty());
+    }
+
+    @Test
+    public void testParse() {
+        SparseFields f = new SparseFields("name,variables.on,variables.off, type");
+        assertFalse(f.isEmpty());
+        assertTrue(f.has("name"));
+        assertTrue(f.has("type"));
+        assertTrue(f.has("variables"));
+        assertFalse(f.has("cclass"));
+        assertFalse(f.includeIdTemplateMap());
+        assertTrue(f.getChild("name").isEmpty());
+        assertTrue(f.getChild("variables").has("on"));
+        assertTrue(f.getChild("variables").has("off"));
+        assertFalse(f.getChild("variables").has("level"));
+    }
+
+    @Test
+    public void testFilterObject() {
+        JSONObject json = new JSONObject();
+        json.put("@id", "/api/v1/hubs/local/plugins/local/plugin1/devices/device1");
+        json.put(JSONAttributes.AIDT, new JSONObject());
+        json.put("name", "Device 1");
+        json.put("type", "LIGHTBULB");
+        json.put("cclass", new JSONObject().put("@id", "/foo").put("name", "bar"));
+
+        JSONObject r = new SparseFields("name,cclass.@id").filter(json);
+        assertEquals(3, r.length());
+        assertEquals("/api/v1/hubs/local/plugins/local/plugin1/devices/device1", r.getString("@id"));
+        assertEquals("Device 1", r.getString("name"));
+        assertEquals(1, r.getJSONObject("cclass").length());
+        assertEquals("/foo", r.getJSONObject("cclass").getString("@id"));
+        assertFalse(r.has(JSONAttributes.AIDT));
+
+        r = new SparseFields("name," + JSONAttributes.AIDT).filter(json);
+        assertTrue(r.has(JSONAttributes.AIDT));
+    }
+
+    @Test
+    public void testFilterItemList() {
+        JSONObject vars = createItemList(
+            new JSONObject().put("@id", "/on").put("name", "on").put("value", true),
+            new JSONObject().put("@id", "/level").put("name", "level").put("value", 50)
+        );
+        JSONObject devices = createItemList(
+            new JSONObject().put("@id", "/device1").put("name", "Device 1").put("type", "LIGHTBULB").put("variables", vars)
+        );
+
+        // fields apply to each list item
+        JSONObject r = new SparseFields("name").filter(devices);
+        assertEquals(1, r.getInt("numberOfItems"));
+        JSONObject item = r.getJSONArray("itemListElement").getJSONObject(0).getJSONObject(JSONAttributes.ITEM);
+        assertEquals(2, item.length());
+        assertEquals("Device 1", item.getString("name"));
+
+        // nested list items can be selected by name
+        r = new SparseFields("name,variables[on]").filter(devices);
+        item = r.getJSONArray("itemListElement").getJSONObject(0).getJSONObject(JSONAttributes.ITEM);
+        JSONArray a = item.getJSONObject("variables").getJSONArray("itemListElement");
+        assertEquals(1, a.length());
+        assertEquals("on", a.getJSONObject(0).getJSONObject(JSONAttributes.ITEM).getString("name"));
+        assertEquals(true, a.getJSONObject(0).getJSONObject(JSONAttributes.ITEM).getBoolean("value"));
+
+        // nested list items can have their attributes filtered
+        r = new SparseFields("variables.value").filter(devices);
+        item = r.getJSONArray("itemListElement").getJSONObject(0).getJSONObject(JSONAttributes.ITEM);
+        a = item.getJSONObject("variables").getJSONArray("itemListElement");
+        assertEquals(2, a.length());
+        assertFalse(a.getJSONObject(0).getJSONObject(JSONAttributes.ITEM).has("name"));
+        assertTrue(a.getJSONObject(0).getJSONObject(JSONAttributes.ITEM).has("value"));
+
+        // selected items can have their attributes filtered
+        r = new SparseFields("variables[level].value").filter(devices);
+        item = r.getJSONArray("itemListElement").getJSONObject(0).getJSONObject(JSONAttributes.ITEM);
+        a = item.getJSONObject("variables").getJSONArray("itemListElement");
+        assertEquals(1, a.length());
+        assertEquals(50, a.getJSONObject(0).getJSONObject(JSONAttributes.ITEM).getInt("value"));
+        assertFalse(a.getJSONObject(0).getJSONObject(JSONAttributes.ITEM).has("name"));
+    }
+
+    @Test
+    public void testItemNamesDoNotSelectItems() {
+        // an item whose name happens to match a requested field doesn't change how the list is filtered
+        JSONObject list = createItemList(
+            new JSONObject().put("@id", "/device1").put("name", "name").put("type", "LIGHTBULB"),
+            new JSONObject().put("@id", "/device2").put("name", "on").put("type", "SWITCH")
+        );
+
+        JSONArray a = new SparseFields("name").filter(list).getJSONArray("itemListElement");
+        assertEquals(2, a.length());
+        assertEquals("name", a.getJSONObject(0).getJSONObject(JSONAttributes.ITEM).getString("name"));
+        assertFalse(a.getJSONObject(0).getJSONObject(JSONAttributes.ITEM).has("type"));
+
+        a = new SparseFields("[on]").filter(list).getJSONArray("itemListElement");
+        assertEquals(1, a.length());
+        assertEquals("SWITCH", a.getJSONObject(0).getJSONObject(JSONAttributes.ITEM).getString("type"));
+    }
+
+    @Test
+    public void testRestrictExpansions() {
+        SparseFields f = new SparseFields("name,variables");
+        assertEquals("item,item.variables", f.restrictExpansions("item,item.variables,item.cclass", JSONAttributes.ITEM));
+        assertNull(f.restrictExpansions("item.cclass", JSONAttributes.ITEM));
+        assertNull(f.restrictExpansions(null, JSONAttributes.ITEM));
+        assertEquals("variables", f.restrictExpansions("cclass,variables", null));
+        assertEquals("cclass", new SparseFields(null).restrictExpansions("cclass", null));
+    }
+
+    private JSONObject createItemList(JSONObject... items) {
+        JSONArray a = new JSONArray();
+        for (JSONObject o : items) {
+            a.put(new JSONObject().put(JSONAttributes.ITEM, o));
+        }
+        return new JSONObject().put("@id", "/list").put("numberOfItems", items.length).put("itemListElement", a);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2017 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.rest.v1.util;
+
+import com.whizzosoftware.hobson.api.HobsonInvalidRequestException;
+import com.whizzosoftware.hobson.api.event.device.DeviceVariableUpdate;
+import com.whizzosoftware.hobson.api.hub.HubContext;
+import com.whizzosoftware.hobson.api.variable.DeviceVariableContext;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class VariableUpdateWaiterTest {
+    @Test
+    public void testConfirmed() throws Exception {
+        VariableUpdateWaiter waiter = createWaiter();
+        HubContext hctx = HubContext.createLocal();
+        DeviceVariableContext v1 = DeviceVariableContext.create(hctx, "plugin1", "device1", "on");
+        DeviceVariableContext v2 = DeviceVariableContext.create(hctx, "plugin1", "device1", "level");
+
+        Map<DeviceVariableContext,Object> values = new LinkedHashMap<>();
+        values.put(v1, true);
+        values.put(v2, 50);
+        Results results = new Results();
+        waiter.waitForUpdate(hctx, values, 5000, results);
+
+        // the wait should not complete until all variables have been updated
+        waiter.onDeviceVariablesUpdate(hctx, Collections.singletonList(new DeviceVariableUpdate(v1, false, true)));
+        assertEquals(0, results.size());
+        waiter.onDeviceVariablesUpdate(hctx, Collections.singletonList(new DeviceVariableUpdate(v2, 0, 50.0)));
+        assertEquals(1, results.size());
+        assertEquals(Boolean.TRUE, results.get(0));
+
+        // subsequent updates should not invoke the callback again
+        waiter.onDeviceVariablesUpdate(hctx, Arrays.asList(new DeviceVariableUpdate(v1, true, true), new DeviceVariableUpdate(v2, 50, 50)));
+        assertEquals(1, results.size());
+    }
+
+    @Test
+    public void testOtherValuesIgnored() throws Exception {
+        VariableUpdateWaiter waiter = createWaiter();
+        HubContext hctx = HubContext.createLocal();
+        DeviceVariableContext v1 = DeviceVariableContext.create(hctx, "plugin1", "device1", "level");
+
+        Results results = new Results();
+        waiter.waitForUpdate(hctx, Collections.<DeviceVariableContext,Object>singletonMap(v1, 100), 5000, results);
+
+        // an intermediate value (e.g. a dimmer ramping up) doesn't confirm the request
+        waiter.onDeviceVariablesUpdate(hctx, Collections.singletonList(new DeviceVariableUpdate(v1, 0, 40)));
+        assertEquals(0, results.size());
+        waiter.onDeviceVariablesUpdate(hctx, Collections.singletonList(new DeviceVariableUpdate(v1, 40, "100")));
+        assertEquals(1, results.size());
+        assertEquals(Boolean.TRUE, results.get(0));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        VariableUpdateWaiter waiter = createWaiter();
+        HubContext hctx = HubContext.createLocal();
+        DeviceVariableContext v1 = DeviceVariableContext.create(hctx, "plugin1", "device1", "on");
+
+        Results results = new Results();
+        waiter.waitForUpdate(hctx, Collections.<DeviceVariableContext,Object>singletonMap(v1, true), 50, results);
+
+        assertTrue(results.latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Boolean.FALSE, results.get(0));
+
+        // a late update should be ignored
+        waiter.onDeviceVariablesUpdate(hctx, Collections.singletonList(new DeviceVariableUpdate(v1, false, true)));
+        assertEquals(1, results.size());
+    }
+
+    @Test
+    public void testShutdownCancelsWaits() throws Exception {
+        VariableUpdateWaiter waiter = createWaiter();
+        HubContext hctx = HubContext.createLocal();
+        DeviceVariableContext v1 = DeviceVariableContext.create(hctx, "plugin1", "device1", "on");
+
+        Results results = new Results();
+        waiter.waitForUpdate(hctx, Collections.<DeviceVariableContext,Object>singletonMap(v1, true), 5000, results);
+
+        // a parked response is never left uncommitted
+        waiter.shutdown();
+        assertEquals(1, results.size());
+        assertNull(results.get(0));
+
+        waiter.onDeviceVariablesUpdate(hctx, Collections.singletonList(new DeviceVariableUpdate(v1, false, true)));
+        assertEquals(1, results.size());
+    }
+
+    @Test
+    public void testMatches() {
+        assertTrue(VariableUpdateWaiter.matches(true, "true"));
+        assertTrue(VariableUpdateWaiter.matches(50, 50.0));
+        assertTrue(VariableUpdateWaiter.matches(null, null));
+        assertFalse(VariableUpdateWaiter.matches(50, 51));
+        assertFalse(VariableUpdateWaiter.matches(true, null));
+    }
+
+    @Test
+    public void testParseWait() {
+        assertEquals(0, VariableUpdateWaiter.parseWait(null));
+        assertEquals(500, VariableUpdateWaiter.parseWait("500"));
+        assertEquals(VariableUpdateWaiter.MAX_WAIT, VariableUpdateWaiter.parseWait("999999"));
+        try {
+            VariableUpdateWaiter.parseWait("abc");
+            fail("Should have thrown exception");
+        } catch (HobsonInvalidRequestException ignored) {}
+    }
+
+    /**
+     * Records each completion: TRUE if confirmed, FALSE if timed out and null if cancelled.
+     */
+    private class Results implements VariableUpdateWaiter.Callback {
+        final List<Boolean> results = Collections.synchronizedList(new ArrayList<Boolean>());
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        @Override
+        public void onComplete(boolean confirmed) {
+            results.add(confirmed);
+            latch.countDown();
+        }
+
+        @Override
+        public void onCancel() {
+            results.add(null);
+            latch.countDown();
+        }
+
+        int size() {
+            return results.size();
+        }
+
+        Boolean get(int ix) {
+            return results.get(ix);
+        }
+    }
+
+    private VariableUpdateWaiter createWaiter() {
+        VariableUpdateWaiter waiter = new VariableUpdateWaiter();
+        waiter.eventDispatcher = new HubEventDispatcher() {
+            @Override
+            public void addListener(HubContext hctx, HubEventListener listener) {
+            }
+        };
+        return waiter;
+    }
+}